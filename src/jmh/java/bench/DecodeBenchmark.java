@@ -0,0 +1,110 @@
+package bench;
+
+import api.OrderBook;
+import api.OrderBookParser;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding diff_order_book messages and REST snapshots, against the old Gson tree model.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    private static final int DIFFS = 1024;
+
+    @Param({"10"})
+    public int levelsPerDiff;
+
+    @Param({"5000"})
+    public int snapshotDepth;
+
+    private final OrderBookParser parser = new OrderBookParser();
+    private final Gson gson = new Gson();
+    private String[] diffs;
+    private String snapshot;
+    private OrderBook book;
+    private OrderBookParser.Listener bookUpdater;
+    private int next;
+    // Keeps the decoded levels alive without allocating a listener per call.
+    private long checksum;
+    private final OrderBookParser.Listener checksumUpdater =
+        (bid, price, volume) -> checksum += price ^ volume;
+
+    @Setup
+    public void setUp() {
+        diffs = Payloads.diffs(DIFFS, levelsPerDiff / 2, 7);
+        snapshot = Payloads.snapshot(snapshotDepth);
+        book = new OrderBook(15);
+        bookUpdater = book::update;
+        parser.parse(snapshot, bookUpdater);
+    }
+
+    private String nextDiff() {
+        String diff = diffs[next];
+        next = (next + 1) & (DIFFS - 1);
+        return diff;
+    }
+
+    @Benchmark
+    public long decodeDiff() {
+        parser.parse(nextDiff(), checksumUpdater);
+        return checksum;
+    }
+
+    /**
+     * Decode and apply a diff, as the synchronizer does outside of a resync.
+     */
+    @Benchmark
+    public long applyDiff() {
+        long timestamp = parser.parse(nextDiff(), bookUpdater);
+        book.publish();
+        return timestamp;
+    }
+
+    /**
+     * The previous decoding: a Gson tree, then a BigDecimal per price and volume.
+     */
+    @Benchmark
+    public void decodeDiffGsonTree(Blackhole blackhole) {
+        JsonObject jsonObject = gson.fromJson(nextDiff(), JsonElement.class).getAsJsonObject();
+        for (String side : new String[] {"bids", "asks"}) {
+            JsonArray levels = jsonObject.get(side).getAsJsonArray();
+            for (int i = 0; i < levels.size(); i++) {
+                JsonArray level = levels.get(i).getAsJsonArray();
+                blackhole.consume(level.get(0).getAsBigDecimal());
+                blackhole.consume(level.get(1).getAsBigDecimal());
+            }
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public OrderBook loadSnapshot() throws IOException {
+        OrderBook fresh = new OrderBook(15);
+        new OrderBookParser().parse(new StringReader(snapshot), fresh::update);
+        return fresh;
+    }
+}
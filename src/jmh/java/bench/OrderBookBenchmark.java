@@ -0,0 +1,113 @@
+package bench;
+
+import api.Fill;
+import api.FixedPoint;
+import api.OrderBook;
+import api.OrderBookParser;
+import api.OrderBookSnapshot;
+import dto.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Level updates near the touch, top-N snapshots and market order fills on books of realistic
+ * depth.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+    private static final int UPDATES = 4096;
+
+    @Param({"1000", "10000"})
+    public int depth;
+
+    @Param({"15"})
+    public int x;
+
+    private OrderBook book;
+    private boolean[] sides;
+    private long[] prices;
+    private long[] volumes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        book = new OrderBook(x);
+        new OrderBookParser().parse(Payloads.snapshot(depth), book::update);
+        book.publish();
+
+        // Updates alternate between setting and deleting, so the depth stays put.
+        Random random = new Random(42);
+        sides = new boolean[UPDATES];
+        prices = new long[UPDATES];
+        volumes = new long[UPDATES];
+        for (int i = 0; i < UPDATES; i += 2) {
+            boolean bid = random.nextBoolean();
+            long offset = (1 + random.nextInt(50)) * Payloads.TICK + Payloads.TICK / 2;
+            long price = bid ? Payloads.MID - offset : Payloads.MID + offset;
+            sides[i] = bid;
+            prices[i] = price;
+            volumes[i] = 1 + random.nextInt(1_000_000_000);
+            sides[i + 1] = bid;
+            prices[i + 1] = price;
+            volumes[i + 1] = 0;
+        }
+    }
+
+    @Benchmark
+    public void updateLevel() {
+        int i = next;
+        next = (i + 1) & (UPDATES - 1);
+        book.update(sides[i], prices[i], volumes[i]);
+    }
+
+    /**
+     * A level update followed by pricing a large market order, as the fill simulation does.
+     */
+    @Benchmark
+    public Fill updateAndFill() {
+        int i = next;
+        next = (i + 1) & (UPDATES - 1);
+        book.update(sides[i], prices[i], volumes[i]);
+        return book.fill(!sides[i], 100 * FixedPoint.ONE);
+    }
+
+    @Benchmark
+    public OrderBookSnapshot publish() {
+        book.publish();
+        return book.getSnapshot();
+    }
+
+    /**
+     * The top-N extraction done for every GUI refresh: read the snapshot into rows.
+     */
+    @Benchmark
+    public void topNRows(Blackhole blackhole) {
+        OrderBookSnapshot snapshot = book.getSnapshot();
+        for (int i = 0; i < snapshot.getBidDepth(); i++) {
+            blackhole.consume(new Order(FixedPoint.toBigDecimal(snapshot.getBidPrice(i)),
+                FixedPoint.toBigDecimal(snapshot.getBidVolume(i))));
+        }
+        for (int i = 0; i < snapshot.getAskDepth(); i++) {
+            blackhole.consume(new Order(FixedPoint.toBigDecimal(snapshot.getAskPrice(i)),
+                FixedPoint.toBigDecimal(snapshot.getAskVolume(i))));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import api.FixedPoint;
+
+import java.util.Random;
+
+/**
+ * Synthetic Bitstamp payloads around a BTC/USD-like price, generated from a fixed seed.
+ */
+final class Payloads {
+    static final long MID = 5600 * FixedPoint.ONE;
+    static final long TICK = FixedPoint.ONE / 100;
+
+    private Payloads() {
+    }
+
+    /**
+     * A REST order_book snapshot with the given number of levels per side.
+     */
+    static String snapshot(int depth) {
+        StringBuilder json = new StringBuilder(depth * 60);
+        json.append("{\"timestamp\": \"1508580000\", \"microtimestamp\": \"1508580000000000\", ");
+        json.append("\"bids\": [");
+        for (int i = 0; i < depth; i++) {
+            appendLevel(json, i > 0, MID - (i + 1) * TICK, 50_000_000L + i);
+        }
+        json.append("], \"asks\": [");
+        for (int i = 0; i < depth; i++) {
+            appendLevel(json, i > 0, MID + (i + 1) * TICK, 50_000_000L + i);
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Websocket diffs that change levels near the touch, about a third of them deletes.
+     */
+    static String[] diffs(int count, int levelsPerSide, long seed) {
+        Random random = new Random(seed);
+        String[] diffs = new String[count];
+        for (int d = 0; d < count; d++) {
+            StringBuilder json = new StringBuilder(levelsPerSide * 60);
+            json.append("{\"timestamp\": \"1508580001\", \"microtimestamp\": \"")
+                .append(1508580001000000L + d).append("\", \"bids\": [");
+            for (int i = 0; i < levelsPerSide; i++) {
+                appendLevel(json, i > 0, MID - (1 + random.nextInt(50)) * TICK,
+                    randomVolume(random));
+            }
+            json.append("], \"asks\": [");
+            for (int i = 0; i < levelsPerSide; i++) {
+                appendLevel(json, i > 0, MID + (1 + random.nextInt(50)) * TICK,
+                    randomVolume(random));
+            }
+            diffs[d] = json.append("]}").toString();
+        }
+        return diffs;
+    }
+
+    private static long randomVolume(Random random) {
+        return random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(1_000_000_000);
+    }
+
+    private static void appendLevel(StringBuilder json, boolean comma, long price, long volume) {
+        if (comma) {
+            json.append(", ");
+        }
+        json.append("[\"").append(FixedPoint.toBigDecimal(price).setScale(2).toPlainString())
+            .append("\", \"").append(FixedPoint.toBigDecimal(volume).toPlainString())
+            .append("\"]");
+    }
+}
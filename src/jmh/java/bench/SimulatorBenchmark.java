@@ -0,0 +1,70 @@
+package bench;
+
+import api.FixedPoint;
+import dto.MarketTrade;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import sim.ContrarianBacktest;
+import sim.ContrarianSimulator;
+import sim.TickChunk;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trades per second through the live simulator and the backtest strategy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatorBenchmark {
+    private static final int TRADES = 1 << 16;
+
+    private MarketTrade[] trades;
+    private TickChunk chunk;
+    private ContrarianBacktest backtest;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(3);
+        trades = new MarketTrade[TRADES];
+        chunk = new TickChunk(TRADES);
+        long price = Payloads.MID;
+        for (int i = 0; i < TRADES; i++) {
+            price += (random.nextInt(3) - 1) * Payloads.TICK;
+            long volume = 1 + random.nextInt(100_000_000);
+            trades[i] = new MarketTrade(i, i, FixedPoint.toBigDecimal(price),
+                FixedPoint.toBigDecimal(volume), random.nextBoolean());
+            chunk.add(i, price, volume);
+        }
+        backtest = new ContrarianBacktest(3, 3, FixedPoint.ONE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRADES)
+    public void liveSimulator(Blackhole blackhole) {
+        ContrarianSimulator simulator = new ContrarianSimulator(3, 3, blackhole::consume);
+        for (MarketTrade trade : trades) {
+            simulator.onTrade(trade);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRADES)
+    public void backtest() {
+        backtest.run(chunk);
+    }
+}
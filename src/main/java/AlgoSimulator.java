@@ -1,18 +1,23 @@
+import api.OrderBook;
 import dto.MarketTrade;
 import dto.Trade;
+import sim.ContrarianSimulator;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Takes the market trades and inserts our simulated trades.
+ * For live feeds, use {@link ContrarianSimulator} directly so the state carries over.
  */
 public class AlgoSimulator {
     private final List<MarketTrade> allTrades;
 
     private final int m;
     private final int n;
+    private final OrderBook book;
+    private final long orderSize;
 
     /**
      * Ctor.
@@ -21,9 +26,25 @@ public class AlgoSimulator {
      * @param marketTrades the market trades
      */
     public AlgoSimulator(int m, int n, List<MarketTrade> marketTrades) {
+        this(m, n, marketTrades, null, 0);
+    }
+
+    /**
+     * Ctor for simulated trades that are filled against an order book, so their price includes
+     * the slippage of their size.
+     * @param m the number of upticks to go short
+     * @param n the number of downticks to go short
+     * @param marketTrades the market trades
+     * @param book the book to fill against, only read on the calling thread
+     * @param orderSize the fixed-point quantity of each simulated trade
+     */
+    public AlgoSimulator(int m, int n, List<MarketTrade> marketTrades, OrderBook book,
+                         long orderSize) {
         this.m = m;
         this.n = n;
         this.allTrades = marketTrades;
+        this.book = book;
+        this.orderSize = orderSize;
     }
 
     /**
@@ -33,42 +54,13 @@ public class AlgoSimulator {
     public List<Trade> withOurTrades() {
         ArrayList<Trade> result = new ArrayList<>();
 
-        int upTicks = 0;
-        int downTicks = 0;
+        ContrarianSimulator simulator = new ContrarianSimulator(m, n, book, orderSize, result::add);
         for (int i = allTrades.size() - 1; i >= 0; i--) {
-            MarketTrade curTrade = allTrades.get(i);
-
-            if (i == allTrades.size() - 1) {
-                result.add(0, new Trade(curTrade.getTime(), curTrade.getPrice(),
-                    curTrade.getVolume(), false, false, false));
-            } else {
-                MarketTrade prevTrade = allTrades.get(i + 1);
-
-                int compare = curTrade.getPrice().compareTo(prevTrade.getPrice());
-                if (compare > 0) {
-                    upTicks++;
-                    downTicks = 0;
-                } else if (compare < 0) {
-                    upTicks = 0;
-                    downTicks++;
-                }
-
-                result.add(0, new Trade(curTrade.getTime(), curTrade.getPrice(),
-                    curTrade.getVolume(), false, compare > 0, compare < 0));
-
-                if (m <= upTicks) {
-                    result.add(0, new Trade(curTrade.getTime(), curTrade.getPrice(),
-                        new BigDecimal("-1"), true, false, false));
-                    upTicks = 0;
-                }
-
-                if (n <= downTicks) {
-                    result.add(0, new Trade(curTrade.getTime(), curTrade.getPrice(),
-                        new BigDecimal("1"), true, false, false));
-                    downTicks = 0;
-                }
-            }
+            simulator.onTrade(allTrades.get(i));
         }
+
+        // The simulator emits oldest first, the market trades are newest first.
+        Collections.reverse(result);
         return result;
     }
 }
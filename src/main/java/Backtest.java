@@ -0,0 +1,76 @@
+import api.FixedPoint;
+import record.Replayer;
+import sim.BacktestEngine;
+import sim.BacktestResult;
+import sim.CsvTickReader;
+import sim.TickReader;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Backtests the contrarian strategy over historical trade files.
+ * <p>
+ * Usage: {@code Backtest [--m 1-10] [--n 1-10] [--size 1] file...}
+ * The files are CSV, or recordings if they end with .bin. They are read in the given order and
+ * should be chronological.
+ */
+public class Backtest {
+    public static void main(String[] args) throws IOException {
+        int[] mRange = {1, 10};
+        int[] nRange = {1, 10};
+        BigDecimal size = BigDecimal.ONE;
+        List<String> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--m":
+                    mRange = parseRange(args[++i]);
+                    break;
+                case "--n":
+                    nRange = parseRange(args[++i]);
+                    break;
+                case "--size":
+                    size = new BigDecimal(args[++i]);
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("Usage: Backtest [--m 1-10] [--n 1-10] [--size 1] file...");
+            return;
+        }
+
+        BacktestEngine engine = new BacktestEngine(mRange[0], mRange[1], nRange[0], nRange[1],
+            FixedPoint.fromBigDecimal(size));
+
+        long start = System.nanoTime();
+        long ticks = 0;
+        for (String file : files) {
+            try (TickReader reader = file.endsWith(".bin")
+                ? new Replayer(file) : new CsvTickReader(file)) {
+                ticks += engine.run(reader);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<BacktestResult> results = engine.getResults();
+        results.sort(Comparator.comparingDouble(BacktestResult::getPnl).reversed());
+        for (BacktestResult result : results) {
+            System.out.println(result);
+        }
+        System.out.printf("%d ticks x %d configurations in %.1f s%n", ticks, results.size(),
+            seconds);
+    }
+
+    private static int[] parseRange(String range) {
+        String[] parts = range.split("-");
+        int from = Integer.parseInt(parts[0]);
+        int to = parts.length > 1 ? Integer.parseInt(parts[1]) : from;
+        return new int[] {from, to};
+    }
+}
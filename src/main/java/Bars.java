@@ -0,0 +1,95 @@
+import bars.BarAggregator;
+import record.Replayer;
+import sim.CsvTickReader;
+import sim.TickChunk;
+import sim.TickReader;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aggregates historical trade files into bars.
+ * <p>
+ * Usage: {@code Bars [--bars time:60,volume:10,tick:100] file...}
+ * The files are CSV, or recordings if they end with .bin. Each file is aggregated on its own,
+ * in parallel with the others, and each spec is written to {@code <file>.<type>-<size>.csv}
+ * with the columns of {@link bars.Bar#toCsv()}.
+ */
+public class Bars {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    public static void main(String[] args) {
+        List<String> specs = Arrays.asList("time:60");
+        List<String> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--bars")) {
+                specs = Arrays.asList(args[++i].split(","));
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("Usage: Bars [--bars time:60,volume:10,tick:100] file...");
+            return;
+        }
+
+        List<String> barSpecs = specs;
+        long start = System.nanoTime();
+        long ticks = files.parallelStream().mapToLong(file -> aggregate(file, barSpecs)).sum();
+        System.out.printf("%d ticks from %d files in %.1f s%n", ticks, files.size(),
+            (System.nanoTime() - start) / 1e9);
+    }
+
+    private static long aggregate(String file, List<String> specs) {
+        List<BufferedWriter> writers = new ArrayList<>();
+        long ticks = 0;
+        try (TickReader reader = file.endsWith(".bin") ? new Replayer(file) : new CsvTickReader(file)) {
+            List<BarAggregator> aggregators = new ArrayList<>();
+            for (String spec : specs) {
+                // Only the listener sees the bars, so the aggregator keeps just one.
+                BarAggregator aggregator = BarAggregator.fromSpec(spec, 1);
+                BufferedWriter writer = new BufferedWriter(new FileWriter(
+                    file + "." + spec.trim().replace(':', '-') + ".csv"));
+                writers.add(writer);
+                aggregator.addListener(bar -> {
+                    try {
+                        writer.write(bar.toCsv());
+                        writer.newLine();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                aggregators.add(aggregator);
+            }
+
+            TickChunk chunk = new TickChunk(CHUNK_SIZE);
+            while (reader.read(chunk) > 0) {
+                for (BarAggregator aggregator : aggregators) {
+                    aggregator.onTicks(chunk);
+                }
+                ticks += chunk.size();
+            }
+            for (BarAggregator aggregator : aggregators) {
+                aggregator.flush();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Failed to aggregate " + file);
+            e.printStackTrace();
+        } finally {
+            for (BufferedWriter writer : writers) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return ticks;
+    }
+}
@@ -0,0 +1,53 @@
+import engine.Config;
+import engine.ConsoleSink;
+import engine.Engine;
+import engine.FileSink;
+import engine.MetricsSink;
+import engine.Sink;
+import fanout.FanoutServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs the engine without JavaFX, for servers and containers.
+ * <p>
+ * The sinks are set with {@code sinks} in app.config as a comma separated list of
+ * {@code console}, {@code metrics}, {@code file:<path>} and {@code fanout:<port>}, which serves
+ * the books and trades to local processes, see {@link fanout.FanoutClient}.
+ */
+public class Headless {
+    // Unsent trades kept per fan-out subscriber before the oldest are dropped.
+    private static final int FANOUT_TRADE_BACKLOG = 10_000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Config config = Config.load(Headless.class);
+        Engine engine = new Engine(config);
+        for (String sink : config.getSinks()) {
+            engine.addSink(createSink(sink));
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(engine::stop));
+        engine.start();
+
+        // The engine runs on its own threads until the process is stopped.
+        new CountDownLatch(1).await();
+    }
+
+    private static Sink createSink(String name) throws IOException {
+        if (name.equals("console")) {
+            return new ConsoleSink();
+        } else if (name.equals("metrics")) {
+            return new MetricsSink(10);
+        } else if (name.startsWith("file:")) {
+            return new FileSink(name.substring("file:".length()));
+        } else if (name.startsWith("fanout:")) {
+            int port = Integer.parseInt(name.substring("fanout:".length()));
+            return new FanoutServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                FANOUT_TRADE_BACKLOG);
+        }
+        throw new IllegalArgumentException("Unknown sink " + name);
+    }
+}
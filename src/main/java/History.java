@@ -0,0 +1,131 @@
+import api.FixedPoint;
+import api.OrderBook;
+import api.OrderBookSnapshot;
+import record.BookHistory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Queries the order books stored with {@code store_dir}.
+ * <p>
+ * Usage: {@code History --dir history --market btcusd --at 2026-10-01T12:00:00Z [--depth 10]}
+ * prints the book at that time. With {@code --from time --to time --every 60} instead of
+ * {@code --at}, it prints the top levels at every interval as CSV:
+ * {@code time,bid,bid volume,...,ask,ask volume,...} with fixed-point values, for research jobs.
+ * Times are ISO-8601 instants or exchange microtimestamps.
+ */
+public class History {
+    private static final String USAGE = "Usage: History [--dir history] [--market btcusd]"
+        + " [--depth 10] (--at time | --from time --to time [--every 60])";
+
+    public static void main(String[] args) throws IOException {
+        String dir = "history";
+        String market = "btcusd";
+        Long at = null;
+        Long from = null;
+        Long to = null;
+        long everySeconds = 60;
+        int depth = 10;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--dir":
+                    dir = args[++i];
+                    break;
+                case "--market":
+                    market = args[++i];
+                    break;
+                case "--at":
+                    at = parseTime(args[++i]);
+                    break;
+                case "--from":
+                    from = parseTime(args[++i]);
+                    break;
+                case "--to":
+                    to = parseTime(args[++i]);
+                    break;
+                case "--every":
+                    everySeconds = Long.parseLong(args[++i]);
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.out.println(USAGE);
+                    return;
+            }
+        }
+
+        BookHistory history = new BookHistory(Paths.get(dir), market);
+        if (at != null) {
+            long start = System.nanoTime();
+            OrderBook book = history.at(at, depth);
+            double millis = (System.nanoTime() - start) / 1e6;
+            OrderBookSnapshot snapshot = book.getSnapshot();
+            System.out.printf("%s at %s, %d bid and %d ask levels, found in %.1f ms%n", market,
+                toInstant(at), book.getBidDepth(), book.getAskDepth(), millis);
+            for (int i = 0; i < Math.max(snapshot.getBidDepth(), snapshot.getAskDepth()); i++) {
+                System.out.printf("%20s %20s | %-20s %-20s%n",
+                    i < snapshot.getBidDepth() ? format(snapshot.getBidVolume(i)) : "",
+                    i < snapshot.getBidDepth() ? format(snapshot.getBidPrice(i)) : "",
+                    i < snapshot.getAskDepth() ? format(snapshot.getAskPrice(i)) : "",
+                    i < snapshot.getAskDepth() ? format(snapshot.getAskVolume(i)) : "");
+            }
+        } else if (from != null && to != null) {
+            if (from > to || everySeconds <= 0) {
+                System.out.println("--from must not be after --to, and --every must be positive");
+                return;
+            }
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out));
+            int columns = depth;
+            history.scan(from, to, everySeconds * 1_000_000, depth, (timestamp, book) -> {
+                try {
+                    out.write(toInstant(timestamp).toString());
+                    writeSide(out, columns, book.getBidDepth(), book, true);
+                    writeSide(out, columns, book.getAskDepth(), book, false);
+                    out.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        } else {
+            System.out.println(USAGE);
+        }
+    }
+
+    private static void writeSide(BufferedWriter out, int columns, int depth,
+                                  OrderBookSnapshot book, boolean bid) throws IOException {
+        // Missing levels leave empty columns, so every line has the same columns.
+        for (int i = 0; i < columns; i++) {
+            out.write(',');
+            if (i < depth) {
+                out.write(String.valueOf(bid ? book.getBidPrice(i) : book.getAskPrice(i)));
+            }
+            out.write(',');
+            if (i < depth) {
+                out.write(String.valueOf(bid ? book.getBidVolume(i) : book.getAskVolume(i)));
+            }
+        }
+    }
+
+    private static String format(long value) {
+        return FixedPoint.toBigDecimal(value).toPlainString();
+    }
+
+    private static long parseTime(String value) {
+        if (value.matches("\\d+")) {
+            return Long.parseLong(value);
+        }
+        return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.parse(value));
+    }
+
+    private static Instant toInstant(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+}
@@ -1,12 +1,14 @@
-import api.BitstampApiEndpoint;
-import dto.MarketTrade;
+import api.FixedPoint;
+import api.OrderBookSnapshot;
 import dto.Order;
 import dto.Trade;
+import engine.Config;
+import engine.Engine;
+import engine.Sink;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
-import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.ReadOnlyStringWrapper;
-import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -23,48 +25,51 @@ import javafx.scene.text.Font;
 import javafx.stage.Stage;
 import javafx.util.Callback;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigDecimal;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Objects;
-import java.util.Properties;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntToLongFunction;
 
 public class Main extends Application {
     public static void main(String[] args) {
         launch(args);
     }
 
-    private BitstampApiEndpoint api;
-
-    // The default values if the config file isn't present.
-    private String principalMarket = "btcusd";
-    private int x = 10;
-    private int m = 3;
-    private int n = 3;
+    private Config config;
+    private Engine engine;
+    private int x;
+    // The principal market's latest book and trades, newest first, as delivered by the engine.
+    private final AtomicReference<OrderBookSnapshot> latestBook =
+        new AtomicReference<>(OrderBookSnapshot.EMPTY);
+    private final Deque<Trade> latestTrades = new ArrayDeque<>();
+    private final AtomicBoolean tradesDirty = new AtomicBoolean();
 
     @Override
     public void start(Stage primaryStage) throws IOException {
-        readConfig();
+        config = Config.load(getClass());
+        x = config.getX();
 
-        api = new BitstampApiEndpoint(principalMarket, x);
-        api.connect();
+        engine = new Engine(config);
+        // Added before starting so the backfilled trades are shown too.
+        engine.addSink(new ViewSink());
+        engine.start();
 
         TableView<Order> bidTable = createOrderBookTable();
         TableView<Order> askTable = createOrderBookTable();
         TableView<Trade> tradeTable = createTradeTable();
         constructGui(primaryStage, bidTable, askTable, tradeTable);
 
-        Thread th = new Thread(keepUpdatingGui(bidTable, askTable, tradeTable));
-        th.setDaemon(true);
-        th.start();
+        createRenderer(bidTable, askTable, tradeTable).start();
+    }
+
+    @Override
+    public void stop() {
+        engine.stop();
     }
 
     private TableView<Order> createOrderBookTable() {
@@ -177,81 +182,115 @@ public class Main extends Application {
         return bidBox;
     }
 
-    private Task<Void> keepUpdatingGui(TableView<Order> bidTable,
-                                       TableView<Order> askTable,
-                                       TableView<Trade> tradeTable) {
-        return new Task<Void>() {
-            @Override
-            public Void call() throws Exception {
-                while (true) {
-                    api.getOrderBookUpdateLock().lock();
-                    try {
-                        TreeMap<BigDecimal, BigDecimal> bids = api.orderBook().getBids();
-                        List<BigDecimal> bidPrices = bids
-                            .descendingKeySet().stream().filter(k -> bids.get(k) != null)
-                            .limit(x).collect(Collectors.toList());
-
-                        TreeMap<BigDecimal, BigDecimal> asks = api.orderBook().getAsks();
-                        List<BigDecimal> askPrices = asks
-                            .keySet().stream().filter(k -> asks.get(k) != null)
-                            .limit(x).collect(Collectors.toList());
-
-                        List<MarketTrade> marketTrades = api.retrieveTrades();
-                        List<Trade> trades = new AlgoSimulator(m, n, marketTrades)
-                            .withOurTrades().stream()
-                            .limit(x)
-                            .collect(Collectors.toList());
-
-                        Platform.runLater(() -> {
-                            bidTable.getItems().clear();
-                            askTable.getItems().clear();
-                            tradeTable.getItems().clear();
-
-                            for (BigDecimal price : bidPrices) {
-                                bidTable.getItems().add(new Order(price, bids.get(price)));
-                            }
+    /**
+     * Renders at most once per frame, and only what changed since the last frame: the book when
+     * a new snapshot was published, the trades when the simulator emitted one.
+     */
+    private AnimationTimer createRenderer(TableView<Order> bidTable, TableView<Order> askTable,
+                                          TableView<Trade> tradeTable) {
+        OrderRows bidRows = new OrderRows(bidTable, x);
+        OrderRows askRows = new OrderRows(askTable, x);
+        return new AnimationTimer() {
+            private long renderedSequence = -1;
 
-                            for (BigDecimal price : askPrices) {
-                                askTable.getItems().add(new Order(price, asks.get(price)));
-                            }
+            @Override
+            public void handle(long now) {
+                OrderBookSnapshot book = latestBook.get();
+                if (book.getSequence() != renderedSequence) {
+                    renderedSequence = book.getSequence();
+                    bidRows.render(book.getBidDepth(), book::getBidPrice, book::getBidVolume);
+                    askRows.render(book.getAskDepth(), book::getAskPrice, book::getAskVolume);
+                }
 
-                            for (Trade trade : trades) {
-                                tradeTable.getItems().add(trade);
-                            }
-                        });
-                    } finally {
-                        api.getOrderBookUpdateLock().unlock();
+                if (tradesDirty.getAndSet(false)) {
+                    List<Trade> trades;
+                    synchronized (latestTrades) {
+                        trades = new ArrayList<>(latestTrades);
                     }
-
-                    Thread.sleep(2000);
+                    renderTrades(tradeTable, trades);
                 }
             }
         };
     }
 
-    private void readConfig() {
-        try {
-            String fileName = "app.config";
+    private void renderTrades(TableView<Trade> tradeTable, List<Trade> trades) {
+        List<Trade> items = tradeTable.getItems();
+        for (int i = 0; i < trades.size(); i++) {
+            if (i >= items.size()) {
+                items.add(trades.get(i));
+            } else if (items.get(i) != trades.get(i)) {
+                items.set(i, trades.get(i));
+            }
+        }
+        if (items.size() > trades.size()) {
+            tradeTable.getItems().remove(trades.size(), items.size());
+        }
+    }
+
+    /**
+     * Hands the principal market's updates to the renderer, which picks them up on the next frame.
+     */
+    private class ViewSink implements Sink {
+        @Override
+        public void onBook(String market, OrderBookSnapshot book) {
+            if (market.equals(config.getPrincipalMarket())) {
+                latestBook.set(book);
+            }
+        }
 
-            ClassLoader classLoader = getClass().getClassLoader();
-            File configFile = new File(classLoader.getResource(fileName).getFile());
-            if (!configFile.exists()) {
-                URI res = getClass().getProtectionDomain().getCodeSource().getLocation().toURI();
-                configFile = new File(new File(res).getParentFile(), "app.config");
+        @Override
+        public void onTrade(String market, Trade trade) {
+            if (!market.equals(config.getPrincipalMarket())) {
+                return;
             }
+            synchronized (latestTrades) {
+                latestTrades.addFirst(trade);
+                if (latestTrades.size() > x) {
+                    latestTrades.removeLast();
+                }
+            }
+            tradesDirty.set(true);
+        }
+    }
 
-            InputStream is = new FileInputStream(configFile);
+    /**
+     * The rows of an order book table, updated in place from snapshots.
+     * Remembers the fixed-point values shown so unchanged rows are left alone.
+     */
+    private static class OrderRows {
+        private final TableView<Order> table;
+        private final long[] shownPrices;
+        private final long[] shownVolumes;
+
+        OrderRows(TableView<Order> table, int x) {
+            this.table = table;
+            this.shownPrices = new long[x];
+            this.shownVolumes = new long[x];
+        }
 
-            // load the properties file
-            Properties prop = new Properties();
-            prop.load(is);
+        void render(int depth, IntToLongFunction price, IntToLongFunction volume) {
+            List<Order> items = table.getItems();
+            for (int i = 0; i < depth; i++) {
+                long p = price.applyAsLong(i);
+                long v = volume.applyAsLong(i);
+                if (i < items.size()) {
+                    if (shownPrices[i] == p && shownVolumes[i] == v) {
+                        continue;
+                    }
+                    items.set(i, toOrder(p, v));
+                } else {
+                    items.add(toOrder(p, v));
+                }
+                shownPrices[i] = p;
+                shownVolumes[i] = v;
+            }
+            if (items.size() > depth) {
+                table.getItems().remove(depth, items.size());
+            }
+        }
 
-            principalMarket = prop.getProperty("principal_market");
-            x = Integer.parseInt(prop.getProperty("X"));
-            m = Integer.parseInt(prop.getProperty("M"));
-            n = Integer.parseInt(prop.getProperty("N"));
-        } catch (IOException | URISyntaxException e) {
-            e.printStackTrace();
+        private static Order toOrder(long price, long volume) {
+            return new Order(FixedPoint.toBigDecimal(price), FixedPoint.toBigDecimal(volume));
         }
     }
 }
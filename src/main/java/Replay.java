@@ -0,0 +1,50 @@
+import api.FixedPoint;
+import api.OrderBook;
+import api.OrderBookSnapshot;
+import record.Replayer;
+
+import java.io.IOException;
+
+/**
+ * Replays a recording into an order book without any network access, for load tests.
+ * <p>
+ * Usage: {@code Replay [--speed 0] file}, where speed 1 is the recorded pace and 0 is as fast
+ * as possible.
+ */
+public class Replay {
+    public static void main(String[] args) throws IOException {
+        double speed = 0;
+        String fileName = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--speed")) {
+                speed = Double.parseDouble(args[++i]);
+            } else {
+                fileName = args[i];
+            }
+        }
+        if (fileName == null) {
+            System.out.println("Usage: Replay [--speed 0] file");
+            return;
+        }
+
+        OrderBook book = new OrderBook(10);
+        long start = System.nanoTime();
+        long records;
+        try (Replayer replayer = new Replayer(fileName)) {
+            records = replayer.replay(book, null, speed);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        OrderBookSnapshot snapshot = book.getSnapshot();
+        System.out.printf("%d records in %.2f s (%.0f/s), %d bid and %d ask levels%n", records,
+            seconds, records / seconds, book.getBidDepth(), book.getAskDepth());
+        if (snapshot.getBidDepth() > 0 && snapshot.getAskDepth() > 0) {
+            System.out.println("Best bid " + format(snapshot.getBidPrice(0)) + ", best ask "
+                + format(snapshot.getAskPrice(0)));
+        }
+    }
+
+    private static String format(long value) {
+        return FixedPoint.toBigDecimal(value).toPlainString();
+    }
+}
@@ -0,0 +1,81 @@
+import standin.StandInServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a local stand-in for Bitstamp to test the client without network access.
+ * <p>
+ * Usage: {@code StandIn [--markets 20] [--rate 50000] [--threads 4] [--ws-port 8090]
+ * [--http-port 8091] [--replay market=file[@speed]]...}
+ * <p>
+ * Generates {@code --rate} diffs per second across btcusd and synthetic markets named
+ * syn01, syn02 and so on, and replays recordings as further markets. Connect a client by
+ * setting pusher_host, pusher_port and rest_url in its app.config. Prints the achieved rate
+ * every 10 seconds.
+ */
+public class StandIn {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int marketCount = 20;
+        double rate = 50_000;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int wsPort = 8090;
+        int httpPort = 8091;
+        List<String> replays = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--markets":
+                    marketCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--ws-port":
+                    wsPort = Integer.parseInt(args[++i]);
+                    break;
+                case "--http-port":
+                    httpPort = Integer.parseInt(args[++i]);
+                    break;
+                case "--replay":
+                    replays.add(args[++i]);
+                    break;
+                default:
+                    System.out.println("Usage: StandIn [--markets 20] [--rate 50000] [--threads 4]"
+                        + " [--ws-port 8090] [--http-port 8091] [--replay market=file[@speed]]...");
+                    return;
+            }
+        }
+
+        StandInServer server = new StandInServer(wsPort, httpPort);
+        List<String> markets = new ArrayList<>();
+        for (int i = 0; i < marketCount; i++) {
+            String market = i == 0 ? "btcusd" : String.format("syn%02d", i);
+            server.addSynthetic(market, i == 0 ? 10_000 : 100 * i);
+            markets.add(market);
+        }
+        for (String replay : replays) {
+            String[] parts = replay.split("[=@]");
+            server.addReplay(parts[0], parts[1], parts.length > 2 ? Double.parseDouble(parts[2]) : 1);
+            markets.add(parts[0]);
+        }
+
+        server.start(rate, threads);
+        System.out.println("Serving " + String.join(",", markets) + " on ws://localhost:" + wsPort
+            + " and http://localhost:" + httpPort + "/api/v2/");
+
+        long lastSent = 0;
+        while (true) {
+            TimeUnit.SECONDS.sleep(10);
+            long sent = server.getSentCount();
+            System.out.printf("%d msgs/s, %d connections, %d lag resets%n", (sent - lastSent) / 10,
+                server.getConnectionCount(), server.getLagResets());
+            lastSent = sent;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import api.FixedPoint;
+import api.OrderBookSnapshot;
+import dto.Trade;
+import fanout.FanoutClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints the books and trades served by a {@code fanout:<port>} sink of {@link Headless}.
+ * <p>
+ * Usage: {@code Tap [--host localhost] [--port 8092] [market]...}, all markets if none is given.
+ */
+public class Tap {
+    public static void main(String[] args) throws IOException {
+        String host = "localhost";
+        int port = 8092;
+        List<String> markets = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--host")) {
+                host = args[++i];
+            } else if (args[i].equals("--port")) {
+                port = Integer.parseInt(args[++i]);
+            } else {
+                markets.add(args[i]);
+            }
+        }
+
+        try (FanoutClient client = new FanoutClient(host, port)) {
+            if (!markets.isEmpty()) {
+                client.subscribe(markets);
+            }
+            client.run(new FanoutClient.Listener() {
+                @Override
+                public void onBook(String market, OrderBookSnapshot book) {
+                    if (book.getBidDepth() > 0 && book.getAskDepth() > 0) {
+                        System.out.println(market + " book " + book.getSequence() + " "
+                            + FixedPoint.toBigDecimal(book.getBidPrice(0)) + " / "
+                            + FixedPoint.toBigDecimal(book.getAskPrice(0)));
+                    }
+                }
+
+                @Override
+                public void onTrade(String market, Trade trade) {
+                    System.out.println(market + " trade " + trade.getPrice() + " "
+                        + trade.getVolume() + (trade.getOurTrade() ? " ours" : ""));
+                }
+
+                @Override
+                public void onDropped(long count) {
+                    System.out.println("Fell behind, " + count + " trades dropped");
+                }
+            });
+        }
+    }
+}
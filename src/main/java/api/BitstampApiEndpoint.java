@@ -1,189 +1,280 @@
 package api;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.pusher.client.Pusher;
-import com.pusher.client.channel.Channel;
-import com.pusher.client.connection.ConnectionEventListener;
-import com.pusher.client.connection.ConnectionState;
-import com.pusher.client.connection.ConnectionStateChange;
 import dto.MarketTrade;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
+import metrics.FeedMetrics;
 
-import java.io.IOException;
-import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 /**
- * The class used to connect to the Bitstamp API endpoint.
+ * The class used to connect to the Bitstamp API endpoint for one market.
+ * Endpoints created by a {@link MarketRegistry} share its connections.
  */
 public class BitstampApiEndpoint {
-    private final OrderBook orderBook = new OrderBook();
+    // The number of trades kept by the trade feed.
+    private static final int TRADE_HISTORY = 1000;
 
-    private final Gson gson = new Gson();
-    private final OkHttpClient client = new OkHttpClient();
+    private final OrderBook orderBook;
 
-    private final String diffChannelBtcUsd = "diff_order_book";
-    private final String diffChannel = "diff_order_book_";
-    private final String dataEvent = "data";
-    private final String orderBookApiUrl = "https://www.bitstamp.net/api/v2/order_book/";
-    private final String tradesApiUrl = "https://www.bitstamp.net/api/v2/transactions/";
-    private final String bitstampPusherKey = "de504dc5763aeef9ff52";
-
-    private final CountDownLatch webSocketLatch = new CountDownLatch(1);
-    private final ReentrantLock orderBookUpdateLock = new ReentrantLock();
+    private final RestClient rest;
+    private final FeedMetrics metrics;
 
+    private final MarketRegistry registry;
     private final String principalMarket;
     private final int x;
+    private final FeedQueue partition;
+    private final OrderBookSynchronizer synchronizer;
+    private final TradeFeed tradeFeed = new TradeFeed(TRADE_HISTORY);
+    // Set by the Pusher thread when a message was dropped, cleared by the partition thread.
+    private final AtomicBoolean overflowed = new AtomicBoolean();
+    // Set by the Pusher thread after a reconnect, cleared by the partition thread.
+    private final AtomicBoolean backfillRequested = new AtomicBoolean();
+
+    private TopOfBookWatcher topWatcher;
+
+    // Partition thread only.
+    private boolean batchPending;
 
     /**
-     * Ctor.
+     * Ctor for a standalone endpoint with its own connections.
      * @param principalMarket the market to show and trade
      * @param x the number of rows to display
      */
     public BitstampApiEndpoint(String principalMarket, int x) {
+        this(new MarketRegistry(1), principalMarket, x, 0, 0);
+    }
+
+    BitstampApiEndpoint(MarketRegistry registry, String principalMarket, int x, int maxDepth,
+                        int bandBps) {
+        this.registry = registry;
         this.principalMarket = principalMarket;
         this.x = x;
+        this.rest = registry.getRest();
+        this.metrics = registry.getMetrics();
+        this.partition = registry.nextPartition();
+        this.orderBook = new OrderBook(x, maxDepth, bandBps);
+        this.synchronizer = new OrderBookSynchronizer(principalMarket, orderBook,
+            this::retrieveFullOrderBook, registry.getSnapshotExecutor());
     }
 
     /**
-     * Connect to the websocket, retrieve full order book.
+     * Connect to the websocket and wait until the order book is synced with the full order book.
      */
     public void connect() {
-        connectToDiffWebSocket();
+        registry.subscribe(this);
+        awaitSynced();
+    }
 
+    /**
+     * Start from the levels already loaded into {@link #orderBook()}, e.g. from a checkpoint,
+     * so the book can be used before the REST snapshot arrives and {@link #connect} doesn't wait
+     * for it. The snapshot is still loaded in the background to check the book. Must be called
+     * before connecting.
+     * @param checkDelayMillis how long to wait before loading the snapshot, to spread the
+     *     requests of many markets
+     */
+    public void warmStart(long checkDelayMillis) {
+        synchronizer.warmStart(checkDelayMillis);
+    }
+
+    /**
+     * Copy the order book between two diffs on the partition thread and hand the copy over,
+     * e.g. to write a checkpoint. Nothing is copied while the book is resyncing.
+     * @param consumer receives the copy and the exchange microtimestamp of the last diff applied
+     *     to it, on the partition thread
+     */
+    public void captureBook(BiConsumer<OrderBook, Long> consumer) {
+        partition.execute(() -> {
+            if (!synchronizer.isSyncing()) {
+                OrderBook copy = new OrderBook(0);
+                copy.copyFrom(orderBook);
+                consumer.accept(copy, synchronizer.getLastTimestamp());
+            }
+        });
+    }
+
+    void awaitSynced() {
         try {
-            // Only do the request for the full order book after the first diff event is received.
-            webSocketLatch.await();
+            // The full order book is only requested after the first diff event is received.
+            synchronizer.awaitSynced();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+    }
 
-        retrieveInitialFullOrderBook();
+    /**
+     * Apply a diff on the partition thread.
+     * @param data the event data
+     * @param receivedNanos when the event was received
+     * @param publish whether to publish the book now rather than in {@link #endBatch}
+     * @return true if the book now waits for {@link #endBatch} and didn't before
+     */
+    boolean onDiff(String data, long receivedNanos, boolean publish) {
+        checkOverflow();
+        long startedNanos = System.nanoTime();
+        synchronizer.onDiff(data, publish);
+        if (topWatcher != null) {
+            topWatcher.check(orderBook, receivedNanos);
+        }
+        metrics.onDiff(receivedNanos, startedNanos, System.nanoTime(),
+            synchronizer.getLastLevelCount(), synchronizer.getLastTimestamp());
+        if (publish || batchPending) {
+            return false;
+        }
+        batchPending = true;
+        return true;
     }
 
-    private void connectToDiffWebSocket() {
-        Pusher pusher = new Pusher(bitstampPusherKey);
+    /**
+     * Publish the book once a batch of diffs was applied.
+     */
+    void endBatch() {
+        batchPending = false;
+        orderBook.publish();
+    }
 
-        pusher.connect(new ConnectionEventListener() {
-            public void onConnectionStateChange(ConnectionStateChange change) {
-                System.out.println("State changed to " + change.getCurrentState() +
-                    " from " + change.getPreviousState());
-            }
+    void onTrade(String data) {
+        checkOverflow();
+        tradeFeed.onTrade(data);
+        metrics.onTrade();
+    }
 
-            public void onError(String message, String code, Exception e) {
-                System.out.println("There was a problem connecting!");
-            }
-        }, ConnectionState.ALL);
+    /**
+     * Called by the Pusher thread when a message of this market didn't fit in the queue.
+     * The book resyncs on the next diff and the trades are backfilled again.
+     */
+    void onOverflow() {
+        metrics.onDrop();
+        if (overflowed.compareAndSet(false, true)) {
+            synchronizer.requestResync();
+        }
+    }
 
-        String channelName;
-        if (principalMarket.equals("btcusd")) {
-            channelName = diffChannelBtcUsd;
-        } else {
-            channelName = diffChannel + principalMarket;
+    private void checkOverflow() {
+        if (overflowed.get() && overflowed.compareAndSet(true, false)) {
+            System.out.println("Dropped messages on " + principalMarket + ", resyncing");
+            backfillRequested.set(true);
         }
-        Channel channel = pusher.subscribe(channelName);
-        channel.bind(dataEvent, (channel1, event, data) -> {
-            JsonObject jsonObject = gson.fromJson(data, JsonElement.class).getAsJsonObject();
-
-            orderBookUpdateLock.lock();
-            try {
-                updateBids(jsonObject);
-                updateAsks(jsonObject);
-            } finally {
-                orderBookUpdateLock.unlock();
-            }
+        if (backfillRequested.get() && backfillRequested.compareAndSet(true, false)) {
+            tradeFeed.startBackfill();
+            backfillTrades();
+        }
+    }
+
+    /**
+     * Called by the Pusher thread after a reconnect. Like {@link #onOverflow}, it only sets
+     * flags that the partition thread picks up with the next message, so it never waits for a
+     * full queue.
+     */
+    void requestResync() {
+        synchronizer.requestResync();
+        backfillRequested.set(true);
+    }
 
-            webSocketLatch.countDown();
+    /**
+     * Fetch the recent trades over REST in the background and hand them to the trade feed.
+     */
+    void backfillTrades() {
+        rest.transactions(principalMarket).whenComplete((trades, e) -> {
+            List<MarketTrade> backfill = Collections.emptyList();
+            if (e != null) {
+                // Release the held back live trades anyway.
+                e.printStackTrace();
+            } else {
+                backfill = trades.subList(0, Math.min(trades.size(), TRADE_HISTORY));
+            }
+            List<MarketTrade> result = backfill;
+            partition.execute(() -> tradeFeed.onBackfill(result));
         });
     }
 
+    FeedQueue getPartition() {
+        return partition;
+    }
+
     /**
-     * Get current order book.
-     * @return the order book
+     * Set the observer that sees every diff applied to the order book, on the partition thread.
+     * Must be called before connecting.
+     * @param observer the observer
      */
-    public OrderBook orderBook() {
-        return orderBook;
+    public void setDiffObserver(DiffObserver observer) {
+        synchronizer.setObserver(observer);
     }
 
-    private void retrieveInitialFullOrderBook() {
-        Request request = new Request.Builder()
-            .url(orderBookApiUrl + principalMarket)
-            .build();
-        String initialResponse = null;
-        try {
-            Response response = client.newCall(request).execute();
-            initialResponse = response.body().string();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Set the listener notified on the partition thread when the top levels of the order book
+     * change. The levels are compared after every diff, but the listener is only called when
+     * they differ. Must be called before connecting.
+     * @param depth the number of levels per side to watch
+     * @param listener the listener
+     */
+    public void setTopOfBookListener(int depth, TopOfBookListener listener) {
+        topWatcher = new TopOfBookWatcher(depth, listener);
+    }
 
-        JsonObject initialObject = gson.fromJson(initialResponse, JsonElement.class).getAsJsonObject();
-        orderBookUpdateLock.lock();
-        try {
-            updateBids(initialObject);
-            updateAsks(initialObject);
-        } finally {
-            orderBookUpdateLock.unlock();
-        }
+    /**
+     * Get the market.
+     * @return the market, e.g. btcusd
+     */
+    public String getMarket() {
+        return principalMarket;
     }
 
-    private void updateBids(JsonObject jsonObject) {
-        JsonArray bids = jsonObject.get("bids").getAsJsonArray();
-        for (int i = 0; i < bids.size(); i++) {
-            JsonArray level = bids.get(i).getAsJsonArray();
-            orderBook.updateBid(level.get(0).getAsBigDecimal(), level.get(1).getAsBigDecimal());
-        }
+    /**
+     * Get the live trade feed.
+     * @return the trade feed
+     */
+    public TradeFeed tradeFeed() {
+        return tradeFeed;
     }
 
-    private void updateAsks(JsonObject jsonObject) {
-        JsonArray asks = jsonObject.get("asks").getAsJsonArray();
-        for (int i = 0; i < asks.size(); i++) {
-            JsonArray level = asks.get(i).getAsJsonArray();
-            orderBook.updateAsk(level.get(0).getAsBigDecimal(), level.get(1).getAsBigDecimal());
-        }
+    /**
+     * Get the latest trades from the live trade feed, without a REST request.
+     * @return the latest trades, newest first
+     */
+    public List<MarketTrade> latestTrades() {
+        return tradeFeed.latest(x * 2);
     }
 
     /**
-     * Execute a GET request to get the latest trades.
-     * @return the latest trades
+     * Get current order book.
+     * @return the order book
      */
-    public List<MarketTrade> retrieveTrades() {
-        Request request = new Request.Builder()
-            .url(tradesApiUrl + principalMarket)
-            .build();
-        String initialResponse = null;
-        try {
-            Response response = client.newCall(request).execute();
-            initialResponse = response.body().string();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public OrderBook orderBook() {
+        return orderBook;
+    }
 
-        List<MarketTrade> trades = new ArrayList<>();
-        JsonArray jsonTrades = gson.fromJson(initialResponse, JsonElement.class).getAsJsonArray();
-        for (int i = 0; i < Math.min(jsonTrades.size(), x * 2); i++) {
-            JsonObject jsonTrade = jsonTrades.get(i).getAsJsonObject();
-            trades.add(new MarketTrade(
-                jsonTrade.get("date").getAsLong(),
-                new BigDecimal(jsonTrade.get("price").getAsString()),
-                new BigDecimal(jsonTrade.get("amount").getAsString())));
-        }
-        return trades;
+    private CompletableFuture<Long> retrieveFullOrderBook(OrderBookParser.Listener listener) {
+        metrics.onSnapshotReload();
+        // The snapshot is streamed straight into the book rather than buffered as a string.
+        return rest.orderBook(principalMarket, listener);
+    }
+
+    /**
+     * Get the latest trades over REST without blocking. Concurrent and repeated requests
+     * for the same market within a short time share one response.
+     * @return the latest trades, newest first
+     */
+    public CompletableFuture<List<MarketTrade>> retrieveTradesAsync() {
+        return rest.transactions(principalMarket)
+            .thenApply(trades -> new ArrayList<>(trades.subList(0, Math.min(trades.size(), x * 2))));
     }
 
     /**
-     * The lock that's used when the order book gets updated.
-     * @return the order book update lock
+     * Execute a GET request to get the latest trades, waiting for the response.
+     * @return the latest trades, or an empty list if the request failed
      */
-    public ReentrantLock getOrderBookUpdateLock() {
-        return orderBookUpdateLock;
+    public List<MarketTrade> retrieveTrades() {
+        try {
+            return retrieveTradesAsync().join();
+        } catch (CompletionException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
     }
 }
@@ -0,0 +1,100 @@
+package api;
+
+/**
+ * Keeps the running sums behind {@link MarketAnalytics} as the book is updated.
+ * <p>
+ * Each side tracks the volume within a band of basis points from its own best price. A change
+ * to a level inside the band adjusts the sum directly. Only when the best price moves is the
+ * band walked again, which touches just the levels inside it. The touch values are read from
+ * the best levels when a snapshot is taken, so they cost nothing per update.
+ * <p>
+ * Used by the book's writer thread only.
+ */
+final class BookAnalytics {
+    private static final long BPS = 10_000;
+
+    private final int bandBps;
+    private long bidBandVolume;
+    private long askBandVolume;
+
+    /**
+     * Ctor.
+     * @param bandBps the width of the depth band, in basis points of the best price
+     */
+    BookAnalytics(int bandBps) {
+        this.bandBps = bandBps;
+    }
+
+    /**
+     * Apply an update to a side and adjust its band volume.
+     * @param side the side
+     * @param bid whether the side is the bid side
+     * @param price the price
+     * @param volume the volume, 0 to delete the level
+     */
+    void update(BookSide side, boolean bid, long price, long volume) {
+        long oldBest = side.size() > 0 ? side.price(0) : 0;
+        long oldVolume = side.volumeAt(price);
+        side.update(price, volume);
+        long newBest = side.size() > 0 ? side.price(0) : 0;
+
+        if (newBest != oldBest) {
+            setBandVolume(bid, bandVolume(side, bid));
+        } else if (newBest != 0 && inBand(bid, price, newBest)) {
+            // A depth-limited side may have ignored the update, so read back what was kept.
+            long delta = side.volumeAt(price) - oldVolume;
+            setBandVolume(bid, (bid ? bidBandVolume : askBandVolume) + delta);
+        }
+    }
+
+    /**
+     * Recompute both band volumes, e.g. after the book was replaced.
+     * @param bids the bid side
+     * @param asks the ask side
+     */
+    void reset(BookSide bids, BookSide asks) {
+        bidBandVolume = bandVolume(bids, true);
+        askBandVolume = bandVolume(asks, false);
+    }
+
+    /**
+     * Take a snapshot of the current values.
+     * @param sequence the sequence number of the book snapshot it belongs to
+     * @param bids the bid side
+     * @param asks the ask side
+     * @return the analytics
+     */
+    MarketAnalytics snapshot(long sequence, BookSide bids, BookSide asks) {
+        if (bids.size() == 0 || asks.size() == 0) {
+            return new MarketAnalytics(sequence, bandBps, 0, 0, 0, 0, bidBandVolume, askBandVolume);
+        }
+        return new MarketAnalytics(sequence, bandBps, bids.price(0), bids.volume(0),
+            asks.price(0), asks.volume(0), bidBandVolume, askBandVolume);
+    }
+
+    private long bandVolume(BookSide side, boolean bid) {
+        int depth = side.size();
+        if (depth == 0) {
+            return 0;
+        }
+        long best = side.price(0);
+        long total = 0;
+        for (int level = 0; level < depth && inBand(bid, side.price(level), best); level++) {
+            total += side.volume(level);
+        }
+        return total;
+    }
+
+    private boolean inBand(boolean bid, long price, long best) {
+        long width = best / BPS * bandBps;
+        return bid ? price >= best - width : price <= best + width;
+    }
+
+    private void setBandVolume(boolean bid, long volume) {
+        if (bid) {
+            bidBandVolume = volume;
+        } else {
+            askBandVolume = volume;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package api;
+
+import java.util.Arrays;
+
+/**
+ * One side of the order book, kept as parallel sorted arrays of fixed-point prices and volumes.
+ * The best level is stored at the end of the arrays, so updates near the touch move few elements.
+ * <p>
+ * A side can be limited to its best levels. Then only the top levels are kept in the main
+ * arrays, the next ones go to a bounded overflow side, and anything beyond that is dropped.
+ * When a top level is deleted, the best overflow level moves up. Once levels have been dropped,
+ * updates at or beyond the best dropped price are ignored, so the levels that are kept have no
+ * gaps. When the top runs short after that, {@link #needsRefill()} tells the owner to reload.
+ */
+final class BookSide {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final boolean bid;
+    private final int maxDepth;
+    private final int overflowCapacity;
+    private final BookSide overflow;
+
+    private long[] prices;
+    private long[] volumes;
+    private int size;
+    private boolean truncated;
+    private long dropBoundary;
+
+    // depthVolumes[i] is the volume of levels 0 to i, depthNotionals[i] their price times volume.
+    // Only the first depthValid totals are current.
+    private long[] depthVolumes = new long[0];
+    private double[] depthNotionals = new double[0];
+    private int depthValid;
+
+    /**
+     * Ctor for a side that keeps every level.
+     * @param bid whether this is the bid side, where higher prices are better
+     */
+    BookSide(boolean bid) {
+        this(bid, 0, 0);
+    }
+
+    /**
+     * Ctor.
+     * @param bid whether this is the bid side, where higher prices are better
+     * @param maxDepth the number of top levels to keep, 0 to keep every level
+     * @param overflowCapacity the number of levels kept beyond the top ones
+     */
+    BookSide(boolean bid, int maxDepth, int overflowCapacity) {
+        this.bid = bid;
+        this.maxDepth = maxDepth;
+        this.overflowCapacity = overflowCapacity;
+        this.overflow = maxDepth > 0 ? new BookSide(bid) : null;
+        int capacity = maxDepth > 0 ? maxDepth + 1 : INITIAL_CAPACITY;
+        this.prices = new long[capacity];
+        this.volumes = new long[capacity];
+    }
+
+    /**
+     * Set the volume at a price, deleting the level if the volume is zero.
+     * @param price the price
+     * @param volume the volume
+     */
+    void update(long price, long volume) {
+        if (truncated && !isWorse(dropBoundary, price)) {
+            return;
+        }
+        if (overflow != null && size == maxDepth && isWorse(price, prices[0])) {
+            overflow.update(price, volume);
+            trimOverflow();
+            return;
+        }
+
+        int index = find(price);
+        if (index >= 0) {
+            if (volume != 0) {
+                volumes[index] = volume;
+                depthValid = Math.min(depthValid, index);
+            } else {
+                remove(index);
+            }
+        } else if (volume != 0) {
+            insert(-index - 1, price, volume);
+        }
+
+        if (overflow != null) {
+            if (size > maxDepth) {
+                // The worst top level is still better than every overflow level.
+                overflow.appendBest(prices[0], volumes[0]);
+                remove(0);
+                trimOverflow();
+            } else if (size < maxDepth && overflow.size > 0) {
+                int best = overflow.size - 1;
+                insert(0, overflow.prices[best], overflow.volumes[best]);
+                overflow.size--;
+            }
+        }
+    }
+
+    /**
+     * Get the number of levels, including the overflow.
+     * @return the depth
+     */
+    int size() {
+        return overflow == null ? size : size + overflow.size;
+    }
+
+    /**
+     * Get the price of a level.
+     * @param level the level, where 0 is the best price
+     * @return the price
+     */
+    long price(int level) {
+        if (overflow != null && level >= size) {
+            return overflow.price(level - size);
+        }
+        return prices[index(level)];
+    }
+
+    /**
+     * Get the volume of a level.
+     * @param level the level, where 0 is the best price
+     * @return the volume
+     */
+    long volume(int level) {
+        if (overflow != null && level >= size) {
+            return overflow.volume(level - size);
+        }
+        return volumes[index(level)];
+    }
+
+    /**
+     * Get the volume at a price.
+     * @param price the price
+     * @return the volume, or 0 if there's no level at that price
+     */
+    long volumeAt(long price) {
+        if (overflow != null && size == maxDepth && isWorse(price, prices[0])) {
+            return overflow.volumeAt(price);
+        }
+        int index = find(price);
+        return index >= 0 ? volumes[index] : 0;
+    }
+
+    /**
+     * Copy the best levels, best first.
+     * @param n the maximum number of levels
+     * @param outPrices receives the prices
+     * @param outVolumes receives the volumes
+     * @return the number of levels copied
+     */
+    int copyTop(int n, long[] outPrices, long[] outVolumes) {
+        int count = Math.min(n, size);
+        for (int level = 0; level < count; level++) {
+            outPrices[level] = prices[size - 1 - level];
+            outVolumes[level] = volumes[size - 1 - level];
+        }
+        if (count < n && overflow != null) {
+            int more = Math.min(n - count, overflow.size);
+            for (int level = 0; level < more; level++) {
+                outPrices[count + level] = overflow.price(level);
+                outVolumes[count + level] = overflow.volume(level);
+            }
+            count += more;
+        }
+        return count;
+    }
+
+    /**
+     * Walk the side from the best level with a market order, as far as it takes to fill it.
+     * @param quantity the fixed-point quantity to fill
+     * @return the fill, which is partial if the side doesn't hold enough volume
+     */
+    Fill fill(long quantity) {
+        Fill fill = fillTop(quantity);
+        if (overflow != null && fill.getFilledQuantity() < quantity) {
+            fill = fill.then(overflow.fill(quantity - fill.getFilledQuantity()));
+        }
+        return fill;
+    }
+
+    /**
+     * Check whether levels were dropped and the top can no longer be refilled from the overflow.
+     * The overflow is always empty when the top isn't full.
+     * @return true if the side should be reloaded
+     */
+    boolean needsRefill() {
+        return truncated && size < maxDepth;
+    }
+
+    void clear() {
+        size = 0;
+        depthValid = 0;
+        truncated = false;
+        if (overflow != null) {
+            overflow.clear();
+        }
+    }
+
+    /**
+     * Replace the contents with a copy of another side, reusing the arrays when they fit.
+     * A limited side keeps only the levels that fit.
+     * @param other the side to copy
+     */
+    void copyFrom(BookSide other) {
+        if (overflow == null && other.overflow == null) {
+            if (prices.length < other.size) {
+                prices = new long[other.prices.length];
+                volumes = new long[other.volumes.length];
+            }
+            System.arraycopy(other.prices, 0, prices, 0, other.size);
+            System.arraycopy(other.volumes, 0, volumes, 0, other.size);
+            size = other.size;
+            depthValid = 0;
+            return;
+        }
+
+        int total = other.size();
+        int topCount = overflow == null ? total : Math.min(total, maxDepth);
+        if (prices.length < topCount) {
+            prices = new long[topCount];
+            volumes = new long[topCount];
+        }
+        for (int level = 0; level < topCount; level++) {
+            prices[topCount - 1 - level] = other.price(level);
+            volumes[topCount - 1 - level] = other.volume(level);
+        }
+        size = topCount;
+        depthValid = 0;
+
+        if (overflow != null) {
+            int overflowCount = Math.min(total - topCount, overflowCapacity);
+            overflow.clear();
+            for (int level = topCount + overflowCount - 1; level >= topCount; level--) {
+                overflow.appendBest(other.price(level), other.volume(level));
+            }
+            if (total > topCount + overflowCount) {
+                truncated = true;
+                dropBoundary = other.price(topCount + overflowCount);
+            } else {
+                truncated = other.truncated;
+                dropBoundary = other.dropBoundary;
+            }
+        }
+    }
+
+    private Fill fillTop(long quantity) {
+        if (size == 0 || quantity <= 0) {
+            return new Fill(quantity, 0, 0, 0, 0);
+        }
+        updateDepth();
+        int best = size - 1;
+        long total = depthVolumes[best];
+        if (total <= quantity) {
+            return new Fill(quantity, total, depthNotionals[best], prices[best], prices[0]);
+        }
+
+        // Find the deepest level needed: the highest index whose worse levels hold no more than
+        // the volume the order leaves untouched.
+        long untouched = total - quantity;
+        int low = 0;
+        int high = best;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (depthVolumes[mid - 1] <= untouched) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        long fullVolume = total - depthVolumes[low];
+        double notional = depthNotionals[best] - depthNotionals[low]
+            + (double) prices[low] * (quantity - fullVolume);
+        return new Fill(quantity, quantity, notional, prices[best], prices[low]);
+    }
+
+    private void updateDepth() {
+        if (depthVolumes.length < size) {
+            depthVolumes = Arrays.copyOf(depthVolumes, prices.length);
+            depthNotionals = Arrays.copyOf(depthNotionals, prices.length);
+        }
+        for (int i = Math.min(depthValid, size); i < size; i++) {
+            long volume = volumes[i];
+            depthVolumes[i] = i == 0 ? volume : depthVolumes[i - 1] + volume;
+            double notional = (double) prices[i] * volume;
+            depthNotionals[i] = i == 0 ? notional : depthNotionals[i - 1] + notional;
+        }
+        depthValid = size;
+    }
+
+    private boolean isWorse(long price, long than) {
+        return bid ? price < than : price > than;
+    }
+
+    /**
+     * Add a level that's better than all current levels.
+     */
+    private void appendBest(long price, long volume) {
+        insert(size, price, volume);
+    }
+
+    private void trimOverflow() {
+        if (overflow.size > overflowCapacity) {
+            // Everything worse than a dropped level is unknown from now on.
+            dropBoundary = overflow.prices[0];
+            truncated = true;
+            overflow.remove(0);
+        }
+    }
+
+    private int index(int level) {
+        if (level < 0 || level >= size) {
+            throw new IndexOutOfBoundsException("Level " + level + ", depth " + size);
+        }
+        return size - 1 - level;
+    }
+
+    /**
+     * Binary search for a price. Bids are sorted ascending and asks descending.
+     * @return the index, or (-(insertion point) - 1) if absent
+     */
+    private int find(long price) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midPrice = prices[mid];
+            if (midPrice == price) {
+                return mid;
+            }
+            if (bid ? midPrice < price : midPrice > price) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insert(int index, long price, long volume) {
+        if (size == prices.length) {
+            prices = Arrays.copyOf(prices, size * 2);
+            volumes = Arrays.copyOf(volumes, size * 2);
+        }
+        System.arraycopy(prices, index, prices, index + 1, size - index);
+        System.arraycopy(volumes, index, volumes, index + 1, size - index);
+        prices[index] = price;
+        volumes[index] = volume;
+        size++;
+        depthValid = Math.min(depthValid, index);
+    }
+
+    private void remove(int index) {
+        System.arraycopy(prices, index + 1, prices, index, size - index - 1);
+        System.arraycopy(volumes, index + 1, volumes, index, size - index - 1);
+        size--;
+        depthValid = Math.min(depthValid, index);
+    }
+}
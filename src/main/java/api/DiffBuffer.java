@@ -0,0 +1,70 @@
+package api;
+
+import java.util.Arrays;
+
+/**
+ * Diffs held back while an order book snapshot loads, stored as flat primitive arrays.
+ * Levels are appended through {@link #onLevel} and grouped into a diff by {@link #endDiff}.
+ */
+final class DiffBuffer implements OrderBookParser.Listener {
+    private long[] timestamps = new long[64];
+    private int[] diffEnds = new int[64];
+    private int diffCount;
+
+    private boolean[] sides = new boolean[1024];
+    private long[] prices = new long[1024];
+    private long[] volumes = new long[1024];
+    private int levelCount;
+
+    @Override
+    public void onLevel(boolean bid, long price, long volume) {
+        if (levelCount == prices.length) {
+            sides = Arrays.copyOf(sides, levelCount * 2);
+            prices = Arrays.copyOf(prices, levelCount * 2);
+            volumes = Arrays.copyOf(volumes, levelCount * 2);
+        }
+        sides[levelCount] = bid;
+        prices[levelCount] = price;
+        volumes[levelCount] = volume;
+        levelCount++;
+    }
+
+    /**
+     * Close the diff made of the levels appended since the previous diff.
+     * @param timestamp the diff's microtimestamp
+     */
+    void endDiff(long timestamp) {
+        if (diffCount == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, diffCount * 2);
+            diffEnds = Arrays.copyOf(diffEnds, diffCount * 2);
+        }
+        timestamps[diffCount] = timestamp;
+        diffEnds[diffCount] = levelCount;
+        diffCount++;
+    }
+
+    int size() {
+        return diffCount;
+    }
+
+    long timestamp(int diff) {
+        return timestamps[diff];
+    }
+
+    /**
+     * Apply one buffered diff to a book.
+     * @param diff the diff index
+     * @param book the book to update
+     */
+    void apply(int diff, OrderBook book) {
+        int start = diff == 0 ? 0 : diffEnds[diff - 1];
+        for (int i = start; i < diffEnds[diff]; i++) {
+            book.update(sides[i], prices[i], volumes[i]);
+        }
+    }
+
+    void clear() {
+        diffCount = 0;
+        levelCount = 0;
+    }
+}
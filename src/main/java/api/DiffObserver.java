@@ -0,0 +1,20 @@
+package api;
+
+/**
+ * Observes the diffs applied to an order book, on the book's writer thread.
+ * Levels arrive through {@link #onLevel} and are grouped by {@link #onDiffEnd}.
+ */
+public interface DiffObserver extends OrderBookParser.Listener {
+    /**
+     * Called after all levels of a diff were passed to {@link #onLevel}.
+     * @param timestamp the diff's microtimestamp, or {@link OrderBookParser#NO_TIMESTAMP}
+     */
+    void onDiffEnd(long timestamp);
+
+    /**
+     * Called after a sync replaced the whole book.
+     * @param book the synced book
+     * @param timestamp the microtimestamp of the snapshot the book was built from
+     */
+    void onSnapshot(OrderBook book, long timestamp);
+}
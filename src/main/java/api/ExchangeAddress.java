@@ -0,0 +1,59 @@
+package api;
+
+/**
+ * Where the Pusher feed and the REST API are served, so a {@link MarketRegistry} can be pointed
+ * at a local stand-in instead of Bitstamp.
+ */
+public final class ExchangeAddress {
+    /**
+     * The live Bitstamp servers.
+     */
+    public static final ExchangeAddress BITSTAMP =
+        new ExchangeAddress("de504dc5763aeef9ff52", null, 0, true, "https://www.bitstamp.net/api/v2/");
+
+    private final String pusherKey;
+    private final String pusherHost;
+    private final int pusherPort;
+    private final boolean encrypted;
+    private final String restUrl;
+
+    /**
+     * Ctor.
+     * @param pusherKey the Pusher application key
+     * @param pusherHost the websocket host, or null for the Pusher cloud
+     * @param pusherPort the websocket port, ignored for the Pusher cloud
+     * @param encrypted whether to use wss rather than ws
+     * @param restUrl the base URL of the REST API, ending with a slash
+     */
+    public ExchangeAddress(String pusherKey, String pusherHost, int pusherPort, boolean encrypted,
+                           String restUrl) {
+        this.pusherKey = pusherKey;
+        this.pusherHost = pusherHost;
+        this.pusherPort = pusherPort;
+        this.encrypted = encrypted;
+        this.restUrl = restUrl.endsWith("/") ? restUrl : restUrl + "/";
+    }
+
+    /**
+     * Get the address of a stand-in running without TLS on one host.
+     * @param host the host
+     * @param wsPort the websocket port
+     * @param httpPort the HTTP port
+     * @return the address
+     */
+    public static ExchangeAddress local(String host, int wsPort, int httpPort) {
+        return new ExchangeAddress(BITSTAMP.pusherKey, host, wsPort, false,
+            "http://" + host + ":" + httpPort + "/api/v2/");
+    }
+
+    public String getPusherKey() { return pusherKey; }
+    public String getPusherHost() { return pusherHost; }
+    public int getPusherPort() { return pusherPort; }
+    public boolean isEncrypted() { return encrypted; }
+    public String getRestUrl() { return restUrl; }
+
+    @Override
+    public String toString() {
+        return (pusherHost == null ? "pusher" : pusherHost + ":" + pusherPort) + ", " + restUrl;
+    }
+}
@@ -0,0 +1,211 @@
+package api;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring of feed messages between the Pusher thread and one partition thread.
+ * <p>
+ * The slots are preallocated parallel arrays, so enqueuing only claims a sequence number and
+ * fills a slot. Producers claim sequences with a CAS and mark each slot published with its
+ * sequence. The partition thread drains every published slot up to a batch limit in one
+ * wake-up, then publishes each touched book once per batch rather than once per diff.
+ * <p>
+ * When the ring is full, diffs and trades follow the {@link OverflowPolicy}; tasks always wait,
+ * since they carry control flow such as trade backfills.
+ */
+final class FeedQueue implements Executor {
+    private static final byte DIFF = 1;
+    private static final byte TRADE = 2;
+    private static final byte TASK = 3;
+
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int capacity;
+    private final int mask;
+    private final int batchSize;
+    private final OverflowPolicy policy;
+
+    private final byte[] types;
+    private final BitstampApiEndpoint[] endpoints;
+    private final String[] data;
+    private final long[] receivedNanos;
+    private final Runnable[] tasks;
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private volatile boolean sleeping;
+    private final Thread consumer;
+
+    // Partition thread only.
+    private final BitstampApiEndpoint[] touched;
+    private int touchedCount;
+
+    /**
+     * Ctor. Starts the partition thread.
+     * @param name the thread name
+     * @param capacity the number of slots, rounded up to a power of two
+     * @param batchSize the maximum number of messages drained per wake-up
+     * @param policy what to do with diffs and trades when the ring is full
+     */
+    FeedQueue(String name, int capacity, int batchSize, OverflowPolicy policy) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.batchSize = batchSize;
+        this.policy = policy;
+        types = new byte[this.capacity];
+        endpoints = new BitstampApiEndpoint[this.capacity];
+        data = new String[this.capacity];
+        receivedNanos = new long[this.capacity];
+        tasks = new Runnable[this.capacity];
+        published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            published.set(i, -1);
+        }
+        touched = new BitstampApiEndpoint[batchSize];
+
+        consumer = new Thread(this::drain, name);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Enqueue a diff_order_book event.
+     * @param endpoint the market's endpoint
+     * @param diff the event data
+     * @param nanos when it was received
+     * @return false if it was dropped
+     */
+    boolean offerDiff(BitstampApiEndpoint endpoint, String diff, long nanos) {
+        return offer(DIFF, endpoint, diff, nanos, null, policy == OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Enqueue a live_trades event.
+     * @param endpoint the market's endpoint
+     * @param trade the event data
+     * @return false if it was dropped
+     */
+    boolean offerTrade(BitstampApiEndpoint endpoint, String trade) {
+        return offer(TRADE, endpoint, trade, 0, null, policy == OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Run a task on the partition thread, in order with the messages. Waits if the ring is full.
+     * Called from the partition thread itself, it runs the task right away instead, since
+     * waiting for its own queue to drain would never end.
+     * @param task the task
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (Thread.currentThread() == consumer) {
+            task.run();
+        } else {
+            offer(TASK, null, null, 0, task, true);
+        }
+    }
+
+    /**
+     * Get the number of messages waiting.
+     * @return the queue depth
+     */
+    int size() {
+        return (int) (claimed.get() - consumed);
+    }
+
+    private boolean offer(byte type, BitstampApiEndpoint endpoint, String value, long nanos,
+                          Runnable task, boolean wait) {
+        long sequence;
+        while (true) {
+            sequence = claimed.get();
+            if (sequence - consumed >= capacity) {
+                if (!wait) {
+                    return false;
+                }
+                LockSupport.unpark(consumer);
+                Thread.yield();
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        int slot = (int) sequence & mask;
+        types[slot] = type;
+        endpoints[slot] = endpoint;
+        data[slot] = value;
+        receivedNanos[slot] = nanos;
+        tasks[slot] = task;
+        published.set(slot, sequence);
+        if (sleeping) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    private void drain() {
+        long next = 0;
+        int idle = 0;
+        while (true) {
+            int count = 0;
+            while (count < batchSize && published.get((int) (next + count) & mask) == next + count) {
+                count++;
+            }
+
+            if (count == 0) {
+                if (++idle < SPINS_BEFORE_PARK) {
+                    Thread.yield();
+                    continue;
+                }
+                sleeping = true;
+                // Check again so a message published before the flag was set isn't missed.
+                if (published.get((int) next & mask) != next) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                sleeping = false;
+                continue;
+            }
+            idle = 0;
+
+            for (int i = 0; i < count; i++) {
+                process((int) (next + i) & mask);
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                touched[i].endBatch();
+                touched[i] = null;
+            }
+            touchedCount = 0;
+            next += count;
+            consumed = next;
+        }
+    }
+
+    private void process(int slot) {
+        BitstampApiEndpoint endpoint = endpoints[slot];
+        try {
+            switch (types[slot]) {
+                case DIFF:
+                    if (endpoint.onDiff(data[slot], receivedNanos[slot], false)) {
+                        touched[touchedCount++] = endpoint;
+                    }
+                    break;
+                case TRADE:
+                    endpoint.onTrade(data[slot]);
+                    break;
+                default:
+                    tasks[slot].run();
+            }
+        } catch (RuntimeException e) {
+            // One bad message shouldn't stop the partition.
+            e.printStackTrace();
+        } finally {
+            endpoints[slot] = null;
+            data[slot] = null;
+            tasks[slot] = null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package api;
+
+/**
+ * The outcome of walking the order book with a market order: how much of it the visible levels
+ * could fill, at what average price, and how far into the book it went. Prices and quantities are
+ * {@link FixedPoint} longs.
+ */
+public final class Fill {
+    private final long quantity;
+    private final long filledQuantity;
+    private final double notional;
+    private final long bestPrice;
+    private final long worstPrice;
+
+    /**
+     * Ctor.
+     * @param quantity the order quantity
+     * @param filledQuantity the part of it the book could fill
+     * @param notional the sum of fixed-point price times fixed-point volume over the fills
+     * @param bestPrice the price of the first level filled against, 0 if nothing was filled
+     * @param worstPrice the price of the last level filled against, 0 if nothing was filled
+     */
+    Fill(long quantity, long filledQuantity, double notional, long bestPrice, long worstPrice) {
+        this.quantity = quantity;
+        this.filledQuantity = filledQuantity;
+        this.notional = notional;
+        this.bestPrice = bestPrice;
+        this.worstPrice = worstPrice;
+    }
+
+    public long getQuantity() { return quantity; }
+    public long getFilledQuantity() { return filledQuantity; }
+    public long getBestPrice() { return bestPrice; }
+    public long getWorstPrice() { return worstPrice; }
+
+    /**
+     * Check whether the book was deep enough to fill the whole order.
+     * @return true if the order was filled completely
+     */
+    public boolean isComplete() {
+        return filledQuantity == quantity;
+    }
+
+    /**
+     * Get the volume-weighted average price of the filled quantity.
+     * @return the fixed-point price, 0 if nothing was filled
+     */
+    public long getAveragePrice() {
+        return filledQuantity == 0 ? 0 : Math.round(notional / filledQuantity);
+    }
+
+    /**
+     * Get how much worse the average price is than the best price, the cost of the order's size.
+     * @return the slippage in basis points of the best price, never negative
+     */
+    public double getSlippageBps() {
+        return filledQuantity == 0 ? 0
+            : Math.abs(getAveragePrice() - bestPrice) * 10_000.0 / bestPrice;
+    }
+
+    /**
+     * Combine this fill with the fill of the rest of the order in deeper levels.
+     * @param deeper the fill of the remaining quantity
+     * @return the fill of the whole order
+     */
+    Fill then(Fill deeper) {
+        if (deeper.filledQuantity == 0) {
+            return this;
+        }
+        return new Fill(quantity, filledQuantity + deeper.filledQuantity,
+            notional + deeper.notional, filledQuantity == 0 ? deeper.bestPrice : bestPrice,
+            deeper.worstPrice);
+    }
+}
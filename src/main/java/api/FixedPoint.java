@@ -0,0 +1,41 @@
+package api;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Converts between decimal values and the scaled longs used by the order book.
+ * Prices and volumes are both kept with {@link #SCALE} decimal places.
+ */
+public final class FixedPoint {
+    /**
+     * The number of decimal places kept.
+     */
+    public static final int SCALE = 8;
+
+    /**
+     * The fixed-point representation of one.
+     */
+    public static final long ONE = 100_000_000L;
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Convert a decimal to fixed-point, rounding any extra decimal places.
+     * @param value the decimal value
+     * @return the scaled value
+     */
+    public static long fromBigDecimal(BigDecimal value) {
+        return value.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Convert a fixed-point value back to a decimal.
+     * @param value the scaled value
+     * @return the decimal value
+     */
+    public static BigDecimal toBigDecimal(long value) {
+        return BigDecimal.valueOf(value, SCALE);
+    }
+}
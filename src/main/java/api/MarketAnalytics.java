@@ -0,0 +1,114 @@
+package api;
+
+/**
+ * Immutable values derived from the order book: mid price, spread, microprice, the volume
+ * within a band of the best prices and the imbalances between the sides.
+ * Published with every {@link OrderBookSnapshot}, so they can be read from any thread without
+ * walking the book. Prices and volumes are {@link FixedPoint} longs.
+ */
+public final class MarketAnalytics {
+    /**
+     * The analytics of a book that doesn't compute them or has not been published yet.
+     */
+    public static final MarketAnalytics EMPTY = new MarketAnalytics(0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final long sequence;
+    private final int bandBps;
+    private final long bestBid;
+    private final long bestBidVolume;
+    private final long bestAsk;
+    private final long bestAskVolume;
+    private final long bidBandVolume;
+    private final long askBandVolume;
+
+    MarketAnalytics(long sequence, int bandBps, long bestBid, long bestBidVolume, long bestAsk,
+                    long bestAskVolume, long bidBandVolume, long askBandVolume) {
+        this.sequence = sequence;
+        this.bandBps = bandBps;
+        this.bestBid = bestBid;
+        this.bestBidVolume = bestBidVolume;
+        this.bestAsk = bestAsk;
+        this.bestAskVolume = bestAskVolume;
+        this.bidBandVolume = bidBandVolume;
+        this.askBandVolume = askBandVolume;
+    }
+
+    /**
+     * Get the sequence number of the book snapshot these values were taken from.
+     * @return the sequence number
+     */
+    public long getSequence() { return sequence; }
+    public int getBandBps() { return bandBps; }
+    public long getBestBid() { return bestBid; }
+    public long getBestBidVolume() { return bestBidVolume; }
+    public long getBestAsk() { return bestAsk; }
+    public long getBestAskVolume() { return bestAskVolume; }
+    public long getBidBandVolume() { return bidBandVolume; }
+    public long getAskBandVolume() { return askBandVolume; }
+
+    /**
+     * Check whether both sides had levels, without which the touch values are 0.
+     * @return true if the values are meaningful
+     */
+    public boolean isValid() {
+        return bestBid != 0 && bestAsk != 0;
+    }
+
+    /**
+     * Get the price halfway between the best bid and the best ask.
+     * @return the fixed-point mid price
+     */
+    public long getMidPrice() {
+        return (bestBid + bestAsk) / 2;
+    }
+
+    /**
+     * Get the difference between the best ask and the best bid.
+     * @return the fixed-point spread
+     */
+    public long getSpread() {
+        return bestAsk - bestBid;
+    }
+
+    /**
+     * Get the spread relative to the mid price.
+     * @return the spread in basis points
+     */
+    public double getSpreadBps() {
+        return isValid() ? getSpread() * 10_000.0 / getMidPrice() : 0;
+    }
+
+    /**
+     * Get the mid price weighted by the volume on the other side of the touch, which leans
+     * towards the side that is more likely to be taken out.
+     * @return the fixed-point microprice
+     */
+    public long getMicroprice() {
+        double volume = (double) bestBidVolume + bestAskVolume;
+        if (volume == 0) {
+            return getMidPrice();
+        }
+        return Math.round((bestBid * (double) bestAskVolume + bestAsk * (double) bestBidVolume) / volume);
+    }
+
+    /**
+     * Get the imbalance of the volumes at the touch.
+     * @return (bid - ask) / (bid + ask), from -1 for only asks to 1 for only bids
+     */
+    public double getImbalance() {
+        return imbalance(bestBidVolume, bestAskVolume);
+    }
+
+    /**
+     * Get the imbalance of the volumes within the band.
+     * @return (bid - ask) / (bid + ask), from -1 for only asks to 1 for only bids
+     */
+    public double getBandImbalance() {
+        return imbalance(bidBandVolume, askBandVolume);
+    }
+
+    private static double imbalance(long bid, long ask) {
+        double total = (double) bid + ask;
+        return total == 0 ? 0 : (bid - ask) / total;
+    }
+}
@@ -0,0 +1,258 @@
+package api;
+
+import com.pusher.client.Pusher;
+import com.pusher.client.PusherOptions;
+import com.pusher.client.channel.Channel;
+import com.pusher.client.connection.ConnectionEventListener;
+import com.pusher.client.connection.ConnectionState;
+import com.pusher.client.connection.ConnectionStateChange;
+import metrics.FeedMetrics;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks many markets over one Pusher connection and one HTTP client.
+ * <p>
+ * Each market is pinned to one of a fixed number of processing partitions, each with its own
+ * thread. The Pusher thread only hands events over, so a busy market delays at most the markets
+ * that share its partition. With as many partitions as markets, markets are fully isolated.
+ * <p>
+ * Events are handed over through a bounded {@link FeedQueue} per partition. What happens when
+ * a partition falls so far behind that its queue fills up is set by the {@link OverflowPolicy}.
+ */
+public class MarketRegistry {
+    private static final int DEFAULT_QUEUE_CAPACITY = 1 << 16;
+    private static final int BATCH_SIZE = 256;
+
+    private final String diffChannelBtcUsd = "diff_order_book";
+    private final String diffChannel = "diff_order_book_";
+    private final String dataEvent = "data";
+    private final String tradesChannelBtcUsd = "live_trades";
+    private final String tradesChannel = "live_trades_";
+    private final String tradeEvent = "trade";
+
+    private final FeedMetrics metrics = new FeedMetrics();
+    private final RestClient rest;
+    private final Pusher pusher;
+    private final ScheduledExecutorService snapshotExecutor;
+    private final FeedQueue[] partitions;
+
+    private final Map<String, BitstampApiEndpoint> markets = new ConcurrentHashMap<>();
+    private final List<BitstampApiEndpoint> subscribed = Collections.synchronizedList(new ArrayList<>());
+
+    private int nextPartition;
+    private boolean connecting;
+    private boolean connectedBefore;
+
+    /**
+     * Ctor for the live Bitstamp servers.
+     * @param partitionCount the number of threads that apply order book diffs
+     */
+    public MarketRegistry(int partitionCount) {
+        this(partitionCount, ExchangeAddress.BITSTAMP);
+    }
+
+    /**
+     * Ctor.
+     * @param partitionCount the number of threads that apply order book diffs
+     * @param address where the feed and the REST API are served
+     */
+    public MarketRegistry(int partitionCount, ExchangeAddress address) {
+        this(partitionCount, address, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_AND_RESYNC);
+    }
+
+    /**
+     * Ctor.
+     * @param partitionCount the number of threads that apply order book diffs
+     * @param address where the feed and the REST API are served
+     * @param queueCapacity the number of messages each partition can hold back
+     * @param overflowPolicy what to do with messages when a partition's queue is full
+     */
+    public MarketRegistry(int partitionCount, ExchangeAddress address, int queueCapacity,
+                          OverflowPolicy overflowPolicy) {
+        partitions = new FeedQueue[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new FeedQueue("order-book-" + i, queueCapacity, BATCH_SIZE,
+                overflowPolicy);
+        }
+        snapshotExecutor = Executors.newScheduledThreadPool(1, daemonThreads("order-book-snapshot"));
+
+        // All requests go to one host, so allow one call per market at startup.
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(Math.max(5, partitionCount * 2));
+        OkHttpClient client = new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(partitionCount * 2, 5, TimeUnit.MINUTES))
+            .build();
+        rest = new RestClient(client, metrics, address.getRestUrl());
+
+        PusherOptions options = new PusherOptions().setEncrypted(address.isEncrypted());
+        if (address.getPusherHost() != null) {
+            options.setHost(address.getPusherHost());
+            options.setWsPort(address.getPusherPort());
+            options.setWssPort(address.getPusherPort());
+        }
+        pusher = new Pusher(address.getPusherKey(), options);
+    }
+
+    /**
+     * Register a market. Registering the same market twice returns the existing endpoint.
+     * @param market the market, e.g. btcusd
+     * @param x the number of levels to publish in order book snapshots
+     * @return the market's endpoint
+     */
+    public BitstampApiEndpoint register(String market, int x) {
+        return register(market, x, 0, 0);
+    }
+
+    /**
+     * Register a market with a depth-limited order book and {@link MarketAnalytics}.
+     * Registering the same market twice returns the existing endpoint.
+     * @param market the market, e.g. btcusd
+     * @param x the number of levels to publish in order book snapshots
+     * @param maxDepth the number of levels per side to keep, 0 to keep every level
+     * @param bandBps the width of the analytics depth band in basis points, 0 for no analytics
+     * @return the market's endpoint
+     */
+    public synchronized BitstampApiEndpoint register(String market, int x, int maxDepth,
+                                                     int bandBps) {
+        BitstampApiEndpoint endpoint = markets.get(market);
+        if (endpoint == null) {
+            endpoint = new BitstampApiEndpoint(this, market, x, maxDepth, bandBps);
+            markets.put(market, endpoint);
+        }
+        return endpoint;
+    }
+
+    /**
+     * Get a registered market.
+     * @param market the market
+     * @return the endpoint, or null if the market isn't registered
+     */
+    public BitstampApiEndpoint get(String market) {
+        return markets.get(market);
+    }
+
+    /**
+     * Get all registered markets.
+     * @return the endpoints
+     */
+    public List<BitstampApiEndpoint> getMarkets() {
+        return new ArrayList<>(markets.values());
+    }
+
+    /**
+     * Subscribe to all registered markets and wait until each order book is synced.
+     * The snapshots are loaded concurrently.
+     */
+    public void connectAll() {
+        List<BitstampApiEndpoint> endpoints = getMarkets();
+        for (BitstampApiEndpoint endpoint : endpoints) {
+            subscribe(endpoint);
+        }
+        for (BitstampApiEndpoint endpoint : endpoints) {
+            endpoint.awaitSynced();
+        }
+    }
+
+    /**
+     * Get the measurements of all markets in this registry.
+     * @return the metrics
+     */
+    public FeedMetrics getMetrics() {
+        return metrics;
+    }
+
+    RestClient getRest() {
+        return rest;
+    }
+
+    synchronized FeedQueue nextPartition() {
+        return partitions[nextPartition++ % partitions.length];
+    }
+
+    ScheduledExecutorService getSnapshotExecutor() {
+        return snapshotExecutor;
+    }
+
+    /**
+     * Subscribe to a market's diff channel, connecting first if needed.
+     * @param endpoint the market's endpoint
+     */
+    synchronized void subscribe(BitstampApiEndpoint endpoint) {
+        if (subscribed.contains(endpoint)) {
+            return;
+        }
+        connect();
+
+        String market = endpoint.getMarket();
+        boolean btcUsd = market.equals("btcusd");
+        FeedQueue partition = endpoint.getPartition();
+
+        Channel channel = pusher.subscribe(btcUsd ? diffChannelBtcUsd : diffChannel + market);
+        channel.bind(dataEvent, (channel1, event, data) -> {
+            if (!partition.offerDiff(endpoint, data, System.nanoTime())) {
+                endpoint.onOverflow();
+            }
+        });
+
+        Channel trades = pusher.subscribe(btcUsd ? tradesChannelBtcUsd : tradesChannel + market);
+        trades.bind(tradeEvent, (channel1, event, data) -> {
+            if (!partition.offerTrade(endpoint, data)) {
+                endpoint.onOverflow();
+            }
+        });
+        endpoint.backfillTrades();
+
+        subscribed.add(endpoint);
+    }
+
+    private void connect() {
+        if (connecting) {
+            return;
+        }
+        connecting = true;
+
+        pusher.connect(new ConnectionEventListener() {
+            public void onConnectionStateChange(ConnectionStateChange change) {
+                System.out.println("State changed to " + change.getCurrentState() +
+                    " from " + change.getPreviousState());
+
+                if (change.getCurrentState() == ConnectionState.CONNECTED) {
+                    // Diffs were missed while disconnected.
+                    if (connectedBefore) {
+                        synchronized (subscribed) {
+                            for (BitstampApiEndpoint endpoint : subscribed) {
+                                endpoint.requestResync();
+                            }
+                        }
+                    }
+                    connectedBefore = true;
+                }
+            }
+
+            public void onError(String message, String code, Exception e) {
+                System.out.println("There was a problem connecting!");
+            }
+        }, ConnectionState.ALL);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,30 +1,60 @@
 package api;
 
 import java.math.BigDecimal;
-import java.util.TreeMap;
 
 /**
  * Represents the current order book.
+ * Prices and volumes are stored as {@link FixedPoint} longs, so applying an update doesn't
+ * allocate once the book has grown to its working size.
+ * <p>
+ * The book has a single writer. Other threads read it through {@link #getSnapshot()}, which
+ * never blocks the writer.
  */
 public class OrderBook {
 
-    private final TreeMap<BigDecimal, BigDecimal> bids = new TreeMap<>();
-    private final TreeMap<BigDecimal, BigDecimal> asks = new TreeMap<>();
+    /**
+     * How many levels a depth-limited side keeps beyond its top levels, as a multiple of the limit.
+     */
+    private static final int OVERFLOW_FACTOR = 4;
+
+    private final BookSide bids;
+    private final BookSide asks;
+
+    private final int snapshotDepth;
+    private final BookAnalytics analytics;
+    private volatile OrderBookSnapshot snapshot = OrderBookSnapshot.EMPTY;
 
     /**
-     * Get the bids.
-     * @return the bids
+     * Ctor for a book that keeps every level.
+     * @param snapshotDepth the number of levels per side to include in published snapshots
      */
-    public TreeMap<BigDecimal, BigDecimal> getBids() {
-        return bids;
+    public OrderBook(int snapshotDepth) {
+        this(snapshotDepth, 0);
     }
 
     /**
-     * Get the asks.
-     * @return the asks
+     * Ctor. A depth-limited book keeps its top levels in compact arrays and a few times as many
+     * in a bounded overflow store that refills the top when levels are deleted; deeper levels
+     * are dropped until the next full reload.
+     * @param snapshotDepth the number of levels per side to include in published snapshots
+     * @param maxDepth the number of top levels to keep per side, 0 to keep every level
      */
-    public TreeMap<BigDecimal, BigDecimal> getAsks() {
-        return asks;
+    public OrderBook(int snapshotDepth, int maxDepth) {
+        this(snapshotDepth, maxDepth, 0);
+    }
+
+    /**
+     * Ctor for a book that also maintains {@link MarketAnalytics}, published with each snapshot.
+     * @param snapshotDepth the number of levels per side to include in published snapshots
+     * @param maxDepth the number of top levels to keep per side, 0 to keep every level
+     * @param bandBps the width of the analytics depth band in basis points of the best price,
+     *     0 to not compute analytics
+     */
+    public OrderBook(int snapshotDepth, int maxDepth, int bandBps) {
+        this.snapshotDepth = snapshotDepth;
+        this.analytics = bandBps > 0 ? new BookAnalytics(bandBps) : null;
+        this.bids = new BookSide(true, maxDepth, maxDepth * OVERFLOW_FACTOR);
+        this.asks = new BookSide(false, maxDepth, maxDepth * OVERFLOW_FACTOR);
     }
 
     /**
@@ -33,7 +63,7 @@ public class OrderBook {
      * @param volume the bid volume
      */
     public void updateBid(BigDecimal price, BigDecimal volume) {
-        updateSide(bids, price, volume);
+        updateBid(FixedPoint.fromBigDecimal(price), FixedPoint.fromBigDecimal(volume));
     }
 
     /**
@@ -42,17 +72,199 @@ public class OrderBook {
      * @param volume the ask volume
      */
     public void updateAsk(BigDecimal price, BigDecimal volume) {
-        updateSide(asks, price, volume);
+        updateAsk(FixedPoint.fromBigDecimal(price), FixedPoint.fromBigDecimal(volume));
+    }
+
+    /**
+     * Update the bid or delete it if zero volume
+     * @param price the fixed-point bid price
+     * @param volume the fixed-point bid volume
+     */
+    public void updateBid(long price, long volume) {
+        update(true, price, volume);
     }
 
-    private void updateSide(TreeMap<BigDecimal, BigDecimal> side, BigDecimal price,
-                            BigDecimal volume) {
-        if (volume.compareTo(BigDecimal.ZERO) != 0) {
-            side.put(price, volume);
+    /**
+     * Update the ask or delete it if zero volume
+     * @param price the fixed-point ask price
+     * @param volume the fixed-point ask volume
+     */
+    public void updateAsk(long price, long volume) {
+        update(false, price, volume);
+    }
+
+    /**
+     * Update a bid or an ask, deleting it if zero volume. Matches {@link OrderBookParser.Listener}.
+     * @param bid true for a bid, false for an ask
+     * @param price the fixed-point price
+     * @param volume the fixed-point volume
+     */
+    public void update(boolean bid, long price, long volume) {
+        BookSide side = bid ? bids : asks;
+        if (analytics != null) {
+            analytics.update(side, bid, price, volume);
         } else {
-            if (side.containsKey(price)) {
-                side.remove(price);
-            }
+            side.update(price, volume);
+        }
+    }
+
+    /**
+     * Check whether the best bid is at or above the best ask, which means the book is stale.
+     * @return true if the book is crossed
+     */
+    public boolean isCrossed() {
+        return bids.size() > 0 && asks.size() > 0 && bids.price(0) >= asks.price(0);
+    }
+
+    /**
+     * Check whether a depth-limited side has run out of levels it can refill from, so the book
+     * should be reloaded from a full snapshot.
+     * @return true if either side needs a reload
+     */
+    public boolean needsRefill() {
+        return bids.needsRefill() || asks.needsRefill();
+    }
+
+    /**
+     * Get the number of bid levels.
+     * @return the bid depth
+     */
+    public int getBidDepth() {
+        return bids.size();
+    }
+
+    /**
+     * Get the number of ask levels.
+     * @return the ask depth
+     */
+    public int getAskDepth() {
+        return asks.size();
+    }
+
+    /**
+     * Get the fixed-point price of a bid level.
+     * @param level the level, where 0 is the best bid
+     * @return the price
+     */
+    public long getBidPrice(int level) {
+        return bids.price(level);
+    }
+
+    /**
+     * Get the fixed-point volume of a bid level.
+     * @param level the level, where 0 is the best bid
+     * @return the volume
+     */
+    public long getBidVolume(int level) {
+        return bids.volume(level);
+    }
+
+    /**
+     * Get the fixed-point price of an ask level.
+     * @param level the level, where 0 is the best ask
+     * @return the price
+     */
+    public long getAskPrice(int level) {
+        return asks.price(level);
+    }
+
+    /**
+     * Get the fixed-point volume of an ask level.
+     * @param level the level, where 0 is the best ask
+     * @return the volume
+     */
+    public long getAskVolume(int level) {
+        return asks.volume(level);
+    }
+
+    /**
+     * Price a market order against the current levels, without changing the book. Takes time
+     * logarithmic in the depth, plus catching up with the levels updated since the last call.
+     * Must be called from the writer's thread.
+     * @param buy true to buy from the asks, false to sell to the bids
+     * @param quantity the fixed-point quantity
+     * @return the fill, which is partial if the side doesn't hold enough volume
+     */
+    public Fill fill(boolean buy, long quantity) {
+        return buy ? asks.fill(quantity) : bids.fill(quantity);
+    }
+
+    /**
+     * Copy the best bids, best first.
+     * @param n the maximum number of levels
+     * @param prices receives the fixed-point prices
+     * @param volumes receives the fixed-point volumes
+     * @return the number of levels copied
+     */
+    public int getTopBids(int n, long[] prices, long[] volumes) {
+        return bids.copyTop(n, prices, volumes);
+    }
+
+    /**
+     * Copy the best asks, best first.
+     * @param n the maximum number of levels
+     * @param prices receives the fixed-point prices
+     * @param volumes receives the fixed-point volumes
+     * @return the number of levels copied
+     */
+    public int getTopAsks(int n, long[] prices, long[] volumes) {
+        return asks.copyTop(n, prices, volumes);
+    }
+
+    /**
+     * Publish the current top levels for readers. Called by the writer once it has applied
+     * a complete message, so readers never see a half-applied diff.
+     */
+    public void publish() {
+        long[] bidPrices = new long[snapshotDepth];
+        long[] bidVolumes = new long[snapshotDepth];
+        long[] askPrices = new long[snapshotDepth];
+        long[] askVolumes = new long[snapshotDepth];
+        int bidDepth = bids.copyTop(snapshotDepth, bidPrices, bidVolumes);
+        int askDepth = asks.copyTop(snapshotDepth, askPrices, askVolumes);
+        long sequence = snapshot.getSequence() + 1;
+        MarketAnalytics marketAnalytics = analytics == null ? MarketAnalytics.EMPTY
+            : analytics.snapshot(sequence, bids, asks);
+        snapshot = new OrderBookSnapshot(sequence, bidDepth, bidPrices, bidVolumes,
+            askDepth, askPrices, askVolumes, marketAnalytics);
+    }
+
+    /**
+     * Get the latest published snapshot. Safe to call from any thread.
+     * @return the snapshot
+     */
+    public OrderBookSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Get the analytics of the latest published snapshot. Safe to call from any thread.
+     * @return the analytics, {@link MarketAnalytics#EMPTY} if the book doesn't compute them
+     */
+    public MarketAnalytics getAnalytics() {
+        return snapshot.getAnalytics();
+    }
+
+    /**
+     * Remove all levels.
+     */
+    public void clear() {
+        bids.clear();
+        asks.clear();
+        if (analytics != null) {
+            analytics.reset(bids, asks);
+        }
+    }
+
+    /**
+     * Replace all levels with those of another book. Doesn't publish a snapshot.
+     * @param other the book to copy
+     */
+    public void copyFrom(OrderBook other) {
+        bids.copyFrom(other.bids);
+        asks.copyFrom(other.asks);
+        if (analytics != null) {
+            analytics.reset(bids, asks);
         }
     }
 }
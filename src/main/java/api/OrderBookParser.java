@@ -0,0 +1,353 @@
+package api;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Parses Bitstamp order book payloads of the form
+ * {@code {"timestamp":"...","microtimestamp":"...","bids":[["p","v"],...],"asks":[...]}}
+ * without building a JSON tree. Prices and volumes are parsed straight to {@link FixedPoint}
+ * and handed to a {@link Listener} level by level.
+ * <p>
+ * The same parser handles websocket diffs and the REST snapshot, which is read from a
+ * {@link Reader} in chunks. A parser instance is not thread-safe, but it can be reused and
+ * doesn't allocate once its buffer has grown to the message size.
+ */
+public final class OrderBookParser {
+
+    /**
+     * Receives the parsed levels.
+     */
+    public interface Listener {
+        /**
+         * Called for each level in the order it appears in the payload.
+         * @param bid true for a bid, false for an ask
+         * @param price the fixed-point price
+         * @param volume the fixed-point volume, zero if the level is deleted
+         */
+        void onLevel(boolean bid, long price, long volume);
+    }
+
+    /**
+     * Returned when the payload contains no timestamp.
+     */
+    public static final long NO_TIMESTAMP = -1;
+
+    private static final int READ_CHUNK = 8192;
+    private static final int MAX_KEY_LENGTH = 32;
+    private static final int MAX_SIGNIFICANT_DIGITS = 18;
+
+    private char[] buffer = new char[READ_CHUNK];
+    private final char[] key = new char[MAX_KEY_LENGTH];
+    private int keyLength;
+    private int pos;
+    private int limit;
+    private Reader reader;
+
+    private long timestamp;
+    private long microtimestamp;
+    private int levelCount;
+
+    /**
+     * Parse a payload held in memory.
+     * @param json the payload
+     * @param listener receives the levels
+     * @return the payload's microtimestamp, or {@link #NO_TIMESTAMP}
+     */
+    public long parse(String json, Listener listener) {
+        if (buffer.length < json.length()) {
+            buffer = new char[Math.max(json.length(), buffer.length * 2)];
+        }
+        json.getChars(0, json.length(), buffer, 0);
+        pos = 0;
+        limit = json.length();
+        reader = null;
+        try {
+            return parseObject(listener);
+        } catch (IOException e) {
+            // Unreachable, nothing is read from a reader.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parse a payload from a stream, reading it in chunks.
+     * @param in the payload
+     * @param listener receives the levels
+     * @return the payload's microtimestamp, or {@link #NO_TIMESTAMP}
+     * @throws IOException if reading fails
+     */
+    public long parse(Reader in, Listener listener) throws IOException {
+        pos = 0;
+        limit = 0;
+        reader = in;
+        try {
+            return parseObject(listener);
+        } finally {
+            reader = null;
+        }
+    }
+
+    /**
+     * Get the number of levels in the last parsed payload.
+     * @return the level count
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    private long parseObject(Listener listener) throws IOException {
+        timestamp = NO_TIMESTAMP;
+        microtimestamp = NO_TIMESTAMP;
+        levelCount = 0;
+
+        expect('{');
+        if (peek() == '}') {
+            pos++;
+        } else {
+            do {
+                readKey();
+                expect(':');
+                if (keyIs("bids")) {
+                    parseLevels(true, listener);
+                } else if (keyIs("asks")) {
+                    parseLevels(false, listener);
+                } else if (keyIs("microtimestamp")) {
+                    microtimestamp = parseDecimal(0);
+                } else if (keyIs("timestamp")) {
+                    timestamp = parseDecimal(0);
+                } else {
+                    skipValue();
+                }
+            } while (nextSeparator('}'));
+        }
+
+        if (microtimestamp != NO_TIMESTAMP) {
+            return microtimestamp;
+        }
+        return timestamp == NO_TIMESTAMP ? NO_TIMESTAMP : timestamp * 1_000_000;
+    }
+
+    private void parseLevels(boolean bid, Listener listener) throws IOException {
+        expect('[');
+        if (peek() == ']') {
+            pos++;
+            return;
+        }
+        do {
+            expect('[');
+            long price = parseDecimal(FixedPoint.SCALE);
+            expect(',');
+            long volume = parseDecimal(FixedPoint.SCALE);
+            // Some endpoints append an order id to each level.
+            while (nextSeparator(']')) {
+                skipValue();
+            }
+            listener.onLevel(bid, price, volume);
+            levelCount++;
+        } while (nextSeparator(']'));
+    }
+
+    /**
+     * Parse a quoted or bare decimal, keeping the given number of decimal places. Digits beyond
+     * them are rounded half up, as {@link FixedPoint#fromBigDecimal} does.
+     */
+    private long parseDecimal(int scale) throws IOException {
+        boolean quoted = peek() == '"';
+        if (quoted) {
+            pos++;
+        }
+        boolean negative = false;
+        if (peekRaw() == '-') {
+            negative = true;
+            pos++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        int significant = 0;
+        char c = peekRaw();
+        while (c >= '0' && c <= '9') {
+            if (value != 0 || c != '0') {
+                significant++;
+            }
+            value = value * 10 + (c - '0');
+            digits++;
+            pos++;
+            c = peekRaw();
+        }
+        int decimals = 0;
+        boolean roundUp = false;
+        if (c == '.') {
+            pos++;
+            c = peekRaw();
+            while (c >= '0' && c <= '9') {
+                if (decimals < scale) {
+                    if (value != 0 || c != '0') {
+                        significant++;
+                    }
+                    value = value * 10 + (c - '0');
+                    decimals++;
+                } else if (decimals == scale) {
+                    // Only the first extra digit decides the rounding.
+                    roundUp = c >= '5';
+                    decimals++;
+                }
+                digits++;
+                pos++;
+                c = peekRaw();
+            }
+        }
+        if (digits == 0) {
+            throw malformed("number");
+        }
+        for (; decimals < scale; decimals++) {
+            if (value != 0) {
+                significant++;
+            }
+            value *= 10;
+        }
+        // Anything longer may have wrapped around.
+        if (significant > MAX_SIGNIFICANT_DIGITS) {
+            throw malformed("at most " + MAX_SIGNIFICANT_DIGITS + " significant digits");
+        }
+        if (roundUp) {
+            value++;
+        }
+        if (quoted) {
+            expectRaw('"');
+        }
+        return negative ? -value : value;
+    }
+
+    private void readKey() throws IOException {
+        expect('"');
+        keyLength = 0;
+        char c;
+        while ((c = nextRaw()) != '"') {
+            if (c == '\\') {
+                c = nextRaw();
+            }
+            if (keyLength < MAX_KEY_LENGTH) {
+                key[keyLength] = c;
+            }
+            keyLength++;
+        }
+    }
+
+    private boolean keyIs(String name) {
+        if (keyLength != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (key[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipValue() throws IOException {
+        char c = peek();
+        if (c == '"') {
+            pos++;
+            while ((c = nextRaw()) != '"') {
+                if (c == '\\') {
+                    nextRaw();
+                }
+            }
+        } else if (c == '{' || c == '[') {
+            pos++;
+            char close = c == '{' ? '}' : ']';
+            if (peek() == close) {
+                pos++;
+                return;
+            }
+            do {
+                if (close == '}') {
+                    readKey();
+                    expect(':');
+                }
+                skipValue();
+            } while (nextSeparator(close));
+        } else {
+            // A number or a literal.
+            while (c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+                pos++;
+                c = peekRaw();
+            }
+        }
+    }
+
+    /**
+     * Consume a ',' and return true, or consume the closing character and return false.
+     */
+    private boolean nextSeparator(char close) throws IOException {
+        char c = peek();
+        pos++;
+        if (c == ',') {
+            return true;
+        }
+        if (c == close) {
+            return false;
+        }
+        throw malformed("',' or '" + close + "'");
+    }
+
+    private void expect(char expected) throws IOException {
+        peek();
+        expectRaw(expected);
+    }
+
+    private void expectRaw(char expected) throws IOException {
+        if (nextRaw() != expected) {
+            throw malformed("'" + expected + "'");
+        }
+    }
+
+    /**
+     * Skip whitespace and return the next character without consuming it.
+     */
+    private char peek() throws IOException {
+        char c = peekRaw();
+        while (isWhitespace(c)) {
+            pos++;
+            c = peekRaw();
+        }
+        return c;
+    }
+
+    private char peekRaw() throws IOException {
+        if (pos == limit && !fill()) {
+            throw malformed("more input");
+        }
+        return buffer[pos];
+    }
+
+    private char nextRaw() throws IOException {
+        char c = peekRaw();
+        pos++;
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        if (reader == null) {
+            return false;
+        }
+        int read = reader.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        pos = 0;
+        limit = read;
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private IllegalArgumentException malformed(String expected) {
+        return new IllegalArgumentException("Malformed order book JSON: expected " + expected);
+    }
+}
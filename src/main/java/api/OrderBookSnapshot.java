@@ -0,0 +1,112 @@
+package api;
+
+/**
+ * An immutable copy of the top levels of the order book.
+ * Snapshots are published by the thread that updates the book and can be read from any thread.
+ */
+public final class OrderBookSnapshot {
+    /**
+     * The snapshot of a book that has not been published yet.
+     */
+    public static final OrderBookSnapshot EMPTY =
+        new OrderBookSnapshot(0, 0, new long[0], new long[0], 0, new long[0], new long[0],
+            MarketAnalytics.EMPTY);
+
+    private final long sequence;
+    private final int bidDepth;
+    private final long[] bidPrices;
+    private final long[] bidVolumes;
+    private final int askDepth;
+    private final long[] askPrices;
+    private final long[] askVolumes;
+    private final MarketAnalytics analytics;
+
+    /**
+     * Ctor for a snapshot received from elsewhere, e.g. from a fan-out server, without
+     * analytics. The arrays are kept, not copied, and must not be changed afterwards.
+     * @param sequence the sequence number
+     * @param bidDepth the number of bid levels
+     * @param bidPrices the fixed-point bid prices, best first
+     * @param bidVolumes the fixed-point bid volumes
+     * @param askDepth the number of ask levels
+     * @param askPrices the fixed-point ask prices, best first
+     * @param askVolumes the fixed-point ask volumes
+     */
+    public OrderBookSnapshot(long sequence, int bidDepth, long[] bidPrices, long[] bidVolumes,
+                             int askDepth, long[] askPrices, long[] askVolumes) {
+        this(sequence, bidDepth, bidPrices, bidVolumes, askDepth, askPrices, askVolumes,
+            MarketAnalytics.EMPTY);
+    }
+
+    OrderBookSnapshot(long sequence, int bidDepth, long[] bidPrices, long[] bidVolumes,
+                      int askDepth, long[] askPrices, long[] askVolumes, MarketAnalytics analytics) {
+        this.sequence = sequence;
+        this.bidDepth = bidDepth;
+        this.bidPrices = bidPrices;
+        this.bidVolumes = bidVolumes;
+        this.askDepth = askDepth;
+        this.askPrices = askPrices;
+        this.askVolumes = askVolumes;
+        this.analytics = analytics;
+    }
+
+    /**
+     * Get the sequence number, which increases with every published snapshot.
+     * @return the sequence number
+     */
+    public long getSequence() { return sequence; }
+    public int getBidDepth() { return bidDepth; }
+    public int getAskDepth() { return askDepth; }
+
+    /**
+     * Get the analytics taken with this snapshot.
+     * @return the analytics, {@link MarketAnalytics#EMPTY} if the book doesn't compute them
+     */
+    public MarketAnalytics getAnalytics() { return analytics; }
+
+    /**
+     * Get the fixed-point price of a bid level.
+     * @param level the level, where 0 is the best bid
+     * @return the price
+     */
+    public long getBidPrice(int level) {
+        checkLevel(level, bidDepth);
+        return bidPrices[level];
+    }
+
+    /**
+     * Get the fixed-point volume of a bid level.
+     * @param level the level, where 0 is the best bid
+     * @return the volume
+     */
+    public long getBidVolume(int level) {
+        checkLevel(level, bidDepth);
+        return bidVolumes[level];
+    }
+
+    /**
+     * Get the fixed-point price of an ask level.
+     * @param level the level, where 0 is the best ask
+     * @return the price
+     */
+    public long getAskPrice(int level) {
+        checkLevel(level, askDepth);
+        return askPrices[level];
+    }
+
+    /**
+     * Get the fixed-point volume of an ask level.
+     * @param level the level, where 0 is the best ask
+     * @return the volume
+     */
+    public long getAskVolume(int level) {
+        checkLevel(level, askDepth);
+        return askVolumes[level];
+    }
+
+    private static void checkLevel(int level, int depth) {
+        if (level < 0 || level >= depth) {
+            throw new IndexOutOfBoundsException("Level " + level + ", depth " + depth);
+        }
+    }
+}
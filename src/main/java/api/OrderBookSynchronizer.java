@@ -0,0 +1,262 @@
+package api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps an order book in sync with the diff stream and the REST snapshot.
+ * <p>
+ * Diffs are applied to the live book as they arrive. While a snapshot loads in the background,
+ * they are also buffered. Once the snapshot is in, the buffered diffs newer than the snapshot
+ * are replayed on top of it and the result replaces the live book in one step, so the book is
+ * never blank during a resync. A resync is started on the first diff, after a reconnect, and
+ * whenever the diffs go back in time or leave the book crossed.
+ * <p>
+ * {@link #onDiff} must always be called from the same thread; it is the book's only writer.
+ */
+public class OrderBookSynchronizer {
+
+    /**
+     * Loads a full order book snapshot.
+     */
+    public interface SnapshotLoader {
+        /**
+         * Start loading the snapshot.
+         * @param listener receives the levels, on any one thread
+         * @return the snapshot's microtimestamp, or {@link OrderBookParser#NO_TIMESTAMP},
+         *     completed exceptionally if the request fails
+         */
+        CompletableFuture<Long> load(OrderBookParser.Listener listener);
+    }
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final String market;
+    private final OrderBook book;
+    private final OrderBook staging;
+    private final SnapshotLoader loader;
+    private final ScheduledExecutorService loaderExecutor;
+
+    private final OrderBookParser parser = new OrderBookParser();
+    private final DiffBuffer buffer = new DiffBuffer();
+    private final OrderBookParser.Listener bookUpdater;
+    private final CountDownLatch syncedLatch = new CountDownLatch(1);
+
+    // Set from any thread, picked up by the writer on the next diff.
+    private final AtomicBoolean resyncRequested = new AtomicBoolean(true);
+    // Handed from the loader thread to the writer.
+    private volatile boolean snapshotReady;
+    private volatile boolean snapshotFailed;
+    private volatile long snapshotTimestamp;
+
+    // Writer thread only.
+    private DiffObserver observer;
+    private OrderBookParser.Listener teeTarget;
+    private final OrderBookParser.Listener tee = this::teeLevel;
+    private boolean syncing;
+    private long firstLoadDelayMillis;
+    private long lastTimestamp = OrderBookParser.NO_TIMESTAMP;
+
+    /**
+     * Ctor.
+     * @param market the market, used in log messages
+     * @param book the live order book
+     * @param loader loads the REST snapshot
+     * @param loaderExecutor starts the loads and schedules the retries
+     */
+    public OrderBookSynchronizer(String market, OrderBook book, SnapshotLoader loader,
+                                 ScheduledExecutorService loaderExecutor) {
+        this.market = market;
+        this.book = book;
+        this.staging = new OrderBook(0);
+        this.loader = loader;
+        this.bookUpdater = book::update;
+        this.loaderExecutor = loaderExecutor;
+    }
+
+    /**
+     * Apply a diff_order_book event. Must be called from the writer thread.
+     * @param data the event payload
+     */
+    public void onDiff(String data) {
+        onDiff(data, true);
+    }
+
+    /**
+     * Apply a diff_order_book event. Must be called from the writer thread.
+     * @param data the event payload
+     * @param publish whether to publish a snapshot now; if not, the caller publishes the book
+     *     after a batch of diffs
+     */
+    public void onDiff(String data, boolean publish) {
+        if (!syncing && resyncRequested.getAndSet(false)) {
+            startSync();
+        }
+
+        OrderBookParser.Listener target = syncing ? buffer : bookUpdater;
+        if (observer != null) {
+            teeTarget = target;
+            target = tee;
+        }
+        long timestamp = parser.parse(data, target);
+        if (syncing) {
+            buffer.endDiff(timestamp);
+            buffer.apply(buffer.size() - 1, book);
+        }
+        if (observer != null) {
+            observer.onDiffEnd(timestamp);
+        }
+
+        if (timestamp != OrderBookParser.NO_TIMESTAMP) {
+            if (timestamp < lastTimestamp) {
+                System.out.println("Out of order diff on " + market + ", resyncing");
+                resyncRequested.set(true);
+            }
+            lastTimestamp = timestamp;
+        }
+
+        if (syncing) {
+            if (snapshotReady) {
+                finishSync();
+            } else if (snapshotFailed) {
+                snapshotFailed = false;
+                scheduleLoad(RETRY_DELAY_MILLIS);
+            }
+        } else if (book.isCrossed()) {
+            System.out.println("Crossed book on " + market + ", resyncing");
+            resyncRequested.set(true);
+        } else if (book.needsRefill()) {
+            System.out.println("Order book depth exhausted on " + market + ", resyncing");
+            resyncRequested.set(true);
+        }
+
+        if (publish) {
+            book.publish();
+        }
+    }
+
+    /**
+     * Set the observer that sees every diff and sync. Must be set before the first diff.
+     * @param observer the observer, or null
+     */
+    public void setObserver(DiffObserver observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * Request a resync in the background, e.g. after the connection was re-established.
+     * Safe to call from any thread.
+     */
+    public void requestResync() {
+        resyncRequested.set(true);
+    }
+
+    /**
+     * Start from the levels already in the live book, e.g. loaded from a checkpoint, instead of
+     * waiting for the first snapshot. The book is published and {@link #awaitSynced} returns
+     * right away. The first diff still starts a resync that checks the book against a REST
+     * snapshot; until then, diffs are applied on top of the loaded levels. Must be called before
+     * the first diff.
+     * @param checkDelayMillis how long the first resync waits before loading the snapshot
+     */
+    public void warmStart(long checkDelayMillis) {
+        firstLoadDelayMillis = checkDelayMillis;
+        book.publish();
+        syncedLatch.countDown();
+    }
+
+    /**
+     * Block until the book has been synced with a snapshot once.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitSynced() throws InterruptedException {
+        syncedLatch.await();
+    }
+
+    /**
+     * Get the number of levels in the last diff. Writer thread only.
+     * @return the level count
+     */
+    public int getLastLevelCount() {
+        return parser.getLevelCount();
+    }
+
+    /**
+     * Get the exchange timestamp of the last diff that had one. Writer thread only.
+     * @return the microtimestamp, or {@link OrderBookParser#NO_TIMESTAMP}
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Check whether a snapshot is being loaded.
+     * @return true while syncing
+     */
+    public boolean isSyncing() {
+        return syncing;
+    }
+
+    private void startSync() {
+        syncing = true;
+        snapshotReady = false;
+        snapshotFailed = false;
+        buffer.clear();
+        scheduleLoad(firstLoadDelayMillis);
+        firstLoadDelayMillis = 0;
+    }
+
+    private void scheduleLoad(long delayMillis) {
+        loaderExecutor.schedule(() -> {
+            staging.clear();
+            CompletableFuture<Long> load;
+            try {
+                load = loader.load(staging::update);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                snapshotFailed = true;
+                return;
+            }
+            load.whenComplete((timestamp, e) -> {
+                if (e != null) {
+                    e.printStackTrace();
+                    snapshotFailed = true;
+                } else {
+                    snapshotTimestamp = timestamp;
+                    snapshotReady = true;
+                }
+            });
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void finishSync() {
+        long from = snapshotTimestamp;
+        int replayed = 0;
+        for (int i = 0; i < buffer.size(); i++) {
+            long timestamp = buffer.timestamp(i);
+            // Diffs without a timestamp can't be ordered against the snapshot, so keep them.
+            if (from == OrderBookParser.NO_TIMESTAMP || timestamp == OrderBookParser.NO_TIMESTAMP
+                || timestamp > from) {
+                buffer.apply(i, staging);
+                replayed++;
+            }
+        }
+        book.copyFrom(staging);
+        buffer.clear();
+        syncing = false;
+        snapshotReady = false;
+        System.out.println("Synced " + market + " order book, replayed " + replayed + " diffs");
+        if (observer != null) {
+            observer.onSnapshot(book, from);
+        }
+        syncedLatch.countDown();
+    }
+
+    private void teeLevel(boolean bid, long price, long volume) {
+        teeTarget.onLevel(bid, price, volume);
+        observer.onLevel(bid, price, volume);
+    }
+}
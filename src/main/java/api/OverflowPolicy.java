@@ -0,0 +1,16 @@
+package api;
+
+/**
+ * What the Pusher thread does when a partition's ingestion queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Wait for space. Nothing is lost, but a stalled partition stalls the websocket reader.
+     */
+    BLOCK,
+    /**
+     * Drop the message and resync the market's book and trades from REST.
+     * The websocket reader never waits.
+     */
+    DROP_AND_RESYNC
+}
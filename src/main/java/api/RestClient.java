@@ -0,0 +1,201 @@
+package api;
+
+import com.google.gson.stream.JsonReader;
+import dto.MarketTrade;
+import metrics.FeedMetrics;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking access to the Bitstamp REST API, shared by all markets of a {@link MarketRegistry}.
+ * <p>
+ * Requests are queued on the HTTP client's dispatcher, which reuses pooled connections, and the
+ * responses are parsed as they stream in on its threads. Concurrent requests for the same
+ * market's transactions share one call, and the result is cached for a short time. After that,
+ * the request is sent with the cached ETag so an unchanged list isn't sent again.
+ */
+final class RestClient {
+    private static final long TRANSACTIONS_TTL_MILLIS = 1000;
+
+    private final String orderBookApiUrl;
+    private final String tradesApiUrl;
+
+    private final OkHttpClient client;
+    private final FeedMetrics metrics;
+
+    private final Map<String, CompletableFuture<List<MarketTrade>>> pendingTrades =
+        new ConcurrentHashMap<>();
+    private final Map<String, CachedTrades> cachedTrades = new ConcurrentHashMap<>();
+
+    /**
+     * Ctor.
+     * @param client the HTTP client
+     * @param metrics records the request latencies
+     * @param restUrl the base URL of the REST API, ending with a slash
+     */
+    RestClient(OkHttpClient client, FeedMetrics metrics, String restUrl) {
+        this.orderBookApiUrl = restUrl + "order_book/";
+        this.tradesApiUrl = restUrl + "transactions/";
+        this.client = client;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Load a market's full order book, streaming the levels into a listener.
+     * The listener is called on an HTTP client thread.
+     * @param market the market
+     * @param listener receives the levels
+     * @return the snapshot's microtimestamp, or {@link OrderBookParser#NO_TIMESTAMP}
+     */
+    CompletableFuture<Long> orderBook(String market, OrderBookParser.Listener listener) {
+        Request request = new Request.Builder()
+            .url(orderBookApiUrl + market)
+            .build();
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        client.newCall(request).enqueue(new Callback() {
+            public void onFailure(Call call, IOException e) {
+                metrics.onRest(System.nanoTime() - start);
+                result.completeExceptionally(e);
+            }
+
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    if (!r.isSuccessful()) {
+                        throw new IOException("Order book request failed with " + r.code());
+                    }
+                    result.complete(new OrderBookParser().parse(r.body().charStream(), listener));
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    metrics.onRest(System.nanoTime() - start);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Get a market's recent transactions, from the cache if they were fetched moments ago.
+     * @param market the market
+     * @return the trades, newest first, as an unmodifiable list
+     */
+    CompletableFuture<List<MarketTrade>> transactions(String market) {
+        CachedTrades cached = cachedTrades.get(market);
+        if (cached != null && System.nanoTime() - cached.fetchedNanos
+            < TimeUnit.MILLISECONDS.toNanos(TRANSACTIONS_TTL_MILLIS)) {
+            return CompletableFuture.completedFuture(cached.trades);
+        }
+
+        CompletableFuture<List<MarketTrade>> result = new CompletableFuture<>();
+        CompletableFuture<List<MarketTrade>> pending = pendingTrades.putIfAbsent(market, result);
+        if (pending != null) {
+            return pending;
+        }
+        result.whenComplete((trades, e) -> pendingTrades.remove(market, result));
+        fetchTransactions(market, cached, result);
+        return result;
+    }
+
+    private void fetchTransactions(String market, CachedTrades cached,
+                                   CompletableFuture<List<MarketTrade>> result) {
+        Request.Builder builder = new Request.Builder().url(tradesApiUrl + market);
+        if (cached != null && cached.etag != null) {
+            builder.header("If-None-Match", cached.etag);
+        }
+        long start = System.nanoTime();
+        client.newCall(builder.build()).enqueue(new Callback() {
+            public void onFailure(Call call, IOException e) {
+                metrics.onRest(System.nanoTime() - start);
+                result.completeExceptionally(e);
+            }
+
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    List<MarketTrade> trades;
+                    if (r.code() == 304 && cached != null) {
+                        trades = cached.trades;
+                    } else if (r.isSuccessful()) {
+                        trades = Collections.unmodifiableList(
+                            parseTrades(new JsonReader(r.body().charStream())));
+                    } else {
+                        throw new IOException("Transactions request failed with " + r.code());
+                    }
+                    cachedTrades.put(market,
+                        new CachedTrades(trades, r.header("ETag"), System.nanoTime()));
+                    result.complete(trades);
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    metrics.onRest(System.nanoTime() - start);
+                }
+            }
+        });
+    }
+
+    private static List<MarketTrade> parseTrades(JsonReader reader) throws IOException {
+        List<MarketTrade> trades = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            long id = 0;
+            long date = 0;
+            BigDecimal price = null;
+            BigDecimal amount = null;
+            boolean buy = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "tid":
+                        id = Long.parseLong(reader.nextString());
+                        break;
+                    case "date":
+                        date = Long.parseLong(reader.nextString());
+                        break;
+                    case "price":
+                        price = new BigDecimal(reader.nextString());
+                        break;
+                    case "amount":
+                        amount = new BigDecimal(reader.nextString());
+                        break;
+                    case "type":
+                        buy = Integer.parseInt(reader.nextString()) == 0;
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (price == null || amount == null) {
+                throw new IOException("Malformed transaction " + id);
+            }
+            trades.add(new MarketTrade(id, date, price, amount, buy));
+        }
+        reader.endArray();
+        return trades;
+    }
+
+    private static final class CachedTrades {
+        final List<MarketTrade> trades;
+        final String etag;
+        final long fetchedNanos;
+
+        CachedTrades(List<MarketTrade> trades, String etag, long fetchedNanos) {
+            this.trades = trades;
+            this.etag = etag;
+            this.fetchedNanos = fetchedNanos;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package api;
+
+/**
+ * Notified when the top levels of an order book change, on the book's writer thread.
+ * Diffs that only touch deeper levels don't call it.
+ */
+public interface TopOfBookListener {
+    /**
+     * Called after a diff changed a price or volume within the watched depth. The book may only
+     * be read during the call.
+     * @param book the book
+     * @param receivedNanos when the diff that changed it was received, from
+     *     {@link System#nanoTime}
+     */
+    void onTopChanged(OrderBook book, long receivedNanos);
+}
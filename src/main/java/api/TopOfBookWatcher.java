@@ -0,0 +1,66 @@
+package api;
+
+/**
+ * Compares the top levels of a book after each diff with those seen last time, and notifies a
+ * {@link TopOfBookListener} when they differ. Writer thread only.
+ */
+final class TopOfBookWatcher {
+    private final int depth;
+    private final TopOfBookListener listener;
+
+    // Prices and volumes of the bids then the asks, as seen last time and now.
+    private long[] seen;
+    private long[] current;
+    private final long[] prices;
+    private final long[] volumes;
+
+    /**
+     * Ctor.
+     * @param depth the number of levels per side to watch
+     * @param listener the listener
+     */
+    TopOfBookWatcher(int depth, TopOfBookListener listener) {
+        this.depth = depth;
+        this.listener = listener;
+        seen = new long[4 * depth + 2];
+        current = new long[4 * depth + 2];
+        prices = new long[depth];
+        volumes = new long[depth];
+    }
+
+    /**
+     * Check the book after a diff.
+     * @param book the book
+     * @param receivedNanos when the diff was received
+     */
+    void check(OrderBook book, long receivedNanos) {
+        int bidDepth = book.getTopBids(depth, prices, volumes);
+        int index = copy(bidDepth, 0);
+        int askDepth = book.getTopAsks(depth, prices, volumes);
+        index = copy(askDepth, index);
+        current[index++] = bidDepth;
+        current[index++] = askDepth;
+        boolean changed = false;
+        for (int i = 0; i < index; i++) {
+            if (current[i] != seen[i]) {
+                changed = true;
+                break;
+            }
+        }
+        if (changed) {
+            long[] swap = seen;
+            seen = current;
+            current = swap;
+            listener.onTopChanged(book, receivedNanos);
+        }
+    }
+
+    private int copy(int count, int index) {
+        for (int i = 0; i < depth; i++) {
+            // Missing levels are compared as zero.
+            current[index++] = i < count ? prices[i] : 0;
+            current[index++] = i < count ? volumes[i] : 0;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,109 @@
+package api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import dto.MarketTrade;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The trades of one market, kept up to date from the live_trades channel.
+ * <p>
+ * REST is only used to backfill: after subscribing, and again after a reconnect. Live trades
+ * that arrive before the backfill completes are held back and appended after it, so the
+ * buffer stays in trade id order. All methods except {@link #latest} and
+ * {@link #addListener} must be called from the market's partition thread.
+ */
+public class TradeFeed {
+    private final Gson gson = new Gson();
+    private final TradeRing ring;
+    private final List<Consumer<MarketTrade>> listeners = new CopyOnWriteArrayList<>();
+
+    private final List<MarketTrade> pending = new ArrayList<>();
+    private boolean backfilled;
+
+    /**
+     * Ctor.
+     * @param capacity the number of trades kept
+     */
+    public TradeFeed(int capacity) {
+        this.ring = new TradeRing(capacity);
+    }
+
+    /**
+     * Register a listener that's called on the partition thread for every new trade.
+     * @param listener the listener
+     */
+    public void addListener(Consumer<MarketTrade> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Get the newest trades. Safe to call from any thread.
+     * @param n the maximum number of trades
+     * @return the trades, newest first
+     */
+    public List<MarketTrade> latest(int n) {
+        return ring.latest(n);
+    }
+
+    /**
+     * Apply a live_trades trade event.
+     * @param data the event payload
+     */
+    void onTrade(String data) {
+        JsonObject json = gson.fromJson(data, JsonObject.class);
+        MarketTrade trade = new MarketTrade(
+            json.get("id").getAsLong(),
+            json.get("timestamp").getAsLong(),
+            new BigDecimal(stringValue(json, "price")),
+            new BigDecimal(stringValue(json, "amount")),
+            json.get("type").getAsInt() == 0);
+
+        if (backfilled) {
+            append(trade);
+        } else {
+            pending.add(trade);
+        }
+    }
+
+    /**
+     * Hold back live trades until the next backfill, e.g. after a reconnect.
+     */
+    void startBackfill() {
+        backfilled = false;
+    }
+
+    /**
+     * Apply the REST trades and release the live trades held back meanwhile.
+     * @param trades the trades, newest first as returned by the REST API
+     */
+    void onBackfill(List<MarketTrade> trades) {
+        for (int i = trades.size() - 1; i >= 0; i--) {
+            append(trades.get(i));
+        }
+        for (MarketTrade trade : pending) {
+            append(trade);
+        }
+        pending.clear();
+        backfilled = true;
+    }
+
+    private void append(MarketTrade trade) {
+        if (ring.add(trade)) {
+            for (Consumer<MarketTrade> listener : listeners) {
+                listener.accept(trade);
+            }
+        }
+    }
+
+    private static String stringValue(JsonObject json, String name) {
+        // The *_str fields keep the exact decimal, the plain ones are JSON floats.
+        String exact = name + "_str";
+        return json.has(exact) ? json.get(exact).getAsString() : json.get(name).getAsString();
+    }
+}
@@ -0,0 +1,63 @@
+package api;
+
+import dto.MarketTrade;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded buffer of the latest trades, ordered by trade id.
+ * Once full, each new trade overwrites the oldest one.
+ */
+public class TradeRing {
+    private final MarketTrade[] trades;
+    private int next;
+    private int size;
+    private long lastId = -1;
+
+    /**
+     * Ctor.
+     * @param capacity the number of trades kept
+     */
+    public TradeRing(int capacity) {
+        this.trades = new MarketTrade[capacity];
+    }
+
+    /**
+     * Append a trade unless it's already in the buffer or older than the newest trade.
+     * @param trade the trade
+     * @return true if the trade was added
+     */
+    public synchronized boolean add(MarketTrade trade) {
+        if (trade.getId() <= lastId) {
+            return false;
+        }
+        trades[next] = trade;
+        next = (next + 1) % trades.length;
+        size = Math.min(size + 1, trades.length);
+        lastId = trade.getId();
+        return true;
+    }
+
+    /**
+     * Get the id of the newest trade.
+     * @return the id, or -1 if empty
+     */
+    public synchronized long getLastId() {
+        return lastId;
+    }
+
+    /**
+     * Get the newest trades.
+     * @param n the maximum number of trades
+     * @return the trades, newest first
+     */
+    public synchronized List<MarketTrade> latest(int n) {
+        int count = Math.min(n, size);
+        List<MarketTrade> result = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            result.add(trades[(next - i + trades.length) % trades.length]);
+        }
+        return result;
+    }
+}
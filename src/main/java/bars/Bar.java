@@ -0,0 +1,82 @@
+package bars;
+
+import api.FixedPoint;
+
+/**
+ * An immutable summary of the trades in one bar.
+ * Prices and volumes are {@link FixedPoint} longs, times are in seconds.
+ */
+public final class Bar {
+    private final long start;
+    private final long end;
+    private final long open;
+    private final long high;
+    private final long low;
+    private final long close;
+    private final long volume;
+    private final long buyVolume;
+    private final long sellVolume;
+    private final long vwap;
+    private final int ticks;
+
+    /**
+     * Ctor.
+     * @param start the start of the bar, for time bars aligned to the bar size
+     * @param end the time of the last trade
+     * @param open the first price
+     * @param high the highest price
+     * @param low the lowest price
+     * @param close the last price
+     * @param volume the traded volume
+     * @param buyVolume the volume of trades whose taker bought
+     * @param sellVolume the volume of trades whose taker sold
+     * @param vwap the volume-weighted average price
+     * @param ticks the number of trades
+     */
+    public Bar(long start, long end, long open, long high, long low, long close, long volume,
+               long buyVolume, long sellVolume, long vwap, int ticks) {
+        this.start = start;
+        this.end = end;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.buyVolume = buyVolume;
+        this.sellVolume = sellVolume;
+        this.vwap = vwap;
+        this.ticks = ticks;
+    }
+
+    public long getStart() { return start; }
+    public long getEnd() { return end; }
+    public long getOpen() { return open; }
+    public long getHigh() { return high; }
+    public long getLow() { return low; }
+    public long getClose() { return close; }
+    public long getVolume() { return volume; }
+    public long getBuyVolume() { return buyVolume; }
+    public long getSellVolume() { return sellVolume; }
+    public long getVwap() { return vwap; }
+    public int getTicks() { return ticks; }
+
+    /**
+     * Format the bar as a CSV line:
+     * {@code start,end,open,high,low,close,volume,buy volume,sell volume,vwap,ticks}.
+     * @return the line, without a line separator
+     */
+    public String toCsv() {
+        return start + "," + end + "," + format(open) + "," + format(high) + "," + format(low) + ","
+            + format(close) + "," + format(volume) + "," + format(buyVolume) + ","
+            + format(sellVolume) + "," + format(vwap) + "," + ticks;
+    }
+
+    @Override
+    public String toString() {
+        return "Bar{" + toCsv() + "}";
+    }
+
+    private static String format(long value) {
+        return FixedPoint.toBigDecimal(value).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,208 @@
+package bars;
+
+import api.FixedPoint;
+import dto.MarketTrade;
+import sim.TickChunk;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Builds bars of one type and size from a stream of trades.
+ * <p>
+ * The bar in progress is kept in primitive fields, so a trade only allocates when it closes a
+ * bar. Completed bars go to a {@link BarRing} of fixed size and to the listeners. Time bars are
+ * only emitted for intervals that had trades.
+ * <p>
+ * Trades must be fed from one thread at a time; the bars can be read from any thread.
+ */
+public class BarAggregator {
+    private final BarType type;
+    private final long size;
+    private final BarRing ring;
+    private final List<Consumer<Bar>> listeners = new CopyOnWriteArrayList<>();
+
+    // The bar in progress, guarded by this.
+    private int ticks;
+    private long start;
+    private long end;
+    private long open;
+    private long high;
+    private long low;
+    private long close;
+    private long volume;
+    private long buyVolume;
+    private long sellVolume;
+    private double notional;
+
+    /**
+     * Ctor.
+     * @param type what closes a bar
+     * @param size the seconds, fixed-point volume or number of trades per bar
+     * @param capacity the number of completed bars to keep
+     */
+    public BarAggregator(BarType type, long size, int capacity) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Bar size must be positive: " + size);
+        }
+        this.type = type;
+        this.size = size;
+        this.ring = new BarRing(capacity);
+    }
+
+    /**
+     * Create an aggregator from a spec such as {@code time:60} (seconds), {@code volume:10.5}
+     * or {@code tick:100}.
+     * @param spec the spec
+     * @param capacity the number of completed bars to keep
+     * @return the aggregator
+     */
+    public static BarAggregator fromSpec(String spec, int capacity) {
+        String[] parts = spec.trim().split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Malformed bar spec: " + spec);
+        }
+        switch (parts[0]) {
+            case "time":
+                return new BarAggregator(BarType.TIME, Long.parseLong(parts[1]), capacity);
+            case "volume":
+                return new BarAggregator(BarType.VOLUME,
+                    FixedPoint.fromBigDecimal(new BigDecimal(parts[1])), capacity);
+            case "tick":
+                return new BarAggregator(BarType.TICK, Long.parseLong(parts[1]), capacity);
+            default:
+                throw new IllegalArgumentException("Unknown bar type: " + spec);
+        }
+    }
+
+    /**
+     * Add a listener for completed bars, called on the thread that feeds the trades.
+     * @param listener the listener
+     */
+    public void addListener(Consumer<Bar> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Add a live trade.
+     * @param trade the trade
+     */
+    public void onTrade(MarketTrade trade) {
+        onTick(trade.getTime(), FixedPoint.fromBigDecimal(trade.getPrice()),
+            FixedPoint.fromBigDecimal(trade.getVolume()),
+            trade.isBuy() ? TickChunk.BUY : TickChunk.SELL);
+    }
+
+    /**
+     * Add all ticks of a chunk.
+     * @param chunk the ticks
+     */
+    public void onTicks(TickChunk chunk) {
+        for (int i = 0; i < chunk.size(); i++) {
+            onTick(chunk.time(i), chunk.price(i), chunk.volume(i), chunk.side(i));
+        }
+    }
+
+    /**
+     * Add a trade.
+     * @param time the trade time in seconds
+     * @param price the fixed-point price
+     * @param volume the fixed-point volume
+     * @param side {@link TickChunk#BUY}, {@link TickChunk#SELL} or {@link TickChunk#UNKNOWN}
+     */
+    public void onTick(long time, long price, long volume, byte side) {
+        Bar before = null;
+        Bar after;
+        synchronized (this) {
+            if (type == BarType.TIME && ticks > 0 && time >= start + size) {
+                before = complete();
+            }
+            add(time, price, volume, side);
+            after = type == BarType.VOLUME && this.volume >= size
+                || type == BarType.TICK && ticks >= size ? complete() : null;
+        }
+        publish(before);
+        publish(after);
+    }
+
+    /**
+     * Complete the bar in progress early, e.g. at the end of a file.
+     */
+    public void flush() {
+        Bar bar;
+        synchronized (this) {
+            bar = ticks > 0 ? complete() : null;
+        }
+        publish(bar);
+    }
+
+    /**
+     * Get the bar in progress.
+     * @return the partial bar, or null if it has no trades yet
+     */
+    public synchronized Bar current() {
+        return ticks > 0 ? toBar() : null;
+    }
+
+    /**
+     * Get the newest completed bars.
+     * @param n the maximum number of bars
+     * @return the bars, newest first
+     */
+    public List<Bar> latest(int n) {
+        return ring.latest(n);
+    }
+
+    public BarType getType() { return type; }
+    public long getSize() { return size; }
+
+    private void add(long time, long price, long volume, byte side) {
+        if (ticks == 0) {
+            start = type == BarType.TIME ? time - Math.floorMod(time, size) : time;
+            open = price;
+            high = price;
+            low = price;
+        } else {
+            high = Math.max(high, price);
+            low = Math.min(low, price);
+        }
+        ticks++;
+        end = time;
+        close = price;
+        this.volume += volume;
+        if (side == TickChunk.BUY) {
+            buyVolume += volume;
+        } else if (side == TickChunk.SELL) {
+            sellVolume += volume;
+        }
+        notional += (double) price * volume;
+    }
+
+    private Bar complete() {
+        Bar bar = toBar();
+        ring.add(bar);
+        ticks = 0;
+        volume = 0;
+        buyVolume = 0;
+        sellVolume = 0;
+        notional = 0;
+        return bar;
+    }
+
+    private Bar toBar() {
+        long vwap = volume == 0 ? close : Math.round(notional / volume);
+        return new Bar(start, end, open, high, low, close, volume, buyVolume, sellVolume, vwap,
+            ticks);
+    }
+
+    private void publish(Bar bar) {
+        if (bar == null) {
+            return;
+        }
+        for (Consumer<Bar> listener : listeners) {
+            listener.accept(bar);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package bars;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded buffer of the latest completed bars.
+ * Once full, each new bar overwrites the oldest one.
+ */
+public class BarRing {
+    private final Bar[] bars;
+    private int next;
+    private int size;
+
+    /**
+     * Ctor.
+     * @param capacity the number of bars kept
+     */
+    public BarRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Bar capacity must be positive: " + capacity);
+        }
+        this.bars = new Bar[capacity];
+    }
+
+    /**
+     * Append a bar.
+     * @param bar the bar
+     */
+    public synchronized void add(Bar bar) {
+        bars[next] = bar;
+        next = (next + 1) % bars.length;
+        size = Math.min(size + 1, bars.length);
+    }
+
+    /**
+     * Get the number of bars kept.
+     * @return the size
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Get the newest bars.
+     * @param n the maximum number of bars
+     * @return the bars, newest first
+     */
+    public synchronized List<Bar> latest(int n) {
+        int count = Math.min(n, size);
+        List<Bar> result = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            result.add(bars[(next - i + bars.length) % bars.length]);
+        }
+        return result;
+    }
+}
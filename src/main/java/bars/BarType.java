@@ -0,0 +1,19 @@
+package bars;
+
+/**
+ * What closes a bar.
+ */
+public enum BarType {
+    /**
+     * A fixed number of seconds, aligned to multiples of the bar size.
+     */
+    TIME,
+    /**
+     * A fixed traded volume. The trade that reaches it is included, so bars may be slightly larger.
+     */
+    VOLUME,
+    /**
+     * A fixed number of trades.
+     */
+    TICK
+}
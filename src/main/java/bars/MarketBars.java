@@ -0,0 +1,54 @@
+package bars;
+
+import dto.MarketTrade;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The bar aggregators of one market, all fed from its trade stream.
+ */
+public class MarketBars {
+    private final Map<String, BarAggregator> aggregators = new LinkedHashMap<>();
+
+    /**
+     * Ctor.
+     * @param specs the bar specs, see {@link BarAggregator#fromSpec}
+     * @param capacity the number of completed bars to keep per aggregator
+     */
+    public MarketBars(List<String> specs, int capacity) {
+        for (String spec : specs) {
+            aggregators.put(spec.trim(), BarAggregator.fromSpec(spec, capacity));
+        }
+    }
+
+    /**
+     * Add a trade to every aggregator.
+     * @param trade the trade
+     */
+    public void onTrade(MarketTrade trade) {
+        for (BarAggregator aggregator : aggregators.values()) {
+            aggregator.onTrade(trade);
+        }
+    }
+
+    /**
+     * Get an aggregator by its spec.
+     * @param spec the spec, e.g. {@code time:60}
+     * @return the aggregator, or null if there's none for that spec
+     */
+    public BarAggregator get(String spec) {
+        return aggregators.get(spec);
+    }
+
+    /**
+     * Get the specs of all aggregators.
+     * @return the specs, in configuration order
+     */
+    public List<String> getSpecs() {
+        return Collections.unmodifiableList(new ArrayList<>(aggregators.keySet()));
+    }
+}
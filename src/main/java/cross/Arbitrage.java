@@ -0,0 +1,59 @@
+package cross;
+
+import java.util.List;
+
+/**
+ * A triangular cycle that ends with more of its start currency than it began with, after fees,
+ * at the prices of the books when it was found.
+ */
+public final class Arbitrage {
+    private final List<String> currencies;
+    private final List<String> markets;
+    private final double topProfitBps;
+    private final double amountIn;
+    private final double amountOut;
+    private final long latencyNanos;
+
+    /**
+     * Ctor.
+     * @param currencies the currencies in the order they are traded, starting and ending with
+     *     the start currency
+     * @param markets the market of each leg
+     * @param topProfitBps the profit of a small amount at the best prices, in basis points
+     * @param amountIn how much of the start currency can go through the cycle at a profit,
+     *     within the watched depth
+     * @param amountOut how much of the start currency comes back
+     * @param latencyNanos the time from receiving the diff that led to it to finding it
+     */
+    public Arbitrage(List<String> currencies, List<String> markets, double topProfitBps,
+                     double amountIn, double amountOut, long latencyNanos) {
+        this.currencies = currencies;
+        this.markets = markets;
+        this.topProfitBps = topProfitBps;
+        this.amountIn = amountIn;
+        this.amountOut = amountOut;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public List<String> getCurrencies() { return currencies; }
+    public List<String> getMarkets() { return markets; }
+    public double getTopProfitBps() { return topProfitBps; }
+    public double getAmountIn() { return amountIn; }
+    public double getAmountOut() { return amountOut; }
+    public long getLatencyNanos() { return latencyNanos; }
+
+    /**
+     * Get the profit of going through the cycle with {@link #getAmountIn}.
+     * @return the profit in the start currency
+     */
+    public double getProfit() {
+        return amountOut - amountIn;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s via %s: %.2f bps at the top, %.8f %s in, %.8f profit,"
+                + " found in %d us", String.join(">", currencies), String.join(",", markets),
+            topProfitBps, amountIn, currencies.get(0), getProfit(), latencyNanos / 1000);
+    }
+}
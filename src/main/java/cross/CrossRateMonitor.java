@@ -0,0 +1,652 @@
+package cross;
+
+import api.FixedPoint;
+import api.OrderBook;
+import api.TopOfBookListener;
+import metrics.LatencyHistogram;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Relates the books of markets that share currencies: keeps the prices each market is implied
+ * at through a third currency, and finds triangular cycles that are profitable after fees.
+ * <p>
+ * Each market's top levels are copied on its partition thread, only when they change, into a
+ * slot the monitor thread picks up. When a market's book changes more than once before the
+ * monitor gets to it, only its latest levels are used. The monitor recomputes only the implied
+ * prices and cycles that involve the changed market, so one thread keeps up with all markets.
+ * The detection latency is measured from receiving the oldest diff not yet picked up.
+ * <p>
+ * A cycle is walked through the watched levels of its three books, as long as the next part of
+ * it is still profitable, to find how much can go through it. Add the markets, then
+ * {@link #start} and register the {@link #listener} of each market with
+ * {@link api.BitstampApiEndpoint#setTopOfBookListener}.
+ */
+public class CrossRateMonitor implements Closeable {
+
+    /**
+     * Receives the profitable cycles, on the monitor thread.
+     */
+    public interface Listener {
+        /**
+         * Called whenever a cycle is found profitable after one of its books changed.
+         * @param arbitrage the cycle
+         */
+        void onArbitrage(Arbitrage arbitrage);
+    }
+
+    // Quote currencies of Bitstamp markets, longest first so usdt isn't taken for usd.
+    private static final String[] QUOTES = {"usdt", "usdc", "usd", "eur", "gbp", "btc", "eth"};
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long NOT_PENDING = -1;
+
+    private final int depth;
+    private final double feeFactor;
+    private final double minRatio;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final List<String> names = new ArrayList<>();
+    private final List<String[]> pairs = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final Map<String, Integer> currencyIndexes = new HashMap<>();
+    private final List<String> currencies = new ArrayList<>();
+
+    private Market[] markets;
+    private Cycle[] cycles;
+    private Implied[] implied;
+    private AtomicIntegerArray dirty;
+    private Thread thread;
+    private volatile boolean sleeping;
+    private volatile boolean running;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private volatile long topChanges;
+    private volatile long evaluated;
+    private volatile long found;
+    private volatile Arbitrage last;
+    // Monitor thread only, published to the counters above once per update.
+    private long evaluatedCount;
+    private long foundCount;
+    private ScheduledExecutorService logger;
+
+    // Monitor thread only: the level reached and what's left of it, per leg of a cycle.
+    private final int[] level = new int[3];
+    private final double[] remaining = new double[3];
+
+    /**
+     * Ctor.
+     * @param depth the number of levels per side to walk
+     * @param feeBps the fee of each leg in basis points
+     * @param minProfitBps the profit a cycle needs after fees to be reported, in basis points
+     */
+    public CrossRateMonitor(int depth, double feeBps, double minProfitBps) {
+        this.depth = depth;
+        this.feeFactor = 1 - feeBps / 10_000;
+        this.minRatio = 1 + minProfitBps / 10_000;
+    }
+
+    /**
+     * Split a Bitstamp market into its base and quote currencies.
+     * @param market the market, e.g. btceur
+     * @return the base and the quote, or null if the quote isn't known
+     */
+    public static String[] splitMarket(String market) {
+        for (String quote : QUOTES) {
+            if (market.length() > quote.length() && market.endsWith(quote)) {
+                String base = market.substring(0, market.length() - quote.length());
+                return new String[] {base, quote};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a market. Call before {@link #start}.
+     * @param market the market
+     * @param base the currency bought and sold
+     * @param quote the currency prices are in
+     */
+    public void add(String market, String base, String quote) {
+        if (running) {
+            throw new IllegalStateException("Markets must be added before the monitor starts");
+        }
+        if (indexes.containsKey(market)) {
+            return;
+        }
+        indexes.put(market, names.size());
+        names.add(market);
+        pairs.add(new String[] {base, quote});
+        for (String currency : pairs.get(pairs.size() - 1)) {
+            if (!currencyIndexes.containsKey(currency)) {
+                currencyIndexes.put(currency, currencies.size());
+                currencies.add(currency);
+            }
+        }
+    }
+
+    /**
+     * Add a listener. Call before {@link #start} to see every cycle.
+     * @param listener the listener
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Find the implied prices and cycles of the added markets and start the monitor thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        markets = new Market[names.size()];
+        for (int i = 0; i < markets.length; i++) {
+            markets[i] = new Market(currencyIndexes.get(pairs.get(i)[0]),
+                currencyIndexes.get(pairs.get(i)[1]), depth);
+        }
+        findPaths();
+        dirty = new AtomicIntegerArray(markets.length);
+        running = true;
+        thread = new Thread(this::run, "cross-rates");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Edge 2k sells market k's base for its quote at the bids, edge 2k + 1 buys it at the asks.
+    private int from(int edge) {
+        Market market = markets[edge >> 1];
+        return (edge & 1) == 0 ? market.base : market.quote;
+    }
+
+    private int to(int edge) {
+        return from(edge ^ 1);
+    }
+
+    private void findPaths() {
+        List<List<Integer>> outgoing = new ArrayList<>();
+        for (int i = 0; i < currencies.size(); i++) {
+            outgoing.add(new ArrayList<>());
+        }
+        for (int edge = 0; edge < 2 * markets.length; edge++) {
+            outgoing.get(from(edge)).add(edge);
+        }
+
+        // Each cycle is found once per leg it can start with; it's kept starting with its
+        // lowest edge.
+        List<Cycle> cycleList = new ArrayList<>();
+        for (int first = 0; first < 2 * markets.length; first++) {
+            for (int second : outgoing.get(to(first))) {
+                if (second <= first || to(second) == from(first)) {
+                    continue;
+                }
+                for (int third : outgoing.get(to(second))) {
+                    if (third > first && to(third) == from(first)
+                        && (third >> 1) != (first >> 1) && (third >> 1) != (second >> 1)) {
+                        cycleList.add(new Cycle(new int[] {first, second, third}));
+                    }
+                }
+            }
+        }
+        cycles = cycleList.toArray(new Cycle[0]);
+
+        // A market's base sold through another currency into its quote, and the reverse.
+        List<Implied> impliedList = new ArrayList<>();
+        for (int k = 0; k < markets.length; k++) {
+            for (int first : outgoing.get(markets[k].base)) {
+                if ((first >> 1) == k) {
+                    continue;
+                }
+                for (int second : outgoing.get(to(first))) {
+                    if (to(second) == markets[k].quote && (second >> 1) != k) {
+                        impliedList.add(new Implied(k, first, second));
+                    }
+                }
+            }
+        }
+        implied = impliedList.toArray(new Implied[0]);
+
+        List<List<Integer>> marketCycles = new ArrayList<>();
+        List<List<Integer>> marketImplied = new ArrayList<>();
+        for (int k = 0; k < markets.length; k++) {
+            marketCycles.add(new ArrayList<>());
+            marketImplied.add(new ArrayList<>());
+        }
+        for (int c = 0; c < cycles.length; c++) {
+            for (int edge : cycles[c].edges) {
+                marketCycles.get(edge >> 1).add(c);
+            }
+        }
+        for (int i = 0; i < implied.length; i++) {
+            marketImplied.get(implied[i].market).add(i);
+            marketImplied.get(implied[i].first >> 1).add(i);
+            marketImplied.get(implied[i].second >> 1).add(i);
+        }
+        for (int k = 0; k < markets.length; k++) {
+            markets[k].cycles = toArray(marketCycles.get(k));
+            markets[k].implied = toArray(marketImplied.get(k));
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Get the listener that copies a market's top levels for the monitor. Call after
+     * {@link #start}.
+     * @param market the market
+     * @return the listener
+     */
+    public TopOfBookListener listener(String market) {
+        Integer index = indexes.get(market);
+        if (index == null || markets == null) {
+            throw new IllegalArgumentException("Not monitoring " + market);
+        }
+        Market slot = markets[index];
+        return (book, receivedNanos) -> {
+            slot.offer(book, receivedNanos);
+            dirty.set(index, 1);
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        };
+    }
+
+    /**
+     * Get the number of triangular cycles watched.
+     * @return the number of cycles, in both directions
+     */
+    public int getCycleCount() {
+        return cycles == null ? 0 : cycles.length;
+    }
+
+    /**
+     * Get a market's implied prices as of the latest books.
+     * @param market the market
+     * @return the prices, one per currency it can be traded through
+     */
+    public List<ImpliedPrice> getImpliedPrices(String market) {
+        Integer index = indexes.get(market);
+        if (index == null || markets == null) {
+            return Collections.emptyList();
+        }
+        List<ImpliedPrice> prices = new ArrayList<>();
+        for (Implied entry : implied) {
+            if (entry.market == index && entry.price != null) {
+                prices.add(entry.price);
+            }
+        }
+        return prices;
+    }
+
+    /**
+     * Get the detection latency.
+     * @return the histogram of nanoseconds from receiving a diff that changed a book to having
+     *     recomputed everything that depends on it
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    private void run() {
+        int idle = 0;
+        while (running) {
+            int count = 0;
+            for (int k = 0; k < markets.length; k++) {
+                if (dirty.get(k) != 0) {
+                    // Cleared first, so a change copied while this one is handled is seen.
+                    dirty.set(k, 0);
+                    update(k);
+                    count++;
+                }
+            }
+            if (count > 0) {
+                idle = 0;
+            } else if (++idle < SPINS_BEFORE_PARK) {
+                Thread.yield();
+            } else {
+                sleeping = true;
+                // Check again so a change copied before the flag was set isn't missed.
+                if (!isDirty()) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    private boolean isDirty() {
+        for (int k = 0; k < markets.length; k++) {
+            if (dirty.get(k) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void update(int k) {
+        Market market = markets[k];
+        long receivedNanos = market.take(feeFactor);
+        if (receivedNanos == NOT_PENDING) {
+            // Already taken along with the change before.
+            return;
+        }
+        for (int i : market.implied) {
+            updateImplied(implied[i]);
+        }
+        for (int c : market.cycles) {
+            evaluate(cycles[c], receivedNanos);
+        }
+        latency.record(System.nanoTime() - receivedNanos);
+        topChanges = topChanges + 1;
+        evaluated = evaluatedCount;
+        found = foundCount;
+    }
+
+    // The rate of a leg at a level, after fees, and how much of its input currency it takes.
+    private double rate(int edge, int lvl) {
+        Market market = markets[edge >> 1];
+        return (edge & 1) == 0 ? market.bidRates[lvl] : market.askRates[lvl];
+    }
+
+    private double capacity(int edge, int lvl) {
+        Market market = markets[edge >> 1];
+        return (edge & 1) == 0 ? market.bidCapacities[lvl] : market.askCapacities[lvl];
+    }
+
+    private int levels(int edge) {
+        Market market = markets[edge >> 1];
+        return (edge & 1) == 0 ? market.bidLevels : market.askLevels;
+    }
+
+    private void evaluate(Cycle cycle, long receivedNanos) {
+        evaluatedCount++;
+        int[] edges = cycle.edges;
+        for (int leg = 0; leg < 3; leg++) {
+            if (levels(edges[leg]) == 0) {
+                return;
+            }
+            level[leg] = 0;
+            remaining[leg] = capacity(edges[leg], 0);
+        }
+        double topRatio = rate(edges[0], 0) * rate(edges[1], 0) * rate(edges[2], 0);
+        if (topRatio <= minRatio) {
+            return;
+        }
+
+        // Take the best levels of all legs as long as going through them still pays, each step
+        // as much as the tightest leg allows.
+        double amountIn = 0;
+        double amountOut = 0;
+        while (true) {
+            double rate0 = rate(edges[0], level[0]);
+            double rate1 = rate(edges[1], level[1]);
+            double ratio = rate0 * rate1 * rate(edges[2], level[2]);
+            if (ratio <= minRatio) {
+                break;
+            }
+            int tightest = 0;
+            double step = remaining[0];
+            if (remaining[1] / rate0 < step) {
+                tightest = 1;
+                step = remaining[1] / rate0;
+            }
+            if (remaining[2] / (rate0 * rate1) < step) {
+                tightest = 2;
+                step = remaining[2] / (rate0 * rate1);
+            }
+            amountIn += step;
+            amountOut += step * ratio;
+            remaining[0] -= step;
+            remaining[1] -= step * rate0;
+            remaining[2] -= step * rate0 * rate1;
+            remaining[tightest] = 0;
+
+            boolean exhausted = false;
+            for (int leg = 0; leg < 3; leg++) {
+                if (remaining[leg] <= 0) {
+                    if (++level[leg] == levels(edges[leg])) {
+                        exhausted = true;
+                    } else {
+                        remaining[leg] = capacity(edges[leg], level[leg]);
+                    }
+                }
+            }
+            if (exhausted) {
+                break;
+            }
+        }
+
+        foundCount++;
+        Arbitrage arbitrage = new Arbitrage(cycle.path, cycle.legs,
+            (topRatio - 1) * 10_000, amountIn, amountOut, System.nanoTime() - receivedNanos);
+        last = arbitrage;
+        for (Listener listener : listeners) {
+            try {
+                listener.onArbitrage(arbitrage);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void updateImplied(Implied entry) {
+        Market market = markets[entry.market];
+        // The prices without fees: sell the base through the other currency for the bid, buy it
+        // back the same way for the ask.
+        double bid = rawRate(entry.first) * rawRate(entry.second);
+        double ask = rawRate(entry.second ^ 1) * rawRate(entry.first ^ 1);
+        entry.price = new ImpliedPrice(names.get(entry.market),
+            currencies.get(to(entry.first)), Math.round(bid * FixedPoint.ONE),
+            ask == 0 ? 0 : Math.round(FixedPoint.ONE / ask),
+            market.bidLevels > 0 ? market.bestBid : 0,
+            market.askLevels > 0 ? market.bestAsk : 0);
+    }
+
+    private double rawRate(int edge) {
+        Market market = markets[edge >> 1];
+        if ((edge & 1) == 0) {
+            return market.bidLevels > 0 ? (double) market.bestBid / FixedPoint.ONE : 0;
+        }
+        return market.askLevels > 0 ? (double) FixedPoint.ONE / market.bestAsk : 0;
+    }
+
+    /**
+     * Log the top changes handled, the cycles evaluated and found profitable, and the detection
+     * latency at a fixed interval. Call after {@link #start}.
+     * @param intervalSeconds the interval
+     */
+    public synchronized void startLogging(long intervalSeconds) {
+        if (logger != null) {
+            return;
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread logThread = new Thread(r, "cross-rates-log");
+            logThread.setDaemon(true);
+            return logThread;
+        });
+        logger.scheduleAtFixedRate(new Runnable() {
+            private long[] lastCounts = latency.getCounts();
+            private long lastTopChanges;
+            private long lastEvaluated;
+            private long lastFound;
+
+            @Override
+            public void run() {
+                long[] counts = latency.getCounts();
+                long[] interval = LatencyHistogram.subtract(counts, lastCounts);
+                lastCounts = counts;
+                long changes = topChanges;
+                long cyclesEvaluated = evaluated;
+                long cyclesFound = found;
+                Arbitrage latest = last;
+                System.out.println("Cross rates: " + (changes - lastTopChanges)
+                    + " top changes, " + (cyclesEvaluated - lastEvaluated) + " of "
+                    + cycles.length + " cycles evaluated, " + (cyclesFound - lastFound)
+                    + " profitable, latency p50 "
+                    + LatencyHistogram.getValueAtPercentile(interval, 50) / 1000 + " us p99 "
+                    + LatencyHistogram.getValueAtPercentile(interval, 99) / 1000 + " us"
+                    + (latest != null && cyclesFound > lastFound ? ", last " + latest : ""));
+                lastTopChanges = changes;
+                lastEvaluated = cyclesEvaluated;
+                lastFound = cyclesFound;
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop the monitor thread and the logging.
+     */
+    @Override
+    public synchronized void close() {
+        if (logger != null) {
+            logger.shutdown();
+        }
+        if (running) {
+            running = false;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * A market's top levels: a slot written on its partition thread, and the copy the monitor
+     * works on.
+     */
+    private static final class Market {
+        final int base;
+        final int quote;
+        int[] cycles;
+        int[] implied;
+
+        // Guarded by the market's lock.
+        final long[] bidPrices;
+        final long[] bidVolumes;
+        final long[] askPrices;
+        final long[] askVolumes;
+        int bidDepth;
+        int askDepth;
+        boolean pending;
+        long receivedNanos;
+
+        // Monitor thread only.
+        final double[] bidRates;
+        final double[] bidCapacities;
+        final double[] askRates;
+        final double[] askCapacities;
+        int bidLevels;
+        int askLevels;
+        long bestBid;
+        long bestAsk;
+
+        Market(int base, int quote, int depth) {
+            this.base = base;
+            this.quote = quote;
+            bidPrices = new long[depth];
+            bidVolumes = new long[depth];
+            askPrices = new long[depth];
+            askVolumes = new long[depth];
+            bidRates = new double[depth];
+            bidCapacities = new double[depth];
+            askRates = new double[depth];
+            askCapacities = new double[depth];
+        }
+
+        synchronized void offer(OrderBook book, long nanos) {
+            bidDepth = book.getTopBids(bidPrices.length, bidPrices, bidVolumes);
+            askDepth = book.getTopAsks(askPrices.length, askPrices, askVolumes);
+            if (!pending) {
+                pending = true;
+                receivedNanos = nanos;
+            }
+        }
+
+        /**
+         * Copy the latest levels for the monitor as rates of each leg.
+         * @param feeFactor what is left of each leg after fees
+         * @return when the oldest diff behind them was received, or {@link #NOT_PENDING} if
+         *     they were taken already
+         */
+        synchronized long take(double feeFactor) {
+            if (!pending) {
+                return NOT_PENDING;
+            }
+            pending = false;
+            bidLevels = bidDepth;
+            askLevels = askDepth;
+            if (bidLevels > 0 && askLevels > 0 && bidPrices[0] >= askPrices[0]) {
+                // A crossed book is mid-resync; don't trade on it.
+                bidLevels = 0;
+                askLevels = 0;
+            }
+            bestBid = bidLevels > 0 ? bidPrices[0] : 0;
+            bestAsk = askLevels > 0 ? askPrices[0] : 0;
+            for (int i = 0; i < bidLevels; i++) {
+                // Selling the base gets the price in quote per unit of base.
+                bidRates[i] = (double) bidPrices[i] / FixedPoint.ONE * feeFactor;
+                bidCapacities[i] = (double) bidVolumes[i] / FixedPoint.ONE;
+            }
+            for (int i = 0; i < askLevels; i++) {
+                // Buying the base spends the price in quote per unit of base.
+                askRates[i] = (double) FixedPoint.ONE / askPrices[i] * feeFactor;
+                askCapacities[i] = (double) askVolumes[i] / FixedPoint.ONE * askPrices[i]
+                    / FixedPoint.ONE;
+            }
+            return receivedNanos;
+        }
+    }
+
+    /**
+     * Three legs through three currencies back to the first.
+     */
+    private final class Cycle {
+        final int[] edges;
+        final List<String> path;
+        final List<String> legs;
+
+        Cycle(int[] edges) {
+            this.edges = edges;
+            List<String> path = new ArrayList<>();
+            List<String> legs = new ArrayList<>();
+            for (int edge : edges) {
+                path.add(currencies.get(from(edge)));
+                legs.add(names.get(edge >> 1));
+            }
+            path.add(path.get(0));
+            this.path = Collections.unmodifiableList(path);
+            this.legs = Collections.unmodifiableList(legs);
+        }
+    }
+
+    /**
+     * A market's price through one other currency: its base sold along the first and second
+     * edge.
+     */
+    private static final class Implied {
+        final int market;
+        final int first;
+        final int second;
+        volatile ImpliedPrice price;
+
+        Implied(int market, int first, int second) {
+            this.market = market;
+            this.first = first;
+            this.second = second;
+        }
+    }
+}
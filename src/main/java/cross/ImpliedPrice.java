@@ -0,0 +1,50 @@
+package cross;
+
+import api.FixedPoint;
+
+/**
+ * A market's price implied by going through a third currency, next to its own best prices.
+ * For example btceur via usd is implied by btcusd and eurusd.
+ */
+public final class ImpliedPrice {
+    private final String market;
+    private final String via;
+    private final long bid;
+    private final long ask;
+    private final long directBid;
+    private final long directAsk;
+
+    /**
+     * Ctor.
+     * @param market the market
+     * @param via the currency gone through
+     * @param bid the fixed-point price the base can be sold at through the other markets, or 0
+     *     if one of them has no bids or asks
+     * @param ask the fixed-point price the base can be bought at through the other markets, or 0
+     * @param directBid the market's own fixed-point best bid, or 0
+     * @param directAsk the market's own fixed-point best ask, or 0
+     */
+    public ImpliedPrice(String market, String via, long bid, long ask, long directBid,
+                        long directAsk) {
+        this.market = market;
+        this.via = via;
+        this.bid = bid;
+        this.ask = ask;
+        this.directBid = directBid;
+        this.directAsk = directAsk;
+    }
+
+    public String getMarket() { return market; }
+    public String getVia() { return via; }
+    public long getBid() { return bid; }
+    public long getAsk() { return ask; }
+    public long getDirectBid() { return directBid; }
+    public long getDirectAsk() { return directAsk; }
+
+    @Override
+    public String toString() {
+        return market + " via " + via + " " + FixedPoint.toBigDecimal(bid) + " / "
+            + FixedPoint.toBigDecimal(ask) + ", direct " + FixedPoint.toBigDecimal(directBid)
+            + " / " + FixedPoint.toBigDecimal(directAsk);
+    }
+}
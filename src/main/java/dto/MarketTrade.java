@@ -6,23 +6,31 @@ import java.math.BigDecimal;
  * A trade that occurred on the market.
  */
 public class MarketTrade {
+    private final long id;
     private final long time;
     private final BigDecimal price;
     private final BigDecimal volume;
+    private final boolean buy;
 
     /**
      * Ctor.
+     * @param id the Bitstamp trade id, increasing over time
      * @param time the trade time
      * @param price the price
      * @param volume the volume
+     * @param buy true if the taker bought, false if the taker sold
      */
-    public MarketTrade(long time, BigDecimal price, BigDecimal volume) {
+    public MarketTrade(long id, long time, BigDecimal price, BigDecimal volume, boolean buy) {
+        this.id = id;
         this.time = time;
         this.price = price;
         this.volume = volume;
+        this.buy = buy;
     }
 
+    public long getId() { return id; }
     public long getTime() { return time; }
     public BigDecimal getPrice() { return price; }
     public BigDecimal getVolume() { return volume; }
+    public boolean isBuy() { return buy; }
 }
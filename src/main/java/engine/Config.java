@@ -0,0 +1,236 @@
+package engine;
+
+import api.ExchangeAddress;
+import api.OverflowPolicy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The settings read from app.config.
+ */
+public class Config {
+    private static final String FILE_NAME = "app.config";
+
+    // The default values if the config file isn't present.
+    private String principalMarket = "btcusd";
+    private List<String> markets = Collections.emptyList();
+    private int x = 10;
+    private int m = 3;
+    private int n = 3;
+    private String recordFile;
+    private List<String> sinks = Collections.singletonList("console");
+    private long bookIntervalMillis = 100;
+    private long metricsLogSeconds = 60;
+    private int maxDepth = 0;
+    private int analyticsBandBps = 25;
+    private List<String> bars = Arrays.asList("time:1", "time:60", "time:300");
+    private int barHistory = 1000;
+    private String pusherHost;
+    private Integer pusherPort;
+    private Boolean pusherEncrypted;
+    private String restUrl;
+    private int queueCapacity = 1 << 16;
+    private OverflowPolicy queueOverflow = OverflowPolicy.DROP_AND_RESYNC;
+    private BigDecimal orderSize;
+    private String storeDir;
+    private long keyframeSeconds = 60;
+    private String checkpointDir;
+    private long checkpointSeconds = 30;
+    private long checkpointMaxAgeSeconds = 3600;
+    private List<String> farm = Collections.emptyList();
+    private int farmWorkers = 2;
+    private long farmLogSeconds = 60;
+    private int crossDepth = 0;
+    private double crossFeeBps = 0;
+    private double crossMinProfitBps = 0;
+
+    /**
+     * Read app.config from the classpath, or from next to the JAR.
+     * @param anchor a class from the JAR, used to locate it
+     * @return the config, with defaults for anything that's missing
+     */
+    public static Config load(Class<?> anchor) {
+        Config config = new Config();
+        try {
+            URL resource = anchor.getClassLoader().getResource(FILE_NAME);
+            File configFile = resource == null ? null : new File(resource.getFile());
+            if (configFile == null || !configFile.exists()) {
+                URI res = anchor.getProtectionDomain().getCodeSource().getLocation().toURI();
+                configFile = new File(new File(res).getParentFile(), FILE_NAME);
+            }
+
+            // load the properties file
+            Properties prop = new Properties();
+            try (InputStream is = new FileInputStream(configFile)) {
+                prop.load(is);
+            }
+            config.read(prop);
+        } catch (IOException | URISyntaxException e) {
+            e.printStackTrace();
+        }
+        return config;
+    }
+
+    private void read(Properties prop) {
+        principalMarket = prop.getProperty("principal_market", principalMarket);
+        markets = list(prop.getProperty("markets"), markets);
+        x = Integer.parseInt(prop.getProperty("X", String.valueOf(x)));
+        m = Integer.parseInt(prop.getProperty("M", String.valueOf(m)));
+        n = Integer.parseInt(prop.getProperty("N", String.valueOf(n)));
+        recordFile = prop.getProperty("record_file");
+        sinks = list(prop.getProperty("sinks"), sinks);
+        bookIntervalMillis = Long.parseLong(prop.getProperty("book_interval_ms",
+            String.valueOf(bookIntervalMillis)));
+        metricsLogSeconds = Long.parseLong(prop.getProperty("metrics_log_seconds",
+            String.valueOf(metricsLogSeconds)));
+        maxDepth = Integer.parseInt(prop.getProperty("max_depth", String.valueOf(maxDepth)));
+        analyticsBandBps = Integer.parseInt(prop.getProperty("analytics_band_bps",
+            String.valueOf(analyticsBandBps)));
+        bars = list(prop.getProperty("bars"), bars);
+        barHistory = Integer.parseInt(prop.getProperty("bar_history", String.valueOf(barHistory)));
+        pusherHost = prop.getProperty("pusher_host");
+        String port = prop.getProperty("pusher_port");
+        if (port != null) {
+            pusherPort = Integer.parseInt(port.trim());
+            if (pusherPort <= 0 || pusherPort > 65535) {
+                throw new IllegalArgumentException("pusher_port must be from 1 to 65535, got "
+                    + port);
+            }
+        }
+        String encrypted = prop.getProperty("pusher_encrypted");
+        if (encrypted != null) {
+            if (!encrypted.trim().equals("true") && !encrypted.trim().equals("false")) {
+                throw new IllegalArgumentException("pusher_encrypted must be true or false, got "
+                    + encrypted);
+            }
+            pusherEncrypted = Boolean.valueOf(encrypted.trim());
+        }
+        restUrl = prop.getProperty("rest_url");
+        queueCapacity = Integer.parseInt(prop.getProperty("queue_capacity",
+            String.valueOf(queueCapacity)));
+        String overflow = prop.getProperty("queue_overflow");
+        if (overflow != null) {
+            if (overflow.trim().equals("block")) {
+                queueOverflow = OverflowPolicy.BLOCK;
+            } else if (overflow.trim().equals("drop")) {
+                queueOverflow = OverflowPolicy.DROP_AND_RESYNC;
+            } else {
+                throw new IllegalArgumentException("queue_overflow must be block or drop, got "
+                    + overflow);
+            }
+        }
+        String size = prop.getProperty("order_size");
+        orderSize = size == null ? null : new BigDecimal(size.trim());
+        storeDir = prop.getProperty("store_dir");
+        keyframeSeconds = Long.parseLong(prop.getProperty("keyframe_seconds",
+            String.valueOf(keyframeSeconds)));
+        checkpointDir = prop.getProperty("checkpoint_dir");
+        checkpointSeconds = Long.parseLong(prop.getProperty("checkpoint_seconds",
+            String.valueOf(checkpointSeconds)));
+        checkpointMaxAgeSeconds = Long.parseLong(prop.getProperty("checkpoint_max_age_seconds",
+            String.valueOf(checkpointMaxAgeSeconds)));
+        farm = list(prop.getProperty("farm"), farm);
+        farmWorkers = Integer.parseInt(prop.getProperty("farm_workers",
+            String.valueOf(farmWorkers)));
+        farmLogSeconds = Long.parseLong(prop.getProperty("farm_log_seconds",
+            String.valueOf(farmLogSeconds)));
+        crossDepth = Integer.parseInt(prop.getProperty("cross_depth", String.valueOf(crossDepth)));
+        crossFeeBps = Double.parseDouble(prop.getProperty("cross_fee_bps",
+            String.valueOf(crossFeeBps)));
+        crossMinProfitBps = Double.parseDouble(prop.getProperty("cross_min_profit_bps",
+            String.valueOf(crossMinProfitBps)));
+    }
+
+    private static List<String> list(String value, List<String> defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        List<String> result = new ArrayList<>();
+        for (String item : Arrays.asList(value.split(","))) {
+            if (!item.trim().isEmpty()) {
+                result.add(item.trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get where to connect. Each of pusher_host, pusher_port, pusher_encrypted and rest_url
+     * replaces the matching part of the Bitstamp address on its own, e.g. to reach a local
+     * stand-in. A custom host is plain ws unless pusher_encrypted is set, on port 80 for ws or
+     * 443 for wss unless pusher_port is set.
+     * @return the address
+     * @throws IllegalArgumentException if pusher_port or pusher_encrypted is set without
+     *     pusher_host, since the Pusher cloud doesn't take them
+     */
+    public ExchangeAddress getAddress() {
+        ExchangeAddress bitstamp = ExchangeAddress.BITSTAMP;
+        if (pusherHost == null && (pusherPort != null || pusherEncrypted != null)) {
+            throw new IllegalArgumentException(
+                "pusher_port and pusher_encrypted need pusher_host to be set");
+        }
+        if (pusherHost == null && restUrl == null) {
+            return bitstamp;
+        }
+        boolean encrypted = pusherHost == null ? bitstamp.isEncrypted()
+            : pusherEncrypted != null && pusherEncrypted;
+        int port = pusherHost == null ? bitstamp.getPusherPort()
+            : pusherPort != null ? pusherPort : encrypted ? 443 : 80;
+        return new ExchangeAddress(bitstamp.getPusherKey(), pusherHost, port, encrypted,
+            restUrl != null ? restUrl : bitstamp.getRestUrl());
+    }
+
+    /**
+     * Get the markets to track: the principal market first, then any other configured ones.
+     * @return the markets
+     */
+    public List<String> getMarkets() {
+        List<String> result = new ArrayList<>();
+        result.add(principalMarket);
+        for (String market : markets) {
+            if (!result.contains(market)) {
+                result.add(market);
+            }
+        }
+        return result;
+    }
+
+    public String getPrincipalMarket() { return principalMarket; }
+    public int getX() { return x; }
+    public int getM() { return m; }
+    public int getN() { return n; }
+    public String getRecordFile() { return recordFile; }
+    public List<String> getSinks() { return sinks; }
+    public long getBookIntervalMillis() { return bookIntervalMillis; }
+    public long getMetricsLogSeconds() { return metricsLogSeconds; }
+    public int getMaxDepth() { return maxDepth; }
+    public int getAnalyticsBandBps() { return analyticsBandBps; }
+    public List<String> getBars() { return bars; }
+    public int getBarHistory() { return barHistory; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public OverflowPolicy getQueueOverflow() { return queueOverflow; }
+    public BigDecimal getOrderSize() { return orderSize; }
+    public String getStoreDir() { return storeDir; }
+    public long getKeyframeSeconds() { return keyframeSeconds; }
+    public String getCheckpointDir() { return checkpointDir; }
+    public long getCheckpointSeconds() { return checkpointSeconds; }
+    public long getCheckpointMaxAgeSeconds() { return checkpointMaxAgeSeconds; }
+    public List<String> getFarm() { return farm; }
+    public int getFarmWorkers() { return farmWorkers; }
+    public long getFarmLogSeconds() { return farmLogSeconds; }
+    public int getCrossDepth() { return crossDepth; }
+    public double getCrossFeeBps() { return crossFeeBps; }
+    public double getCrossMinProfitBps() { return crossMinProfitBps; }
+}
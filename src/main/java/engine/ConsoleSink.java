@@ -0,0 +1,34 @@
+package engine;
+
+import api.FixedPoint;
+import api.MarketAnalytics;
+import api.OrderBookSnapshot;
+import dto.Trade;
+
+/**
+ * Prints the top of each book and every trade to standard output.
+ */
+public class ConsoleSink implements Sink {
+    @Override
+    public void onBook(String market, OrderBookSnapshot book) {
+        if (book.getBidDepth() == 0 || book.getAskDepth() == 0) {
+            return;
+        }
+        MarketAnalytics analytics = book.getAnalytics();
+        System.out.println(market + " bid " + format(book.getBidVolume(0)) + " @ "
+            + format(book.getBidPrice(0)) + " | ask " + format(book.getAskVolume(0)) + " @ "
+            + format(book.getAskPrice(0))
+            + (analytics.isValid() ? " | micro " + format(analytics.getMicroprice())
+                + String.format(" imbalance %.2f", analytics.getBandImbalance()) : ""));
+    }
+
+    @Override
+    public void onTrade(String market, Trade trade) {
+        System.out.println(market + (trade.getOurTrade() ? " our trade " : " trade ")
+            + trade.getVolume() + " @ " + trade.getPrice());
+    }
+
+    private static String format(long value) {
+        return FixedPoint.toBigDecimal(value).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,352 @@
+package engine;
+
+import api.BitstampApiEndpoint;
+import api.FixedPoint;
+import api.MarketRegistry;
+import api.OrderBookSnapshot;
+import bars.MarketBars;
+import cross.CrossRateMonitor;
+import dto.Trade;
+import record.BookStore;
+import record.Checkpoint;
+import record.Recorder;
+import sim.ContrarianSimulator;
+import sim.StrategyFarm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The data engine without any GUI: order books, trade feeds and the contrarian simulator for
+ * the configured markets, delivered to pluggable {@link Sink}s.
+ */
+public class Engine {
+    // Spreads the REST checks of warm started markets so they don't hit the rate limit.
+    private static final long WARM_CHECK_SPACING_MILLIS = 250;
+    // The market trades each shard of the strategy farm can fall behind by before dropping.
+    private static final int FARM_RING_CAPACITY = 1 << 14;
+
+    private final Config config;
+    private final MarketRegistry registry;
+    private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+    private final List<Closeable> recorders = new ArrayList<>();
+    private final Map<String, MarketBars> bars = new ConcurrentHashMap<>();
+    private final StrategyFarm farm;
+    private final CrossRateMonitor crossRates;
+    private final ScheduledExecutorService publisher =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "engine-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    private final ScheduledExecutorService checkpointer =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "engine-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /**
+     * Ctor.
+     * @param config the settings
+     */
+    public Engine(Config config) {
+        this.config = config;
+        List<String> markets = config.getMarkets();
+        this.registry = new MarketRegistry(
+            Math.min(markets.size(), Runtime.getRuntime().availableProcessors()),
+            config.getAddress(), config.getQueueCapacity(), config.getQueueOverflow());
+        for (String market : markets) {
+            registry.register(market, config.getX(), config.getMaxDepth(),
+                config.getAnalyticsBandBps());
+            bars.put(market, new MarketBars(config.getBars(), config.getBarHistory()));
+        }
+        if (config.getFarm().isEmpty()) {
+            farm = null;
+        } else {
+            farm = new StrategyFarm(config.getFarmWorkers(), FARM_RING_CAPACITY);
+            for (String strategies : config.getFarm()) {
+                addStrategies(strategies);
+            }
+        }
+        if (config.getCrossDepth() <= 0) {
+            crossRates = null;
+        } else {
+            crossRates = new CrossRateMonitor(config.getCrossDepth(), config.getCrossFeeBps(),
+                config.getCrossMinProfitBps());
+            for (String market : markets) {
+                String[] currencies = CrossRateMonitor.splitMarket(market);
+                if (currencies == null) {
+                    System.out.println("Can't tell the currencies of " + market
+                        + ", leaving it out of the cross rates");
+                } else {
+                    crossRates.add(market, currencies[0], currencies[1]);
+                }
+            }
+        }
+    }
+
+    // A farm entry is market:M range:N range:order size, such as btcusd:1-10:1-10:0.5.
+    private void addStrategies(String strategies) {
+        String[] parts = strategies.split(":");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Expected market:M-M:N-N:size, got " + strategies);
+        }
+        int[] mRange = parseRange(parts[1]);
+        int[] nRange = parseRange(parts[2]);
+        farm.add(parts[0], mRange[0], mRange[1], nRange[0], nRange[1],
+            FixedPoint.fromBigDecimal(new BigDecimal(parts[3])));
+    }
+
+    private static int[] parseRange(String range) {
+        String[] parts = range.split("-");
+        int from = Integer.parseInt(parts[0]);
+        int to = parts.length > 1 ? Integer.parseInt(parts[1]) : from;
+        return new int[] {from, to};
+    }
+
+    /**
+     * Add a sink. Sinks added before {@link #start} also see the backfilled trades.
+     * @param sink the sink
+     */
+    public void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * Get a market's endpoint.
+     * @param market the market
+     * @return the endpoint, or null if the market isn't configured
+     */
+    public BitstampApiEndpoint getEndpoint(String market) {
+        return registry.get(market);
+    }
+
+    /**
+     * Get the bars built from a market's trades.
+     * @param market the market
+     * @return the bars, or null if the market isn't configured
+     */
+    public MarketBars getBars(String market) {
+        return bars.get(market);
+    }
+
+    /**
+     * Get the registry of the configured markets.
+     * @return the registry
+     */
+    public MarketRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Get the strategies run on the live trades, set with {@code farm} in app.config.
+     * @return the farm, or null if none are configured
+     */
+    public StrategyFarm getFarm() {
+        return farm;
+    }
+
+    /**
+     * Get the implied prices and triangular cycles across the markets, set with
+     * {@code cross_depth} in app.config. Add listeners before {@link #start}.
+     * @return the monitor, or null if it isn't configured
+     */
+    public CrossRateMonitor getCrossRates() {
+        return crossRates;
+    }
+
+    /**
+     * Connect to all markets, wait until their books are synced and start publishing.
+     * @throws IOException if a recording file can't be created
+     */
+    public void start() throws IOException {
+        List<BitstampApiEndpoint> endpoints = registry.getMarkets();
+        if (farm != null) {
+            farm.start();
+            for (String market : farm.getMarkets()) {
+                if (registry.get(market) == null) {
+                    System.out.println("Strategies for " + market + " won't run, it isn't in"
+                        + " markets");
+                }
+            }
+            if (config.getFarmLogSeconds() > 0) {
+                farm.startLogging(config.getFarmLogSeconds());
+            }
+        }
+        if (crossRates != null) {
+            crossRates.start();
+            System.out.println("Watching " + crossRates.getCycleCount()
+                + " triangular cycles across the markets");
+            if (config.getMetricsLogSeconds() > 0) {
+                crossRates.startLogging(config.getMetricsLogSeconds());
+            }
+        }
+        for (BitstampApiEndpoint endpoint : endpoints) {
+            String market = endpoint.getMarket();
+            if (crossRates != null && CrossRateMonitor.splitMarket(market) != null) {
+                endpoint.setTopOfBookListener(config.getCrossDepth(),
+                    crossRates.listener(market));
+            }
+            // The trade listeners run on the book's writer thread, so the book can be walked.
+            ContrarianSimulator simulator = config.getOrderSize() == null
+                ? new ContrarianSimulator(config.getM(), config.getN(),
+                    trade -> publishTrade(market, trade))
+                : new ContrarianSimulator(config.getM(), config.getN(), endpoint.orderBook(),
+                    FixedPoint.fromBigDecimal(config.getOrderSize()),
+                    trade -> publishTrade(market, trade));
+            endpoint.tradeFeed().addListener(simulator::onTrade);
+            endpoint.tradeFeed().addListener(bars.get(market)::onTrade);
+            if (farm != null && farm.getMarkets().contains(market)) {
+                endpoint.tradeFeed().addListener(farm.listener(market));
+            }
+
+            if (config.getStoreDir() != null) {
+                Path dir = Paths.get(config.getStoreDir());
+                Files.createDirectories(dir);
+                BookStore store = new BookStore(dir, market, config.getKeyframeSeconds());
+                endpoint.setDiffObserver(store);
+                endpoint.tradeFeed().addListener(store::onTrade);
+                recorders.add(store);
+            } else if (config.getRecordFile() != null) {
+                Path file = Paths.get(config.getRecordFile());
+                if (endpoints.size() > 1) {
+                    // Prefix the file name, not the directories it's in.
+                    file = file.resolveSibling(market + "-" + file.getFileName());
+                }
+                Recorder recorder = new Recorder(file.toString());
+                endpoint.setDiffObserver(recorder);
+                endpoint.tradeFeed().addListener(recorder::onTrade);
+                recorders.add(recorder);
+            }
+        }
+
+        registry.getMetrics().registerMBean(config.getPrincipalMarket());
+        if (config.getMetricsLogSeconds() > 0) {
+            registry.getMetrics().startLogging(config.getMetricsLogSeconds());
+        }
+        if (config.getCheckpointDir() != null) {
+            Path dir = Paths.get(config.getCheckpointDir());
+            Files.createDirectories(dir);
+            warmStart(endpoints, dir);
+            checkpointer.scheduleAtFixedRate(() -> checkpoint(endpoints, dir),
+                config.getCheckpointSeconds(), config.getCheckpointSeconds(), TimeUnit.SECONDS);
+        }
+        registry.connectAll();
+
+        long[] published = new long[endpoints.size()];
+        publisher.scheduleAtFixedRate(() -> {
+            for (int i = 0; i < endpoints.size(); i++) {
+                OrderBookSnapshot book = endpoints.get(i).orderBook().getSnapshot();
+                if (book.getSequence() != published[i]) {
+                    published[i] = book.getSequence();
+                    publishBook(endpoints.get(i).getMarket(), book);
+                }
+            }
+        }, 0, config.getBookIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop publishing and close the sinks and recordings.
+     */
+    public void stop() {
+        publisher.shutdown();
+        checkpointer.shutdown();
+        if (farm != null) {
+            farm.close();
+        }
+        if (crossRates != null) {
+            crossRates.close();
+        }
+        for (Sink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        for (Closeable recorder : recorders) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void warmStart(List<BitstampApiEndpoint> endpoints, Path dir) {
+        int warm = 0;
+        for (BitstampApiEndpoint endpoint : endpoints) {
+            Path file = checkpointFile(dir, endpoint.getMarket());
+            try {
+                if (!Files.exists(file)) {
+                    continue;
+                }
+                long age = System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis();
+                if (age > TimeUnit.SECONDS.toMillis(config.getCheckpointMaxAgeSeconds())) {
+                    System.out.println("Ignoring stale checkpoint " + file);
+                    continue;
+                }
+                Checkpoint.read(file, endpoint.orderBook());
+                endpoint.warmStart(warm++ * WARM_CHECK_SPACING_MILLIS);
+                System.out.println("Warm started " + endpoint.getMarket() + " from a checkpoint "
+                    + age / 1000 + " s old");
+            } catch (IOException | RuntimeException e) {
+                // A damaged checkpoint only costs the warm start; the market starts cold.
+                e.printStackTrace();
+                endpoint.orderBook().clear();
+            }
+        }
+    }
+
+    private void checkpoint(List<BitstampApiEndpoint> endpoints, Path dir) {
+        for (BitstampApiEndpoint endpoint : endpoints) {
+            Path file = checkpointFile(dir, endpoint.getMarket());
+            // Only the copy is made on the partition thread; it's written on this one.
+            endpoint.captureBook((book, timestamp) -> checkpointer.execute(() -> {
+                try {
+                    Checkpoint.write(book, timestamp, file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+    }
+
+    private static Path checkpointFile(Path dir, String market) {
+        return dir.resolve(market + ".ckpt");
+    }
+
+    private void publishBook(String market, OrderBookSnapshot book) {
+        for (Sink sink : sinks) {
+            try {
+                sink.onBook(market, book);
+            } catch (RuntimeException e) {
+                // One broken sink shouldn't stop the others.
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void publishTrade(String market, Trade trade) {
+        for (Sink sink : sinks) {
+            try {
+                sink.onTrade(market, trade);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
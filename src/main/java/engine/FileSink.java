@@ -0,0 +1,55 @@
+package engine;
+
+import api.OrderBookSnapshot;
+import dto.Trade;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Appends the top of each book and every trade to a CSV file, one line per event:
+ * {@code book,market,sequence,bid,bid volume,ask,ask volume} with fixed-point values, and
+ * {@code trade,market,time,price,volume,our}.
+ */
+public class FileSink implements Sink {
+    private final BufferedWriter writer;
+
+    /**
+     * Ctor.
+     * @param fileName the file to append to
+     * @throws IOException if the file can't be opened
+     */
+    public FileSink(String fileName) throws IOException {
+        writer = new BufferedWriter(new FileWriter(fileName, true));
+    }
+
+    @Override
+    public synchronized void onBook(String market, OrderBookSnapshot book) {
+        if (book.getBidDepth() == 0 || book.getAskDepth() == 0) {
+            return;
+        }
+        write("book," + market + "," + book.getSequence() + "," + book.getBidPrice(0) + ","
+            + book.getBidVolume(0) + "," + book.getAskPrice(0) + "," + book.getAskVolume(0));
+    }
+
+    @Override
+    public synchronized void onTrade(String market, Trade trade) {
+        write("trade," + market + "," + trade.getTime() + "," + trade.getPrice() + ","
+            + trade.getVolume() + "," + (trade.getOurTrade() ? 1 : 0));
+    }
+
+    private void write(String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,80 @@
+package engine;
+
+import api.OrderBookSnapshot;
+import dto.Trade;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts book updates, market trades and simulated trades, and tracks the simulated position,
+ * logging a summary line per market at a fixed interval.
+ */
+public class MetricsSink implements Sink {
+    private final Map<String, MarketMetrics> metrics = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "metrics-sink");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Ctor.
+     * @param intervalSeconds how often to log the summary
+     */
+    public MetricsSink(long intervalSeconds) {
+        logger.scheduleAtFixedRate(this::log, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void onBook(String market, OrderBookSnapshot book) {
+        metrics(market).bookUpdates.increment();
+    }
+
+    @Override
+    public void onTrade(String market, Trade trade) {
+        MarketMetrics marketMetrics = metrics(market);
+        if (trade.getOurTrade()) {
+            marketMetrics.ourTrades.increment();
+            synchronized (marketMetrics) {
+                marketMetrics.position = marketMetrics.position.add(trade.getVolume());
+            }
+        } else {
+            marketMetrics.trades.increment();
+        }
+    }
+
+    private MarketMetrics metrics(String market) {
+        return metrics.computeIfAbsent(market, m -> new MarketMetrics());
+    }
+
+    private void log() {
+        metrics.forEach((market, marketMetrics) -> {
+            BigDecimal position;
+            synchronized (marketMetrics) {
+                position = marketMetrics.position;
+            }
+            System.out.println(market + ": " + marketMetrics.bookUpdates.sumThenReset()
+                + " book updates, " + marketMetrics.trades.sumThenReset() + " trades, "
+                + marketMetrics.ourTrades.sumThenReset() + " our trades, position " + position);
+        });
+    }
+
+    @Override
+    public void close() {
+        logger.shutdown();
+        log();
+    }
+
+    private static class MarketMetrics {
+        final LongAdder bookUpdates = new LongAdder();
+        final LongAdder trades = new LongAdder();
+        final LongAdder ourTrades = new LongAdder();
+        BigDecimal position = BigDecimal.ZERO;
+    }
+}
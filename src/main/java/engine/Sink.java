@@ -0,0 +1,34 @@
+package engine;
+
+import api.OrderBookSnapshot;
+import dto.Trade;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Consumes what the {@link Engine} produces.
+ * <p>
+ * Book snapshots are delivered on the engine's publisher thread, at most once per interval and
+ * only if the book changed. Trades, both market and simulated, are delivered on the market's
+ * partition thread, so they should be handled quickly. A sink gets calls from both threads.
+ */
+public interface Sink extends Closeable {
+    /**
+     * Called when a market's book changed since the last call.
+     * @param market the market
+     * @param book the latest snapshot
+     */
+    void onBook(String market, OrderBookSnapshot book);
+
+    /**
+     * Called for every market trade and every simulated trade, oldest first.
+     * @param market the market
+     * @param trade the trade
+     */
+    void onTrade(String market, Trade trade);
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,184 @@
+package fanout;
+
+import api.FixedPoint;
+import api.OrderBookSnapshot;
+import dto.Trade;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+/**
+ * Receives books and trades from a {@link FanoutServer}, for tools that need the Bitstamp feed
+ * without opening their own connection. Books are delivered without analytics.
+ */
+public class FanoutClient implements Closeable {
+
+    /**
+     * Receives what the server sends, on the thread that calls {@link #run}.
+     */
+    public interface Listener {
+        /**
+         * Called with the latest book of a market. Intermediate books may have been skipped.
+         * @param market the market
+         * @param book the book
+         */
+        void onBook(String market, OrderBookSnapshot book);
+
+        /**
+         * Called for every market trade and every simulated trade, oldest first.
+         * @param market the market
+         * @param trade the trade
+         */
+        void onTrade(String market, Trade trade);
+
+        /**
+         * Called when trades were dropped because this client fell behind.
+         * @param count the number of trades lost
+         */
+        default void onDropped(long count) {
+        }
+    }
+
+    private final SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private byte frameType;
+
+    /**
+     * Ctor. Connects and checks that the other end is a fan-out server.
+     * @param host the server's host
+     * @param port the server's port
+     * @throws IOException if the connection fails
+     */
+    public FanoutClient(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        in.flip();
+        ByteBuffer hello = nextFrame();
+        if (frameType != FanoutProtocol.HELLO || hello.getLong() != FanoutProtocol.MAGIC
+            || hello.getInt() != FanoutProtocol.VERSION) {
+            channel.close();
+            throw new IOException("Not a fan-out server at " + host + ":" + port);
+        }
+    }
+
+    /**
+     * Receive only some markets from now on. The latest book of each is sent right away.
+     * @param markets the markets, or an empty list for all markets
+     * @throws IOException if sending fails
+     */
+    public void subscribe(List<String> markets) throws IOException {
+        ByteBuffer frame = ByteBuffer.wrap(FanoutProtocol.subscribe(markets));
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * Receive frames and hand them to a listener until the connection is closed.
+     * @param listener the listener
+     * @throws IOException if the connection fails
+     */
+    public void run(Listener listener) throws IOException {
+        while (true) {
+            ByteBuffer frame;
+            try {
+                frame = nextFrame();
+            } catch (EOFException e) {
+                return;
+            }
+            switch (frameType) {
+                case FanoutProtocol.BOOK:
+                    listener.onBook(FanoutProtocol.getMarket(frame), readBook(frame));
+                    break;
+                case FanoutProtocol.TRADE:
+                    listener.onTrade(FanoutProtocol.getMarket(frame), readTrade(frame));
+                    break;
+                case FanoutProtocol.DROPPED:
+                    listener.onDropped(frame.getLong());
+                    break;
+                default:
+                    // Frames from newer servers are skipped.
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static OrderBookSnapshot readBook(ByteBuffer frame) {
+        long sequence = frame.getLong();
+        int bidCount = frame.getInt();
+        int askCount = frame.getInt();
+        long[] bidPrices = new long[bidCount];
+        long[] bidVolumes = new long[bidCount];
+        long[] askPrices = new long[askCount];
+        long[] askVolumes = new long[askCount];
+        for (int i = 0; i < bidCount; i++) {
+            bidPrices[i] = frame.getLong();
+            bidVolumes[i] = frame.getLong();
+        }
+        for (int i = 0; i < askCount; i++) {
+            askPrices[i] = frame.getLong();
+            askVolumes[i] = frame.getLong();
+        }
+        return new OrderBookSnapshot(sequence, bidCount, bidPrices, bidVolumes,
+            askCount, askPrices, askVolumes);
+    }
+
+    private static Trade readTrade(ByteBuffer frame) {
+        long time = frame.getLong();
+        long price = frame.getLong();
+        long volume = frame.getLong();
+        byte flags = frame.get();
+        return new Trade(time, FixedPoint.toBigDecimal(price), FixedPoint.toBigDecimal(volume),
+            (flags & FanoutProtocol.OUR_TRADE) != 0, (flags & FanoutProtocol.UPTICK) != 0,
+            (flags & FanoutProtocol.DOWNTICK) != 0);
+    }
+
+    /**
+     * Read the next frame, blocking until it's complete. Its type is left in {@link #frameType}.
+     * @return the frame body, valid until the next call
+     */
+    private ByteBuffer nextFrame() throws IOException {
+        fill(FanoutProtocol.FRAME_HEADER_SIZE);
+        int length = in.getInt(in.position() + 1);
+        fill(FanoutProtocol.FRAME_HEADER_SIZE + length);
+        frameType = in.get();
+        in.getInt();
+        ByteBuffer body = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        body.limit(length);
+        in.position(in.position() + length);
+        return body;
+    }
+
+    /**
+     * Read until at least the given number of bytes are buffered.
+     */
+    private void fill(int size) throws IOException {
+        if (in.remaining() >= size) {
+            return;
+        }
+        in.compact();
+        if (in.capacity() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            in.flip();
+            bigger.put(in);
+            in = bigger;
+        }
+        while (in.position() < size) {
+            if (channel.read(in) < 0) {
+                throw new EOFException("Fan-out server closed the connection");
+            }
+        }
+        in.flip();
+    }
+}
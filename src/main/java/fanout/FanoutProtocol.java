@@ -0,0 +1,119 @@
+package fanout;
+
+import api.FixedPoint;
+import api.OrderBookSnapshot;
+import dto.Trade;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * The frames exchanged between a {@link FanoutServer} and its subscribers. All values are
+ * little-endian.
+ * <p>
+ * Each frame is a type byte and an int body length, then the body:
+ * <ul>
+ *     <li>{@link #HELLO}, sent by the server on connect: {@link #MAGIC} and {@link #VERSION}</li>
+ *     <li>{@link #SUBSCRIBE}, sent by a subscriber: the markets it wants, comma separated in
+ *     UTF-8, or nothing for all markets, which is also what it gets until it subscribes</li>
+ *     <li>{@link #BOOK}: market, sequence, bid count, ask count, then price/volume pairs of the
+ *     bids followed by the asks, best first</li>
+ *     <li>{@link #TRADE}: market, time, price, volume, and a byte with {@link #OUR_TRADE},
+ *     {@link #UPTICK} and {@link #DOWNTICK}</li>
+ *     <li>{@link #DROPPED}: the number of trades dropped because the subscriber fell behind</li>
+ * </ul>
+ * A market is a length byte followed by its name in ASCII. Prices and volumes are
+ * {@link FixedPoint} longs.
+ */
+final class FanoutProtocol {
+    static final long MAGIC = 0x4f4e414653544942L; // "BITSFANO"
+    static final int VERSION = 1;
+
+    static final byte HELLO = 0;
+    static final byte SUBSCRIBE = 1;
+    static final byte BOOK = 2;
+    static final byte TRADE = 3;
+    static final byte DROPPED = 4;
+
+    static final int FRAME_HEADER_SIZE = 5;
+    static final int LEVEL_SIZE = 16;
+
+    static final byte OUR_TRADE = 1;
+    static final byte UPTICK = 2;
+    static final byte DOWNTICK = 4;
+
+    private FanoutProtocol() {
+    }
+
+    static byte[] hello() {
+        ByteBuffer frame = frame(HELLO, 12);
+        frame.putLong(MAGIC);
+        frame.putInt(VERSION);
+        return frame.array();
+    }
+
+    static byte[] subscribe(Collection<String> markets) {
+        byte[] names = String.join(",", markets).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = frame(SUBSCRIBE, names.length);
+        frame.put(names);
+        return frame.array();
+    }
+
+    static byte[] book(String market, OrderBookSnapshot book) {
+        int bidCount = book.getBidDepth();
+        int askCount = book.getAskDepth();
+        ByteBuffer frame = frame(BOOK,
+            1 + market.length() + 16 + (bidCount + askCount) * LEVEL_SIZE);
+        putMarket(frame, market);
+        frame.putLong(book.getSequence());
+        frame.putInt(bidCount);
+        frame.putInt(askCount);
+        for (int i = 0; i < bidCount; i++) {
+            frame.putLong(book.getBidPrice(i));
+            frame.putLong(book.getBidVolume(i));
+        }
+        for (int i = 0; i < askCount; i++) {
+            frame.putLong(book.getAskPrice(i));
+            frame.putLong(book.getAskVolume(i));
+        }
+        return frame.array();
+    }
+
+    static byte[] trade(String market, Trade trade) {
+        ByteBuffer frame = frame(TRADE, 1 + market.length() + 25);
+        putMarket(frame, market);
+        frame.putLong(trade.getTime());
+        frame.putLong(FixedPoint.fromBigDecimal(trade.getPrice()));
+        frame.putLong(FixedPoint.fromBigDecimal(trade.getVolume()));
+        frame.put((byte) ((trade.getOurTrade() ? OUR_TRADE : 0) | (trade.isUptick() ? UPTICK : 0)
+            | (trade.isDowntick() ? DOWNTICK : 0)));
+        return frame.array();
+    }
+
+    static byte[] dropped(long count) {
+        ByteBuffer frame = frame(DROPPED, 8);
+        frame.putLong(count);
+        return frame.array();
+    }
+
+    static String getMarket(ByteBuffer body) {
+        byte[] name = new byte[body.get() & 0xff];
+        body.get(name);
+        return new String(name, StandardCharsets.US_ASCII);
+    }
+
+    private static void putMarket(ByteBuffer frame, String market) {
+        frame.put((byte) market.length());
+        frame.put(market.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ByteBuffer frame(byte type, int length) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + length)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        frame.put(type);
+        frame.putInt(length);
+        return frame;
+    }
+}
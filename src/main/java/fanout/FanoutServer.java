@@ -0,0 +1,186 @@
+package fanout;
+
+import api.OrderBookSnapshot;
+import dto.Trade;
+import engine.Sink;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serves the engine's books and trades to local processes over TCP, so many tools can share one
+ * Bitstamp connection. See {@link FanoutProtocol} for the frames and {@link FanoutClient} to
+ * receive them.
+ * <p>
+ * Each book and trade is encoded once and the same frame is handed to every subscriber. A
+ * single thread writes to all subscribers without blocking; one that doesn't keep up gets the
+ * latest book of each market when it's ready again, and loses its oldest trades once too many
+ * are waiting, so it never holds up the others or grows without bound.
+ */
+public class FanoutServer implements Sink {
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final int tradeBacklog;
+    private final Map<String, byte[]> latestBooks = new ConcurrentHashMap<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Ctor. Starts accepting subscribers right away.
+     * @param address the address to listen on, normally a loopback address
+     * @param tradeBacklog the number of unsent trades to keep per subscriber
+     * @throws IOException if the address can't be bound
+     */
+    public FanoutServer(InetSocketAddress address, int tradeBacklog) throws IOException {
+        this.tradeBacklog = tradeBacklog;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "fanout");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Fan-out listening on " + server.getLocalAddress());
+    }
+
+    @Override
+    public void onBook(String market, OrderBookSnapshot book) {
+        byte[] frame = FanoutProtocol.book(market, book);
+        latestBooks.put(market, frame);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offerBook(market, frame);
+        }
+        wakeup();
+    }
+
+    @Override
+    public void onTrade(String market, Trade trade) {
+        byte[] frame = FanoutProtocol.trade(market, trade);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offerTrade(market, frame);
+        }
+        wakeup();
+    }
+
+    /**
+     * Get the number of connected subscribers.
+     * @return the count
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wakeup() {
+        // One wakeup is enough for everything offered before the thread gets to write.
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        Subscriber subscriber = (Subscriber) key.attachment();
+                        try {
+                            if (!subscriber.read(latestBooks)) {
+                                disconnect(subscriber, null);
+                            }
+                        } catch (IOException e) {
+                            disconnect(subscriber, e);
+                        }
+                    }
+                }
+                for (Subscriber subscriber : subscribers) {
+                    write(subscriber);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (Subscriber subscriber : subscribers) {
+                disconnect(subscriber, null);
+            }
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Subscriber subscriber = new Subscriber(channel, key, tradeBacklog);
+        key.attach(subscriber);
+        for (Map.Entry<String, byte[]> book : latestBooks.entrySet()) {
+            subscriber.offerBook(book.getKey(), book.getValue());
+        }
+        subscribers.add(subscriber);
+        System.out.println("Fan-out subscriber connected from " + channel.getRemoteAddress());
+    }
+
+    private void write(Subscriber subscriber) {
+        try {
+            subscriber.write();
+        } catch (IOException e) {
+            disconnect(subscriber, e);
+        }
+    }
+
+    private void disconnect(Subscriber subscriber, IOException e) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        System.out.println("Fan-out subscriber disconnected"
+            + (e != null ? ": " + e.getMessage() : ""));
+        try {
+            subscriber.getChannel().close();
+        } catch (IOException closeFailed) {
+            closeFailed.printStackTrace();
+        }
+    }
+}
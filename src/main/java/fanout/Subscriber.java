@@ -0,0 +1,199 @@
+package fanout;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One connection of a {@link FanoutServer}.
+ * <p>
+ * Books are conflated: only the latest unsent frame of each market is kept, so a slow reader
+ * skips to the current state. Trades can't be conflated and are kept in a bounded queue instead;
+ * when it's full, the oldest trade is dropped and the subscriber is told how many were lost.
+ * Frames are offered from any thread and written by the server's thread.
+ */
+final class Subscriber {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final Map<String, byte[]> pendingBooks = new ConcurrentHashMap<>();
+    private final ArrayBlockingQueue<byte[]> pendingTrades;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Set<String> markets;
+
+    // Server thread only.
+    private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private boolean writeBlocked;
+    private byte[] heldTrade;
+
+    /**
+     * Ctor.
+     * @param channel the connection
+     * @param key the connection's key with the server's selector
+     * @param tradeBacklog the number of unsent trades to keep
+     */
+    Subscriber(SocketChannel channel, SelectionKey key, int tradeBacklog) {
+        this.channel = channel;
+        this.key = key;
+        this.pendingTrades = new ArrayBlockingQueue<>(tradeBacklog);
+        out.put(FanoutProtocol.hello());
+        out.flip();
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    boolean wants(String market) {
+        Set<String> wanted = markets;
+        return wanted == null || wanted.contains(market);
+    }
+
+    /**
+     * Replace the unsent book of a market, if the subscriber wants the market.
+     * @param market the market
+     * @param frame the book frame
+     */
+    void offerBook(String market, byte[] frame) {
+        if (wants(market)) {
+            pendingBooks.put(market, frame);
+        }
+    }
+
+    /**
+     * Queue a trade, dropping the oldest unsent one if the queue is full.
+     * @param market the market
+     * @param frame the trade frame
+     */
+    void offerTrade(String market, byte[] frame) {
+        if (!wants(market)) {
+            return;
+        }
+        while (!pendingTrades.offer(frame)) {
+            if (pendingTrades.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Write as many pending frames as the socket takes without blocking. Server thread only.
+     * @throws IOException if the connection failed
+     */
+    void write() throws IOException {
+        while (true) {
+            if (!out.hasRemaining()) {
+                out.clear();
+                fill();
+                out.flip();
+                if (!out.hasRemaining()) {
+                    break;
+                }
+            }
+            channel.write(out);
+            if (out.hasRemaining()) {
+                break;
+            }
+        }
+        boolean blocked = out.hasRemaining();
+        if (blocked != writeBlocked) {
+            writeBlocked = blocked;
+            key.interestOps(blocked ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Read and handle the frames the subscriber sent. Server thread only.
+     * @param latestBooks the latest book frame of each market, sent to a new subscription
+     * @return false if the subscriber closed the connection
+     * @throws IOException if the connection failed or a frame is malformed
+     */
+    boolean read(Map<String, byte[]> latestBooks) throws IOException {
+        if (channel.read(in) < 0) {
+            return false;
+        }
+        in.flip();
+        while (in.remaining() >= FanoutProtocol.FRAME_HEADER_SIZE) {
+            byte type = in.get(in.position());
+            int length = in.getInt(in.position() + 1);
+            if (length < 0 || length > in.capacity() - FanoutProtocol.FRAME_HEADER_SIZE) {
+                throw new IOException("Frame of " + length + " bytes from subscriber");
+            }
+            if (in.remaining() < FanoutProtocol.FRAME_HEADER_SIZE + length) {
+                break;
+            }
+            in.position(in.position() + FanoutProtocol.FRAME_HEADER_SIZE);
+            byte[] body = new byte[length];
+            in.get(body);
+            if (type == FanoutProtocol.SUBSCRIBE) {
+                subscribe(new String(body, StandardCharsets.UTF_8), latestBooks);
+            }
+        }
+        in.compact();
+        return true;
+    }
+
+    private void subscribe(String names, Map<String, byte[]> latestBooks) {
+        Set<String> wanted = null;
+        if (!names.trim().isEmpty()) {
+            wanted = new HashSet<>();
+            for (String name : names.split(",")) {
+                wanted.add(name.trim());
+            }
+        }
+        markets = wanted;
+        pendingBooks.keySet().removeIf(market -> !wants(market));
+        for (Map.Entry<String, byte[]> book : latestBooks.entrySet()) {
+            offerBook(book.getKey(), book.getValue());
+        }
+    }
+
+    private void fill() {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            out.put(FanoutProtocol.dropped(lost));
+        }
+        while (true) {
+            byte[] trade = heldTrade != null ? heldTrade : pendingTrades.poll();
+            heldTrade = null;
+            if (trade == null) {
+                break;
+            }
+            if (!fits(trade)) {
+                // The books wait until the trades before them are out.
+                heldTrade = trade;
+                return;
+            }
+            out.put(trade);
+        }
+        for (Map.Entry<String, byte[]> book : pendingBooks.entrySet()) {
+            byte[] frame = book.getValue();
+            if (!fits(frame)) {
+                break;
+            }
+            // If a newer book arrived meanwhile, it stays pending and is sent next.
+            pendingBooks.remove(book.getKey(), frame);
+            out.put(frame);
+        }
+    }
+
+    private boolean fits(byte[] frame) {
+        if (out.position() == 0 && frame.length > out.capacity()) {
+            // A book deeper than the buffer: grow it rather than never sending the book.
+            out = ByteBuffer.allocateDirect(Math.max(frame.length, out.capacity() * 2));
+        }
+        return out.remaining() >= frame.length;
+    }
+}
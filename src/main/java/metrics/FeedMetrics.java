@@ -0,0 +1,191 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Hot-path measurements of the feed handler, cheap enough to leave on in production.
+ * <p>
+ * Recording is a few counter and histogram increments, without locks or allocation. The
+ * values are exposed over JMX and can be logged periodically, one line per interval.
+ * <ul>
+ *     <li>event to book: from receiving a diff on the Pusher thread to its snapshot being
+ *     published</li>
+ *     <li>queue wait: the part of that spent waiting for the market's partition thread, which
+ *     is where diffs used to wait for the order book lock</li>
+ *     <li>exchange to book: from the diff's exchange timestamp to its snapshot being published,
+ *     i.e. how stale the published book is, at millisecond resolution</li>
+ *     <li>REST: the duration of order book and trades requests</li>
+ * </ul>
+ */
+public class FeedMetrics implements FeedMetricsMBean {
+    private final LatencyHistogram eventToBook = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram exchangeToBook = new LatencyHistogram();
+    private final LatencyHistogram rest = new LatencyHistogram();
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder levels = new LongAdder();
+    private final LongAdder trades = new LongAdder();
+    private final LongAdder snapshotReloads = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private ScheduledExecutorService logger;
+
+    /**
+     * Record an applied diff.
+     * @param receivedNanos when the diff was received, from {@link System#nanoTime()}
+     * @param startedNanos when the partition thread started applying it
+     * @param publishedNanos when its snapshot was published
+     * @param levelCount the number of levels in the diff
+     * @param exchangeMicros the diff's exchange timestamp in microseconds, or -1
+     */
+    public void onDiff(long receivedNanos, long startedNanos, long publishedNanos, int levelCount,
+                       long exchangeMicros) {
+        messages.increment();
+        levels.add(levelCount);
+        queueWait.record(startedNanos - receivedNanos);
+        eventToBook.record(publishedNanos - receivedNanos);
+        if (exchangeMicros >= 0) {
+            exchangeToBook.record(System.currentTimeMillis() * 1000 - exchangeMicros);
+        }
+    }
+
+    public void onTrade() {
+        trades.increment();
+    }
+
+    public void onSnapshotReload() {
+        snapshotReloads.increment();
+    }
+
+    /**
+     * Record a message dropped because the ingestion queue was full.
+     */
+    public void onDrop() {
+        dropped.increment();
+    }
+
+    /**
+     * Record a REST request.
+     * @param nanos the duration of the request
+     */
+    public void onRest(long nanos) {
+        rest.record(nanos);
+    }
+
+    /**
+     * Register with the platform MBean server.
+     * @param name the name to register under, e.g. the process role
+     */
+    public void registerMBean(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, new ObjectName("bitstamp:type=FeedMetrics,name=" + name));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Log a summary line at a fixed interval, covering what happened during the interval.
+     * @param intervalSeconds the interval
+     */
+    public synchronized void startLogging(long intervalSeconds) {
+        if (logger != null) {
+            return;
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "feed-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.scheduleAtFixedRate(new Runnable() {
+            private long[] lastEventToBook = eventToBook.getCounts();
+            private long[] lastExchangeToBook = exchangeToBook.getCounts();
+            private long[] lastRest = rest.getCounts();
+            private long lastMessages;
+            private long lastLevels;
+            private long lastTrades;
+            private long lastReloads;
+            private long lastDropped;
+
+            @Override
+            public void run() {
+                long[] eventCounts = eventToBook.getCounts();
+                long[] exchangeCounts = exchangeToBook.getCounts();
+                long[] restCounts = rest.getCounts();
+                long[] event = LatencyHistogram.subtract(eventCounts, lastEventToBook);
+                long[] exchange = LatencyHistogram.subtract(exchangeCounts, lastExchangeToBook);
+                long[] restInterval = LatencyHistogram.subtract(restCounts, lastRest);
+                lastEventToBook = eventCounts;
+                lastExchangeToBook = exchangeCounts;
+                lastRest = restCounts;
+
+                long msgs = messages.sum();
+                long lvls = levels.sum();
+                long trds = trades.sum();
+                long reloads = snapshotReloads.sum();
+                long drops = dropped.sum();
+                System.out.printf("Feed: %.0f msg/s, %.0f levels/s, %.1f trades/s, %d reloads, "
+                        + "%d dropped | "
+                        + "event to book p50 %d p99 %d max %d us | exchange to book p50 %d "
+                        + "p99 %d us | REST p99 %d us (%d calls)%n",
+                    (msgs - lastMessages) / (double) intervalSeconds,
+                    (lvls - lastLevels) / (double) intervalSeconds,
+                    (trds - lastTrades) / (double) intervalSeconds, reloads - lastReloads,
+                    drops - lastDropped,
+                    micros(event, 50), micros(event, 99), micros(event, 100),
+                    LatencyHistogram.getValueAtPercentile(exchange, 50),
+                    LatencyHistogram.getValueAtPercentile(exchange, 99),
+                    micros(restInterval, 99), LatencyHistogram.getTotal(restInterval));
+                lastMessages = msgs;
+                lastLevels = lvls;
+                lastTrades = trds;
+                lastReloads = reloads;
+                lastDropped = drops;
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private static long micros(long[] nanoCounts, double percentile) {
+        return LatencyHistogram.getValueAtPercentile(nanoCounts, percentile) / 1000;
+    }
+
+    @Override
+    public long getMessages() { return messages.sum(); }
+    @Override
+    public long getLevels() { return levels.sum(); }
+    @Override
+    public long getTrades() { return trades.sum(); }
+    @Override
+    public long getSnapshotReloads() { return snapshotReloads.sum(); }
+    @Override
+    public long getDroppedMessages() { return dropped.sum(); }
+
+    @Override
+    public long getEventToBookP50Micros() { return micros(eventToBook.getCounts(), 50); }
+    @Override
+    public long getEventToBookP99Micros() { return micros(eventToBook.getCounts(), 99); }
+    @Override
+    public long getEventToBookMaxMicros() { return micros(eventToBook.getCounts(), 100); }
+    @Override
+    public long getQueueWaitP99Micros() { return micros(queueWait.getCounts(), 99); }
+    @Override
+    public long getExchangeToBookP50Micros() {
+        return LatencyHistogram.getValueAtPercentile(exchangeToBook.getCounts(), 50);
+    }
+    @Override
+    public long getExchangeToBookP99Micros() {
+        return LatencyHistogram.getValueAtPercentile(exchangeToBook.getCounts(), 99);
+    }
+    @Override
+    public long getRestP50Micros() { return micros(rest.getCounts(), 50); }
+    @Override
+    public long getRestP99Micros() { return micros(rest.getCounts(), 99); }
+}
@@ -0,0 +1,22 @@
+package metrics;
+
+/**
+ * The JMX view of {@link FeedMetrics}. Counts are totals since start, latencies are in
+ * microseconds over all values recorded since start.
+ */
+public interface FeedMetricsMBean {
+    long getMessages();
+    long getLevels();
+    long getTrades();
+    long getSnapshotReloads();
+    long getDroppedMessages();
+
+    long getEventToBookP50Micros();
+    long getEventToBookP99Micros();
+    long getEventToBookMaxMicros();
+    long getQueueWaitP99Micros();
+    long getExchangeToBookP50Micros();
+    long getExchangeToBookP99Micros();
+    long getRestP50Micros();
+    long getRestP99Micros();
+}
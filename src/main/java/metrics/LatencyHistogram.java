@@ -0,0 +1,104 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log-linear histogram of non-negative values, in the style of HdrHistogram.
+ * <p>
+ * Each power of two is split into 16 buckets, so recorded values are accurate to about 6%.
+ * Recording is one array increment with no allocation, and it's safe from any number of
+ * threads. Readers take a copy of the counts, which makes it easy to report on an interval by
+ * subtracting the previous copy.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Record a value. Negative values are recorded as zero.
+     * @param value the value, e.g. a latency in nanoseconds
+     */
+    public void record(long value) {
+        counts.incrementAndGet(bucket(Math.max(value, 0)));
+    }
+
+    /**
+     * Copy the counts recorded so far.
+     * @return the counts per bucket
+     */
+    public long[] getCounts() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Get the number of values in a copy of the counts.
+     * @param counts the counts per bucket
+     * @return the total count
+     */
+    public static long getTotal(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Get a percentile from a copy of the counts.
+     * @param counts the counts per bucket
+     * @param percentile the percentile, from 0 to 100
+     * @return the lowest value of the bucket the percentile falls in, or 0 if empty
+     */
+    public static long getValueAtPercentile(long[] counts, double percentile) {
+        long total = getTotal(counts);
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return lowestValue(i);
+            }
+        }
+        return lowestValue(counts.length - 1);
+    }
+
+    /**
+     * Subtract an earlier copy of the counts, leaving what was recorded in between.
+     * @param current the later counts
+     * @param previous the earlier counts
+     * @return the counts recorded in between
+     */
+    public static long[] subtract(long[] current, long[] previous) {
+        long[] result = new long[current.length];
+        for (int i = 0; i < current.length; i++) {
+            result[i] = current[i] - previous[i];
+        }
+        return result;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS * 2) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS * 2) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+}
@@ -0,0 +1,194 @@
+package record;
+
+import api.OrderBook;
+import api.OrderBookSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reconstructs a market's order book at past times from the segments written by a
+ * {@link BookStore}.
+ * <p>
+ * A query finds the last keyframe at or before its time in the segment index, loads it and
+ * replays only the diffs up to that time, so it takes about as long as replaying one keyframe
+ * interval, however much history is stored. A scan does the same once and then moves forward,
+ * so its cost grows with the scanned range rather than the number of points.
+ */
+public class BookHistory {
+
+    /**
+     * Receives the books of a {@link #scan}.
+     */
+    public interface Listener {
+        /**
+         * Called with the book at one point of the scan.
+         * @param timestamp the exchange microtimestamp
+         * @param book the top levels of the book at that time
+         */
+        void onBook(long timestamp, OrderBookSnapshot book);
+    }
+
+    private final Path[] segments;
+    private final long[] segmentStarts;
+
+    /**
+     * Ctor. Finds the market's segments; segments added later aren't seen.
+     * @param dir the directory the {@link BookStore} writes to
+     * @param market the market
+     * @throws IOException if the directory can't be listed
+     */
+    public BookHistory(Path dir, String market) throws IOException {
+        String prefix = BookStore.segmentPrefix(market);
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> files =
+                 Files.newDirectoryStream(dir, prefix + "*" + BookStore.SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                found.add(file);
+            }
+        }
+        found.sort(Comparator.comparingLong(file -> segmentStart(file, prefix)));
+        segments = found.toArray(new Path[0]);
+        segmentStarts = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            segmentStarts[i] = segmentStart(segments[i], prefix);
+        }
+    }
+
+    private static long segmentStart(Path segment, String prefix) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(),
+            name.length() - BookStore.SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Get the exchange time of the first stored book.
+     * @return the microtimestamp, or {@link Long#MAX_VALUE} if nothing is stored
+     */
+    public long getStart() {
+        return segmentStarts.length == 0 ? Long.MAX_VALUE : segmentStarts[0];
+    }
+
+    /**
+     * Reconstruct the book as it was at a time.
+     * @param timestamp the exchange microtimestamp
+     * @param depth the number of levels per side in the book's published snapshot
+     * @return the whole book, with a published snapshot; empty if the time is before the first
+     *     stored book
+     * @throws IOException if reading fails
+     */
+    public OrderBook at(long timestamp, int depth) throws IOException {
+        OrderBook book = new OrderBook(depth);
+        try (Cursor cursor = new Cursor(timestamp)) {
+            cursor.applyUntil(book, timestamp);
+        }
+        book.publish();
+        return book;
+    }
+
+    /**
+     * Emit the top levels of the book at fixed intervals over a range of time.
+     * @param from the exchange microtimestamp of the first point
+     * @param to the exchange microtimestamp after which to stop
+     * @param intervalMicros the time between points
+     * @param depth the number of levels per side to emit
+     * @param listener receives the books, in time order
+     * @return the number of points emitted
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if the interval isn't positive
+     */
+    public long scan(long from, long to, long intervalMicros, int depth, Listener listener)
+        throws IOException {
+        if (intervalMicros <= 0) {
+            throw new IllegalArgumentException("The interval must be positive, got "
+                + intervalMicros);
+        }
+        OrderBook book = new OrderBook(depth);
+        long points = 0;
+        try (Cursor cursor = new Cursor(from)) {
+            for (long timestamp = from; timestamp <= to; timestamp += intervalMicros) {
+                cursor.applyUntil(book, timestamp);
+                book.publish();
+                listener.onBook(timestamp, book.getSnapshot());
+                points++;
+                if (timestamp > Long.MAX_VALUE - intervalMicros) {
+                    break;
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Reads forward through the segments from the keyframe before a time.
+     */
+    private final class Cursor implements AutoCloseable {
+        private int segment;
+        private Replayer replayer;
+
+        Cursor(long timestamp) throws IOException {
+            int found = Arrays.binarySearch(segmentStarts, timestamp);
+            segment = found >= 0 ? found : Math.max(0, -found - 2);
+            if (segment >= segments.length) {
+                return;
+            }
+            replayer = new Replayer(segments[segment].toString());
+            if (timestamp >= segmentStarts[segment]) {
+                replayer.seek(keyframeOffset(segment, timestamp));
+            }
+        }
+
+        void applyUntil(OrderBook book, long timestamp) throws IOException {
+            while (replayer != null && replayer.applyUntil(book, timestamp) == Replayer.END
+                && segment + 1 < segments.length) {
+                // The next segment starts with a keyframe, which stops the replay if it's newer.
+                replayer.close();
+                replayer = new Replayer(segments[++segment].toString());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (replayer != null) {
+                replayer.close();
+            }
+        }
+
+        private long keyframeOffset(int segment, long timestamp) throws IOException {
+            Path indexFile = segments[segment].resolveSibling(segments[segment].getFileName()
+                .toString().replace(BookStore.SEGMENT_SUFFIX, BookStore.INDEX_SUFFIX));
+            try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                int entries = (int) (index.size() / BookStore.INDEX_ENTRY_SIZE);
+                ByteBuffer buffer = ByteBuffer.allocate(entries * BookStore.INDEX_ENTRY_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                while (buffer.hasRemaining() && index.read(buffer) >= 0) {
+                    // Read the whole index; it's a few kilobytes per day.
+                }
+                // The last keyframe at or before the time.
+                int low = 0;
+                int high = entries - 1;
+                long offset = RecordFormat.FILE_HEADER_SIZE;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    if (buffer.getLong(mid * BookStore.INDEX_ENTRY_SIZE) <= timestamp) {
+                        offset = buffer.getLong(mid * BookStore.INDEX_ENTRY_SIZE + 8);
+                        low = mid + 1;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                return offset;
+            }
+        }
+    }
+}
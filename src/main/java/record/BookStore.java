@@ -0,0 +1,171 @@
+package record;
+
+import api.DiffObserver;
+import api.OrderBook;
+import api.OrderBookParser;
+import dto.MarketTrade;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records one market into a directory of day-long segments, so {@link BookHistory} can tell what
+ * the book looked like at any time.
+ * <p>
+ * Each segment is a recording as written by {@link Recorder}, named after the exchange time of
+ * its first record, with an index file next to it. Besides the diffs and trades, every interval
+ * a keyframe with the whole book is written as a snapshot record, and its time and offset are
+ * appended to the index. A query then only replays the diffs since the keyframe before it.
+ * <p>
+ * The keyframes come from a copy of the book that is rebuilt from the recorded diffs, so they
+ * always match what replaying the diffs gives. Diffs before the first sync aren't recorded,
+ * since there is no book to replay them onto. Register it like a {@link Recorder}.
+ */
+public class BookStore implements DiffObserver, Closeable {
+    static final String SEGMENT_SUFFIX = ".bin";
+    static final String INDEX_SUFFIX = ".idx";
+    // The keyframe's exchange microtimestamp and offset in the segment.
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    private static final long SEGMENT_MICROS = TimeUnit.DAYS.toMicros(1);
+
+    private final Path dir;
+    private final String market;
+    private final long keyframeMicros;
+    private final OrderBook book = new OrderBook(0);
+    private final ByteBuffer indexEntry =
+        ByteBuffer.allocate(INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private Recorder segment;
+    private FileChannel index;
+    private long segmentStart;
+    private long lastKeyframe;
+    private boolean synced;
+    private boolean closed;
+
+    /**
+     * Ctor. The first segment is created on the first sync.
+     * @param dir the directory, which must exist
+     * @param market the market, used in the file names
+     * @param keyframeSeconds how often to write a keyframe
+     */
+    public BookStore(Path dir, String market, long keyframeSeconds) {
+        this.dir = dir;
+        this.market = market;
+        this.keyframeMicros = TimeUnit.SECONDS.toMicros(keyframeSeconds);
+    }
+
+    /**
+     * Get the prefix of a market's segment file names, followed by the start time.
+     * @param market the market
+     * @return the prefix
+     */
+    static String segmentPrefix(String market) {
+        return market + "-";
+    }
+
+    @Override
+    public synchronized void onLevel(boolean bid, long price, long volume) {
+        if (synced && !closed) {
+            segment.onLevel(bid, price, volume);
+            book.update(bid, price, volume);
+        }
+    }
+
+    @Override
+    public synchronized void onDiffEnd(long timestamp) {
+        if (!synced || closed) {
+            return;
+        }
+        segment.onDiffEnd(timestamp);
+        if (timestamp == OrderBookParser.NO_TIMESTAMP) {
+            return;
+        }
+        if (timestamp - segmentStart >= SEGMENT_MICROS) {
+            startSegment(timestamp);
+        } else if (timestamp - lastKeyframe >= keyframeMicros) {
+            writeKeyframe(timestamp);
+        }
+    }
+
+    @Override
+    public synchronized void onSnapshot(OrderBook syncedBook, long timestamp) {
+        if (closed) {
+            return;
+        }
+        long time = timestamp != OrderBookParser.NO_TIMESTAMP
+            ? timestamp : System.currentTimeMillis() * 1000;
+        book.copyFrom(syncedBook);
+        synced = true;
+        if (segment == null || time - segmentStart >= SEGMENT_MICROS) {
+            startSegment(time);
+        } else {
+            writeKeyframe(time);
+        }
+    }
+
+    /**
+     * Record a trade.
+     * @param trade the trade
+     */
+    public synchronized void onTrade(MarketTrade trade) {
+        if (segment != null && !closed) {
+            segment.onTrade(trade);
+        }
+    }
+
+    private void startSegment(long timestamp) {
+        try {
+            closeSegment();
+            String name = segmentPrefix(market) + timestamp;
+            segment = new Recorder(dir.resolve(name + SEGMENT_SUFFIX).toString());
+            index = FileChannel.open(dir.resolve(name + INDEX_SUFFIX), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't start a segment for " + market, e);
+        }
+        segmentStart = timestamp;
+        writeKeyframe(timestamp);
+    }
+
+    private void writeKeyframe(long timestamp) {
+        long offset = segment.position();
+        segment.onSnapshot(book, timestamp);
+        indexEntry.clear();
+        indexEntry.putLong(timestamp);
+        indexEntry.putLong(offset);
+        indexEntry.flip();
+        try {
+            while (indexEntry.hasRemaining()) {
+                index.write(indexEntry);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't extend the index of " + market, e);
+        }
+        lastKeyframe = timestamp;
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.close();
+            index.close();
+            segment = null;
+        }
+    }
+
+    /**
+     * Close the current segment. Events that arrive afterwards are ignored.
+     * @throws IOException if closing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        closeSegment();
+    }
+}
@@ -0,0 +1,108 @@
+package record;
+
+import api.OrderBook;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves a whole order book to disk and loads it back, so a restart can start from the last
+ * saved book instead of waiting for a REST snapshot.
+ * <p>
+ * A checkpoint is a recording with a single {@link RecordFormat#SNAPSHOT} record, so it can
+ * also be passed to {@link Replayer}. It is written to a temporary file that then replaces the
+ * previous checkpoint, so a crash while writing never leaves a partial checkpoint behind.
+ */
+public final class Checkpoint {
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Write a checkpoint.
+     * @param book the book, which must not change while it's written
+     * @param timestamp the exchange microtimestamp of the last diff applied to the book
+     * @param file the checkpoint file
+     * @throws IOException if writing fails
+     */
+    public static void write(OrderBook book, long timestamp, Path file) throws IOException {
+        int bidCount = book.getBidDepth();
+        int askCount = book.getAskDepth();
+        int length = RecordFormat.BOOK_HEADER_SIZE
+            + (bidCount + askCount) * RecordFormat.LEVEL_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(RecordFormat.FILE_HEADER_SIZE
+            + RecordFormat.RECORD_HEADER_SIZE + length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(RecordFormat.MAGIC);
+        buffer.putInt(RecordFormat.VERSION);
+        buffer.put(RecordFormat.SNAPSHOT);
+        buffer.putInt(length);
+        buffer.putLong(System.currentTimeMillis() * 1000);
+        buffer.putLong(timestamp);
+        buffer.putInt(bidCount);
+        buffer.putInt(askCount);
+        for (int i = 0; i < bidCount; i++) {
+            buffer.putLong(book.getBidPrice(i));
+            buffer.putLong(book.getBidVolume(i));
+        }
+        for (int i = 0; i < askCount; i++) {
+            buffer.putLong(book.getAskPrice(i));
+            buffer.putLong(book.getAskVolume(i));
+        }
+        buffer.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load a checkpoint into a book, replacing its levels. Doesn't publish a snapshot.
+     * @param file the checkpoint file
+     * @param book the book to fill
+     * @return the exchange microtimestamp of the checkpoint
+     * @throws IOException if the file can't be read or isn't a checkpoint
+     */
+    public static long read(Path file, OrderBook book) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < RecordFormat.FILE_HEADER_SIZE + RecordFormat.RECORD_HEADER_SIZE
+                + RecordFormat.BOOK_HEADER_SIZE
+                || buffer.getLong() != RecordFormat.MAGIC
+                || buffer.getInt() != RecordFormat.VERSION
+                || buffer.get() != RecordFormat.SNAPSHOT) {
+                throw new IOException(file + " is not a checkpoint");
+            }
+            int length = buffer.getInt();
+            if (buffer.remaining() < length) {
+                throw new IOException("Truncated checkpoint " + file);
+            }
+            buffer.getLong();
+            long timestamp = buffer.getLong();
+            int bidCount = buffer.getInt();
+            int askCount = buffer.getInt();
+            if (bidCount < 0 || askCount < 0 || length != RecordFormat.BOOK_HEADER_SIZE
+                + ((long) bidCount + askCount) * RecordFormat.LEVEL_SIZE) {
+                throw new IOException("Corrupt checkpoint " + file);
+            }
+            book.clear();
+            for (int i = 0; i < bidCount + askCount; i++) {
+                book.update(i < bidCount, buffer.getLong(), buffer.getLong());
+            }
+            return timestamp;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package record;
+
+/**
+ * The layout of recording files. All values are little-endian.
+ * <p>
+ * A file starts with {@link #MAGIC} and {@link #VERSION}, followed by records. Each record is a
+ * type byte and an int body length, then the body:
+ * <ul>
+ *     <li>{@link #DIFF} and {@link #SNAPSHOT}: received micros, exchange microtimestamp, bid
+ *     count, ask count, then price/volume pairs of the bids followed by the asks</li>
+ *     <li>{@link #TRADE}: received micros, trade id, trade time, price, volume, and a byte that
+ *     is 1 if the taker bought</li>
+ * </ul>
+ * Prices and volumes are {@link api.FixedPoint} longs.
+ */
+final class RecordFormat {
+    static final long MAGIC = 0x4345525453544942L; // "BITSTREC"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 12;
+
+    static final byte DIFF = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte TRADE = 3;
+
+    static final int RECORD_HEADER_SIZE = 5;
+    static final int BOOK_HEADER_SIZE = 24;
+    static final int LEVEL_SIZE = 16;
+    static final int TRADE_SIZE = 41;
+
+    private RecordFormat() {
+    }
+}
@@ -0,0 +1,177 @@
+package record;
+
+import api.DiffObserver;
+import api.FixedPoint;
+import api.OrderBook;
+import dto.MarketTrade;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Appends the order book diffs, syncs and trades of one market to a compact binary log.
+ * <p>
+ * The file is written through memory-mapped regions, so recording an event is a few buffer
+ * writes with no system call. Register it with
+ * {@link api.BitstampApiEndpoint#setDiffObserver} and as a trade feed listener; both run on the
+ * market's partition thread. The record methods are synchronized only so that {@link #close}
+ * can be called from another thread; the lock is otherwise uncontended.
+ * See {@link RecordFormat} for the layout and {@link Replayer} to read it back.
+ */
+public class Recorder implements DiffObserver, Closeable {
+    private static final long REGION_SIZE = 64L << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    private final long baseMicros = System.currentTimeMillis() * 1000;
+    private final long baseNanos = System.nanoTime();
+
+    private long[] bids = new long[256];
+    private long[] asks = new long[256];
+    private int bidCount;
+    private int askCount;
+
+    /**
+     * Ctor. Creates or overwrites the file.
+     * @param fileName the file to record to
+     * @throws IOException if the file can't be created
+     */
+    public Recorder(String fileName) throws IOException {
+        file = new RandomAccessFile(fileName, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        map(0, REGION_SIZE);
+        region.putLong(RecordFormat.MAGIC);
+        region.putInt(RecordFormat.VERSION);
+    }
+
+    @Override
+    public void onLevel(boolean bid, long price, long volume) {
+        if (bid) {
+            bids = append(bids, bidCount++, price, volume);
+        } else {
+            asks = append(asks, askCount++, price, volume);
+        }
+    }
+
+    @Override
+    public synchronized void onDiffEnd(long timestamp) {
+        writeBook(RecordFormat.DIFF, timestamp);
+    }
+
+    @Override
+    public synchronized void onSnapshot(OrderBook book, long timestamp) {
+        bidCount = 0;
+        askCount = 0;
+        for (int i = 0; i < book.getBidDepth(); i++) {
+            onLevel(true, book.getBidPrice(i), book.getBidVolume(i));
+        }
+        for (int i = 0; i < book.getAskDepth(); i++) {
+            onLevel(false, book.getAskPrice(i), book.getAskVolume(i));
+        }
+        writeBook(RecordFormat.SNAPSHOT, timestamp);
+    }
+
+    /**
+     * Record a trade.
+     * @param trade the trade
+     */
+    public synchronized void onTrade(MarketTrade trade) {
+        if (region == null) {
+            return;
+        }
+        startRecord(RecordFormat.TRADE, RecordFormat.TRADE_SIZE);
+        region.putLong(nowMicros());
+        region.putLong(trade.getId());
+        region.putLong(trade.getTime());
+        region.putLong(FixedPoint.fromBigDecimal(trade.getPrice()));
+        region.putLong(FixedPoint.fromBigDecimal(trade.getVolume()));
+        region.put((byte) (trade.isBuy() ? 1 : 0));
+    }
+
+    /**
+     * Get the offset in the file at which the next record will be written.
+     * @return the offset
+     */
+    synchronized long position() {
+        return regionStart + region.position();
+    }
+
+    private void writeBook(byte type, long timestamp) {
+        if (region == null) {
+            return;
+        }
+        int length = RecordFormat.BOOK_HEADER_SIZE
+            + (bidCount + askCount) * RecordFormat.LEVEL_SIZE;
+        startRecord(type, length);
+        region.putLong(nowMicros());
+        region.putLong(timestamp);
+        region.putInt(bidCount);
+        region.putInt(askCount);
+        for (int i = 0; i < bidCount * 2; i++) {
+            region.putLong(bids[i]);
+        }
+        for (int i = 0; i < askCount * 2; i++) {
+            region.putLong(asks[i]);
+        }
+        bidCount = 0;
+        askCount = 0;
+    }
+
+    private void startRecord(byte type, int length) {
+        int total = RecordFormat.RECORD_HEADER_SIZE + length;
+        if (region.remaining() < total) {
+            try {
+                map(regionStart + region.position(), Math.max(REGION_SIZE, total));
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't extend recording", e);
+            }
+        }
+        region.put(type);
+        region.putInt(length);
+    }
+
+    private void map(long start, long size) throws IOException {
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private long nowMicros() {
+        return baseMicros + (System.nanoTime() - baseNanos) / 1000;
+    }
+
+    private static long[] append(long[] levels, int index, long price, long volume) {
+        if (index * 2 + 2 > levels.length) {
+            levels = Arrays.copyOf(levels, levels.length * 2);
+        }
+        levels[index * 2] = price;
+        levels[index * 2 + 1] = volume;
+        return levels;
+    }
+
+    /**
+     * Flush the recording and trim the file to the recorded length.
+     * Events that arrive afterwards are ignored.
+     * @throws IOException if closing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (region == null) {
+            return;
+        }
+        long length = regionStart + region.position();
+        region.force();
+        region = null;
+        channel.truncate(length);
+        file.close();
+    }
+}
@@ -0,0 +1,289 @@
+package record;
+
+import api.DiffObserver;
+import api.FixedPoint;
+import api.OrderBook;
+import dto.MarketTrade;
+import sim.TickChunk;
+import sim.TickReader;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Reads back a file written by {@link Recorder}, through memory-mapped regions.
+ * <p>
+ * {@link #replay} drives an {@link OrderBook} through the same update and publish calls as
+ * the live feed, either at the recorded pace or as fast as possible. As a {@link TickReader},
+ * it feeds the recorded trades to a backtest.
+ */
+public class Replayer implements TickReader {
+    /**
+     * Returned by {@link #applyUntil} at the end of the recording.
+     */
+    static final long END = Long.MAX_VALUE;
+
+    private static final long REGION_SIZE = 256L << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    /**
+     * Ctor.
+     * @param fileName the recording
+     * @throws IOException if the file can't be opened or isn't a recording
+     */
+    public Replayer(String fileName) throws IOException {
+        file = new RandomAccessFile(fileName, "r");
+        channel = file.getChannel();
+        fileSize = channel.size();
+        map(0);
+        if (!ensure(RecordFormat.FILE_HEADER_SIZE) || region.getLong() != RecordFormat.MAGIC) {
+            throw new IOException(fileName + " is not a recording");
+        }
+        int version = region.getInt();
+        if (version != RecordFormat.VERSION) {
+            throw new IOException("Unsupported recording version " + version);
+        }
+    }
+
+    /**
+     * Replay the rest of the recording into an order book, publishing after each diff.
+     * @param book the book to update
+     * @param trades receives the recorded trades, or null to skip them
+     * @param speed 1 for the recorded pace, 2 for twice as fast, 0 for as fast as possible
+     * @return the number of records replayed
+     * @throws IOException if reading fails
+     */
+    public long replay(OrderBook book, Consumer<MarketTrade> trades, double speed)
+        throws IOException {
+        return replay(book, null, trades, speed);
+    }
+
+    /**
+     * Replay the rest of the recording into an order book, publishing after each diff, and
+     * pass each diff to an observer as the live feed would.
+     * @param book the book to update
+     * @param observer sees the levels of each diff once it was published, or null
+     * @param trades receives the recorded trades, or null to skip them
+     * @param speed 1 for the recorded pace, 2 for twice as fast, 0 for as fast as possible
+     * @return the number of records replayed
+     * @throws IOException if reading fails
+     */
+    public long replay(OrderBook book, DiffObserver observer, Consumer<MarketTrade> trades,
+                       double speed) throws IOException {
+        long records = 0;
+        long firstMicros = -1;
+        long startNanos = System.nanoTime();
+
+        int length;
+        while ((length = nextRecord()) >= 0) {
+            byte type = region.get();
+            region.getInt();
+            int end = region.position() + length;
+
+            long receivedMicros = region.getLong();
+            if (speed > 0) {
+                if (firstMicros < 0) {
+                    firstMicros = receivedMicros;
+                }
+                long due = startNanos + (long) ((receivedMicros - firstMicros) * 1000 / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+
+            if (type == RecordFormat.DIFF || type == RecordFormat.SNAPSHOT) {
+                if (type == RecordFormat.SNAPSHOT) {
+                    book.clear();
+                }
+                long timestamp = region.getLong();
+                int bidCount = region.getInt();
+                int askCount = region.getInt();
+                for (int i = 0; i < bidCount + askCount; i++) {
+                    long price = region.getLong();
+                    long volume = region.getLong();
+                    book.update(i < bidCount, price, volume);
+                    if (observer != null && type == RecordFormat.DIFF) {
+                        observer.onLevel(i < bidCount, price, volume);
+                    }
+                }
+                book.publish();
+                if (observer != null) {
+                    if (type == RecordFormat.SNAPSHOT) {
+                        observer.onSnapshot(book, timestamp);
+                    } else {
+                        observer.onDiffEnd(timestamp);
+                    }
+                }
+            } else if (type == RecordFormat.TRADE && trades != null) {
+                trades.accept(new MarketTrade(region.getLong(), region.getLong(),
+                    FixedPoint.toBigDecimal(region.getLong()),
+                    FixedPoint.toBigDecimal(region.getLong()), region.get() == 1));
+            }
+            region.position(end);
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * Read the next recorded trades, skipping the order book records.
+     * @param chunk the chunk to fill
+     * @return the number of trades read, 0 at the end of the recording
+     * @throws IOException if reading fails
+     */
+    @Override
+    public int read(TickChunk chunk) throws IOException {
+        chunk.clear();
+        int length;
+        while (!chunk.isFull() && (length = nextRecord()) >= 0) {
+            byte type = region.get();
+            region.getInt();
+            int end = region.position() + length;
+            if (type == RecordFormat.TRADE) {
+                // Skip the received time and the trade id.
+                region.position(region.position() + 16);
+                long time = region.getLong();
+                long price = region.getLong();
+                long volume = region.getLong();
+                chunk.add(time, price, volume, region.get() == 1 ? TickChunk.BUY : TickChunk.SELL);
+            }
+            region.position(end);
+        }
+        return chunk.size();
+    }
+
+    /**
+     * Continue reading at a record, e.g. a keyframe found in a {@link BookStore} index.
+     * @param position the record's offset in the file
+     * @throws IOException if mapping fails
+     */
+    void seek(long position) throws IOException {
+        map(position);
+    }
+
+    /**
+     * Apply the diffs and snapshots up to a time to an order book, without publishing it.
+     * Stops before the first one that's newer, so the next call continues there. Trades are
+     * skipped.
+     * @param book the book to update
+     * @param timestamp the exchange microtimestamp to stop after
+     * @return the timestamp of the record it stopped before, or {@link #END}
+     * @throws IOException if reading fails
+     */
+    long applyUntil(OrderBook book, long timestamp) throws IOException {
+        // Every record is at least as long as a book header.
+        while (ensure(RecordFormat.RECORD_HEADER_SIZE + RecordFormat.BOOK_HEADER_SIZE)) {
+            int start = region.position();
+            byte type = region.get(start);
+            int length = region.getInt(start + 1);
+            boolean bookRecord = type == RecordFormat.DIFF || type == RecordFormat.SNAPSHOT;
+            if (bookRecord) {
+                long recordTimestamp = region.getLong(start + RecordFormat.RECORD_HEADER_SIZE + 8);
+                if (recordTimestamp > timestamp) {
+                    return recordTimestamp;
+                }
+            } else if (type != RecordFormat.TRADE) {
+                // The unwritten tail of a recording that is still open or wasn't closed.
+                return END;
+            }
+            if (!ensure(RecordFormat.RECORD_HEADER_SIZE + length)) {
+                throw new IOException("Truncated recording");
+            }
+            int end = region.position() + RecordFormat.RECORD_HEADER_SIZE + length;
+            if (bookRecord) {
+                if (type == RecordFormat.SNAPSHOT) {
+                    book.clear();
+                }
+                region.position(region.position() + RecordFormat.RECORD_HEADER_SIZE + 16);
+                int bidCount = region.getInt();
+                int askCount = region.getInt();
+                for (int i = 0; i < bidCount + askCount; i++) {
+                    book.update(i < bidCount, region.getLong(), region.getLong());
+                }
+            }
+            region.position(end);
+        }
+        return END;
+    }
+
+    /**
+     * Check the header of the next record and map the whole record.
+     * @return the body length, or -1 at the end of the recording, which is also where the
+     *     unwritten, zeroed tail of a recording that is still open or wasn't closed starts
+     * @throws IOException if the record is truncated or its body is too short for its type
+     */
+    private int nextRecord() throws IOException {
+        if (!ensure(RecordFormat.RECORD_HEADER_SIZE)) {
+            return -1;
+        }
+        int start = region.position();
+        byte type = region.get(start);
+        int length = region.getInt(start + 1);
+        int minLength;
+        if (type == RecordFormat.DIFF || type == RecordFormat.SNAPSHOT) {
+            minLength = RecordFormat.BOOK_HEADER_SIZE;
+        } else if (type == RecordFormat.TRADE) {
+            minLength = RecordFormat.TRADE_SIZE;
+        } else {
+            return -1;
+        }
+        if (length < minLength) {
+            throw new IOException("Corrupt record of type " + type + " at "
+                + (regionStart + start));
+        }
+        if (!ensure(RecordFormat.RECORD_HEADER_SIZE + length)) {
+            throw new IOException("Truncated recording");
+        }
+        if (minLength == RecordFormat.BOOK_HEADER_SIZE) {
+            // The level counts must fit in the body too.
+            int counts = region.position() + RecordFormat.RECORD_HEADER_SIZE + 16;
+            long levels = (long) region.getInt(counts) + region.getInt(counts + 4);
+            if (levels < 0 || levels * RecordFormat.LEVEL_SIZE
+                > length - RecordFormat.BOOK_HEADER_SIZE) {
+                throw new IOException("Corrupt record of type " + type + " at "
+                    + (regionStart + region.position()));
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Make sure the next bytes are mapped, remapping from the current position if needed.
+     * @return false at the end of the file
+     */
+    private boolean ensure(int bytes) throws IOException {
+        if (region.remaining() >= bytes) {
+            return true;
+        }
+        long position = regionStart + region.position();
+        if (fileSize - position < bytes) {
+            return false;
+        }
+        map(position);
+        return true;
+    }
+
+    private void map(long start) throws IOException {
+        regionStart = start;
+        long size = Math.min(REGION_SIZE, fileSize - start);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        file.close();
+    }
+}
@@ -0,0 +1,77 @@
+package sim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Sweeps many M/N configurations of the contrarian strategy over historical ticks.
+ * <p>
+ * Ticks are read into one of two reusable chunks while the previous chunk is simulated, so
+ * reading overlaps with simulation. Each chunk is run through all configurations in parallel
+ * on the common fork-join pool. Strategy state carries over between chunks and between calls
+ * to {@link #run}, so several files can be fed in chronological order.
+ */
+public class BacktestEngine {
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final ContrarianBacktest[] strategies;
+    private TickChunk reading = new TickChunk(CHUNK_SIZE);
+    private TickChunk simulating = new TickChunk(CHUNK_SIZE);
+
+    /**
+     * Ctor for a sweep over every combination of M and N in the given ranges.
+     * @param minM the smallest M
+     * @param maxM the largest M
+     * @param minN the smallest N
+     * @param maxN the largest N
+     * @param orderSize the fixed-point size of each order
+     */
+    public BacktestEngine(int minM, int maxM, int minN, int maxN, long orderSize) {
+        List<ContrarianBacktest> list = new ArrayList<>();
+        for (int m = minM; m <= maxM; m++) {
+            for (int n = minN; n <= maxN; n++) {
+                list.add(new ContrarianBacktest(m, n, orderSize));
+            }
+        }
+        strategies = list.toArray(new ContrarianBacktest[0]);
+    }
+
+    /**
+     * Run all configurations over the ticks of a reader.
+     * @param reader the ticks, oldest first
+     * @return the number of ticks read
+     * @throws IOException if reading fails
+     */
+    public long run(TickReader reader) throws IOException {
+        long total = 0;
+        CompletableFuture<Void> simulation = CompletableFuture.completedFuture(null);
+        while (reader.read(reading) > 0) {
+            total += reading.size();
+            simulation.join();
+
+            TickChunk chunk = reading;
+            reading = simulating;
+            simulating = chunk;
+            simulation = CompletableFuture.runAsync(() -> IntStream.range(0, strategies.length)
+                .parallel()
+                .forEach(i -> strategies[i].run(chunk)));
+        }
+        simulation.join();
+        return total;
+    }
+
+    /**
+     * Get the results of all configurations so far.
+     * @return the results
+     */
+    public List<BacktestResult> getResults() {
+        List<BacktestResult> results = new ArrayList<>(strategies.length);
+        for (ContrarianBacktest strategy : strategies) {
+            results.add(strategy.getResult());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,53 @@
+package sim;
+
+import api.FixedPoint;
+
+/**
+ * The outcome of backtesting one M/N configuration.
+ */
+public class BacktestResult {
+    private final int m;
+    private final int n;
+    private final long ticks;
+    private final long fills;
+    private final long tradedVolume;
+    private final long position;
+    private final double pnl;
+
+    /**
+     * Ctor.
+     * @param m the number of upticks to go short
+     * @param n the number of downticks to go long
+     * @param ticks the number of market trades processed
+     * @param fills the number of simulated orders filled
+     * @param tradedVolume the fixed-point volume of all fills
+     * @param position the fixed-point position at the end, negative if short
+     * @param pnl the profit in quote currency, with the position marked to the last price
+     */
+    public BacktestResult(int m, int n, long ticks, long fills, long tradedVolume, long position,
+                          double pnl) {
+        this.m = m;
+        this.n = n;
+        this.ticks = ticks;
+        this.fills = fills;
+        this.tradedVolume = tradedVolume;
+        this.position = position;
+        this.pnl = pnl;
+    }
+
+    public int getM() { return m; }
+    public int getN() { return n; }
+    public long getTicks() { return ticks; }
+    public long getFills() { return fills; }
+    public long getTradedVolume() { return tradedVolume; }
+    public long getPosition() { return position; }
+    public double getPnl() { return pnl; }
+
+    @Override
+    public String toString() {
+        return String.format("M=%d N=%d ticks=%d fills=%d volume=%s position=%s pnl=%.2f",
+            m, n, ticks, fills, FixedPoint.toBigDecimal(tradedVolume).stripTrailingZeros()
+                .toPlainString(),
+            FixedPoint.toBigDecimal(position).stripTrailingZeros().toPlainString(), pnl);
+    }
+}
@@ -0,0 +1,98 @@
+package sim;
+
+import api.FixedPoint;
+
+/**
+ * The contrarian M/N strategy with position and PnL accounting, run over primitive ticks.
+ * <p>
+ * Follows the same rules as {@link ContrarianSimulator}: after M upticks in a row sell one
+ * order, after N downticks in a row buy one order. Orders fill in full at the price of the
+ * trade that triggered them. Not thread-safe; each instance is driven by one thread at a time.
+ */
+public class ContrarianBacktest {
+    private final int m;
+    private final int n;
+    private final long orderSize;
+
+    private boolean started;
+    private long prevPrice;
+    private int upTicks;
+    private int downTicks;
+
+    private long position;
+    private double cash;
+    private long fills;
+    private long tradedVolume;
+    private long ticks;
+
+    /**
+     * Ctor.
+     * @param m the number of upticks to go short
+     * @param n the number of downticks to go long
+     * @param orderSize the fixed-point size of each order
+     */
+    public ContrarianBacktest(int m, int n, long orderSize) {
+        this.m = m;
+        this.n = n;
+        this.orderSize = orderSize;
+    }
+
+    /**
+     * Process all ticks of a chunk.
+     * @param chunk the ticks, oldest first
+     */
+    public void run(TickChunk chunk) {
+        for (int i = 0; i < chunk.size(); i++) {
+            onTick(chunk.price(i));
+        }
+    }
+
+    /**
+     * Process the next trade.
+     * @param price the fixed-point trade price
+     */
+    public void onTick(long price) {
+        ticks++;
+        if (!started) {
+            started = true;
+            prevPrice = price;
+            return;
+        }
+
+        if (price > prevPrice) {
+            upTicks++;
+            downTicks = 0;
+        } else if (price < prevPrice) {
+            upTicks = 0;
+            downTicks++;
+        }
+        prevPrice = price;
+
+        if (m <= upTicks) {
+            fill(-orderSize, price);
+            upTicks = 0;
+        }
+
+        if (n <= downTicks) {
+            fill(orderSize, price);
+            downTicks = 0;
+        }
+    }
+
+    private void fill(long quantity, long price) {
+        position += quantity;
+        cash -= (double) quantity / FixedPoint.ONE * price / FixedPoint.ONE;
+        fills++;
+        tradedVolume += Math.abs(quantity);
+    }
+
+    /**
+     * Get the results so far, marking the position to the last trade price.
+     * @return the results
+     */
+    public BacktestResult getResult() {
+        double lastPrice = (double) prevPrice / FixedPoint.ONE;
+        double pnl = cash + (double) position / FixedPoint.ONE * lastPrice;
+        return new BacktestResult(m, n, ticks, fills, tradedVolume, position, pnl);
+    }
+}
@@ -0,0 +1,120 @@
+package sim;
+
+import api.Fill;
+import api.FixedPoint;
+import api.OrderBook;
+import dto.MarketTrade;
+import dto.Trade;
+
+import java.math.BigDecimal;
+import java.util.function.Consumer;
+
+/**
+ * Runs the contrarian strategy over a stream of market trades, one trade at a time.
+ * <p>
+ * After M upticks in a row we go short one unit, after N downticks in a row we go long one
+ * unit. The tick counters carry over between calls, so the signals don't depend on how the
+ * trades were batched. Each market trade is emitted as a {@link Trade} with its tick
+ * direction, followed by any simulated trade it triggered. Not thread-safe.
+ * <p>
+ * Given an order book, the simulated trades are market orders of a set size instead, priced by
+ * walking the book, so larger sizes pay for the depth they take.
+ */
+public class ContrarianSimulator {
+    private static final BigDecimal SHORT = new BigDecimal("-1");
+    private static final BigDecimal LONG = new BigDecimal("1");
+
+    private final int m;
+    private final int n;
+    private final Consumer<Trade> listener;
+    private final OrderBook book;
+    private final long orderSize;
+
+    private BigDecimal prevPrice;
+    private int upTicks;
+    private int downTicks;
+
+    /**
+     * Ctor.
+     * @param m the number of upticks to go short
+     * @param n the number of downticks to go long
+     * @param listener receives the market trades and our simulated trades, oldest first
+     */
+    public ContrarianSimulator(int m, int n, Consumer<Trade> listener) {
+        this(m, n, null, 0, listener);
+    }
+
+    /**
+     * Ctor for simulated trades filled against an order book.
+     * @param m the number of upticks to go short
+     * @param n the number of downticks to go long
+     * @param book the book to fill against, read on the calling thread, which must be the book's
+     *     writer; null to trade one unit at the market trade's price
+     * @param orderSize the fixed-point quantity of each simulated trade
+     * @param listener receives the market trades and our simulated trades, oldest first
+     */
+    public ContrarianSimulator(int m, int n, OrderBook book, long orderSize,
+                               Consumer<Trade> listener) {
+        this.m = m;
+        this.n = n;
+        this.book = book;
+        this.orderSize = orderSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Process the next market trade.
+     * @param curTrade the trade, which must be newer than the previous one
+     */
+    public void onTrade(MarketTrade curTrade) {
+        if (prevPrice == null) {
+            prevPrice = curTrade.getPrice();
+            listener.accept(new Trade(curTrade.getTime(), curTrade.getPrice(),
+                curTrade.getVolume(), false, false, false));
+            return;
+        }
+
+        int compare = curTrade.getPrice().compareTo(prevPrice);
+        prevPrice = curTrade.getPrice();
+        if (compare > 0) {
+            upTicks++;
+            downTicks = 0;
+        } else if (compare < 0) {
+            upTicks = 0;
+            downTicks++;
+        }
+
+        listener.accept(new Trade(curTrade.getTime(), curTrade.getPrice(),
+            curTrade.getVolume(), false, compare > 0, compare < 0));
+
+        if (m <= upTicks) {
+            trade(curTrade, false);
+            upTicks = 0;
+        }
+
+        if (n <= downTicks) {
+            trade(curTrade, true);
+            downTicks = 0;
+        }
+    }
+
+    private void trade(MarketTrade curTrade, boolean buy) {
+        if (book == null) {
+            listener.accept(new Trade(curTrade.getTime(), curTrade.getPrice(),
+                buy ? LONG : SHORT, true, false, false));
+            return;
+        }
+        Fill fill = book.fill(buy, orderSize);
+        if (fill.getFilledQuantity() == 0) {
+            // Nothing to trade against, e.g. while the book is loading.
+            return;
+        }
+        BigDecimal price = FixedPoint.toBigDecimal(fill.getAveragePrice());
+        BigDecimal volume = FixedPoint.toBigDecimal(fill.getFilledQuantity());
+        listener.accept(new Trade(curTrade.getTime(), price, buy ? volume : volume.negate(),
+            true, false, false));
+    }
+
+    public int getUpTicks() { return upTicks; }
+    public int getDownTicks() { return downTicks; }
+}
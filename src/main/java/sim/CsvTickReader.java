@@ -0,0 +1,108 @@
+package sim;
+
+import api.FixedPoint;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads ticks from CSV lines of the form {@code time,price,amount}, as in the usual historical
+ * trade dumps. Extra columns and lines that don't start with a digit, such as a header, are
+ * skipped. Numbers are parsed straight from the bytes, so reading doesn't allocate per line.
+ */
+public class CsvTickReader implements TickReader {
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int pos;
+    private int limit;
+
+    /**
+     * Ctor.
+     * @param fileName the CSV file
+     * @throws IOException if the file can't be opened
+     */
+    public CsvTickReader(String fileName) throws IOException {
+        this(new FileInputStream(fileName));
+    }
+
+    /**
+     * Ctor.
+     * @param in the CSV input, closed with the reader
+     */
+    public CsvTickReader(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read(TickChunk chunk) throws IOException {
+        chunk.clear();
+        while (!chunk.isFull() && fill()) {
+            byte first = buffer[pos];
+            if (first < '0' || first > '9') {
+                skipLine();
+                continue;
+            }
+            long time = parseNumber(0);
+            long price = parseNumber(FixedPoint.SCALE);
+            long volume = parseNumber(FixedPoint.SCALE);
+            skipLine();
+            chunk.add(time, price, volume);
+        }
+        return chunk.size();
+    }
+
+    /**
+     * Parse an unsigned decimal followed by a separator, keeping the given decimal places.
+     */
+    private long parseNumber(int scale) throws IOException {
+        long value = 0;
+        int decimals = -1;
+        while (fill()) {
+            byte c = buffer[pos];
+            if (c >= '0' && c <= '9') {
+                if (decimals < scale) {
+                    value = value * 10 + (c - '0');
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                }
+            } else if (c == '.') {
+                decimals = 0;
+            } else {
+                break;
+            }
+            pos++;
+        }
+        // Skip the separator, but leave line ends to skipLine().
+        if (pos < limit && buffer[pos] == ',') {
+            pos++;
+        }
+        for (decimals = Math.max(decimals, 0); decimals < scale; decimals++) {
+            value *= 10;
+        }
+        return value;
+    }
+
+    private void skipLine() throws IOException {
+        while (fill()) {
+            if (buffer[pos++] == '\n') {
+                return;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+        limit = in.read(buffer);
+        pos = 0;
+        return limit > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,466 @@
+package sim;
+
+import api.FixedPoint;
+import dto.MarketTrade;
+import metrics.LatencyHistogram;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Runs many configurations of the contrarian strategy on the live trades of several markets.
+ * <p>
+ * A market's strategies are split into shards, and the shards are spread over a fixed pool of
+ * worker threads. A shard keeps the state of its strategies in parallel primitive arrays and
+ * processes each trade in one pass over them, so hundreds of strategies cost about as much as a
+ * few hundred array updates per trade. Each market trade is converted once and handed to the
+ * market's shards through a bounded single-producer ring per shard. When a shard falls behind
+ * its ring fills up and further trades are dropped for that shard and counted, so the market's
+ * partition thread never waits for a strategy.
+ * <p>
+ * The strategies follow the rules of {@link ContrarianBacktest}. Add them, then {@link #start}
+ * and register the {@link #listener} of each market with its trade feed.
+ */
+public class StrategyFarm implements Closeable {
+    // Smaller shards aren't worth a ring of their own.
+    private static final int MIN_SHARD_SIZE = 32;
+    // Trades a shard processes before its worker moves on to the next shard.
+    private static final int BATCH_SIZE = 1024;
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int ringCapacity;
+    private final Worker[] workers;
+    private final Map<String, List<long[]>> configurations = new LinkedHashMap<>();
+    private final Map<String, Shard[]> markets = new LinkedHashMap<>();
+    private volatile boolean running;
+    private ScheduledExecutorService logger;
+
+    /**
+     * Ctor.
+     * @param workers the number of worker threads
+     * @param ringCapacity the trades each shard can hold back, rounded up to a power of two
+     */
+    public StrategyFarm(int workers, int ringCapacity) {
+        this.ringCapacity = Integer.highestOneBit(Math.max(2, ringCapacity - 1)) << 1;
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Worker("strategy-farm-" + i);
+        }
+    }
+
+    /**
+     * Add every combination of M and N in the given ranges for a market. Call before
+     * {@link #start}.
+     * @param market the market
+     * @param minM the smallest M
+     * @param maxM the largest M
+     * @param minN the smallest N
+     * @param maxN the largest N
+     * @param orderSize the fixed-point size of each order
+     */
+    public void add(String market, int minM, int maxM, int minN, int maxN, long orderSize) {
+        if (running) {
+            throw new IllegalStateException("Strategies must be added before the farm starts");
+        }
+        if (minM > maxM || minN > maxN) {
+            throw new IllegalArgumentException("Empty range of M or N for " + market);
+        }
+        List<long[]> list = configurations.computeIfAbsent(market, k -> new ArrayList<>());
+        for (int m = minM; m <= maxM; m++) {
+            for (int n = minN; n <= maxN; n++) {
+                list.add(new long[] {m, n, orderSize});
+            }
+        }
+    }
+
+    /**
+     * Get the markets that have strategies.
+     * @return the markets
+     */
+    public List<String> getMarkets() {
+        return new ArrayList<>(configurations.keySet());
+    }
+
+    /**
+     * Split the strategies into shards and start the workers.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        int next = 0;
+        List<List<Shard>> assigned = new ArrayList<>();
+        for (int i = 0; i < workers.length; i++) {
+            assigned.add(new ArrayList<>());
+        }
+        for (Map.Entry<String, List<long[]>> entry : configurations.entrySet()) {
+            List<long[]> list = entry.getValue();
+            int shardCount = Math.max(1,
+                Math.min(workers.length, list.size() / MIN_SHARD_SIZE));
+            Shard[] shards = new Shard[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                // The shards of a market go to different workers, starting where the last ended.
+                Worker worker = workers[next % workers.length];
+                shards[i] = new Shard(entry.getKey(), list.subList(
+                    i * list.size() / shardCount, (i + 1) * list.size() / shardCount),
+                    ringCapacity, worker);
+                assigned.get(next % workers.length).add(shards[i]);
+                next++;
+            }
+            markets.put(entry.getKey(), shards);
+        }
+        running = true;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].start(assigned.get(i).toArray(new Shard[0]));
+        }
+    }
+
+    /**
+     * Get the listener that hands a market's trades to its strategies. It must only be called
+     * from one thread at a time, such as the market's partition thread.
+     * @param market the market
+     * @return the listener
+     */
+    public Consumer<MarketTrade> listener(String market) {
+        Shard[] shards = markets.get(market);
+        if (shards == null) {
+            throw new IllegalArgumentException("No strategies for " + market);
+        }
+        return trade -> {
+            long price = FixedPoint.fromBigDecimal(trade.getPrice());
+            long nanos = System.nanoTime();
+            for (Shard shard : shards) {
+                shard.offer(price, nanos);
+            }
+        };
+    }
+
+    /**
+     * Get the results of all strategies so far.
+     * @return the reports, in the order the strategies were added
+     */
+    public List<StrategyReport> getReports() {
+        List<StrategyReport> reports = new ArrayList<>();
+        for (Shard[] shards : markets.values()) {
+            for (Shard shard : shards) {
+                shard.report(reports);
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Log a line per market at a fixed interval, with the trades processed and dropped, the
+     * latency, and the best and worst strategy. Call after {@link #start}.
+     * @param intervalSeconds the interval
+     */
+    public synchronized void startLogging(long intervalSeconds) {
+        if (logger != null) {
+            return;
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "strategy-farm-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.scheduleAtFixedRate(this::log, intervalSeconds, intervalSeconds,
+            TimeUnit.SECONDS);
+    }
+
+    private void log() {
+        for (Map.Entry<String, Shard[]> entry : markets.entrySet()) {
+            // Every shard of a market sees the same trades, so the slowest shard is reported.
+            long trades = 0;
+            long dropped = 0;
+            long[] latency = null;
+            for (Shard shard : entry.getValue()) {
+                long[] counts = shard.latency.getCounts();
+                long[] interval = LatencyHistogram.subtract(counts, shard.lastCounts);
+                shard.lastCounts = counts;
+                trades = Math.max(trades, LatencyHistogram.getTotal(interval));
+                if (latency == null) {
+                    latency = interval;
+                } else {
+                    for (int i = 0; i < latency.length; i++) {
+                        latency[i] += interval[i];
+                    }
+                }
+                long shardDropped = shard.dropped;
+                dropped = Math.max(dropped, shardDropped - shard.lastDropped);
+                shard.lastDropped = shardDropped;
+            }
+
+            List<StrategyReport> reports = new ArrayList<>();
+            double updateNanos = 0;
+            for (Shard shard : entry.getValue()) {
+                shard.report(reports);
+            }
+            for (StrategyReport report : reports) {
+                updateNanos += report.getUpdateNanos() / reports.size();
+            }
+            reports.sort(Comparator.comparingDouble(report -> report.getResult().getPnl()));
+            StrategyReport worst = reports.get(0);
+            StrategyReport best = reports.get(reports.size() - 1);
+            System.out.printf("%s farm: %d strategies, %d trades, %d dropped, latency p50 %d us"
+                    + " p99 %d us, %.1f ns per update, best M=%d N=%d %.2f, worst M=%d N=%d"
+                    + " %.2f%n", entry.getKey(), reports.size(), trades, dropped,
+                LatencyHistogram.getValueAtPercentile(latency, 50) / 1000,
+                LatencyHistogram.getValueAtPercentile(latency, 99) / 1000,
+                updateNanos, best.getResult().getM(), best.getResult().getN(),
+                best.getResult().getPnl(), worst.getResult().getM(), worst.getResult().getN(),
+                worst.getResult().getPnl());
+        }
+    }
+
+    /**
+     * Stop the workers, log a last time if logging, and drop the trades still queued.
+     */
+    @Override
+    public synchronized void close() {
+        if (logger != null) {
+            logger.shutdown();
+        }
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+        if (logger != null) {
+            log();
+        }
+    }
+
+    /**
+     * A thread that drains its shards in turn and parks when they are all empty.
+     */
+    private final class Worker implements Runnable {
+        private final String name;
+        private Shard[] shards;
+        private Thread thread;
+        volatile boolean sleeping;
+
+        Worker(String name) {
+            this.name = name;
+        }
+
+        void start(Shard[] shards) {
+            this.shards = shards;
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void wake() {
+            LockSupport.unpark(thread);
+        }
+
+        void stop() {
+            wake();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running) {
+                int count = 0;
+                for (Shard shard : shards) {
+                    count += shard.drain();
+                }
+                if (count > 0) {
+                    idle = 0;
+                } else if (++idle < SPINS_BEFORE_PARK) {
+                    Thread.yield();
+                } else {
+                    sleeping = true;
+                    // Check again so a trade offered before the flag was set isn't missed.
+                    if (!hasPending()) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    sleeping = false;
+                }
+            }
+        }
+
+        private boolean hasPending() {
+            for (Shard shard : shards) {
+                if (shard.tail != shard.head) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Some strategies of one market, with a ring of the trades they haven't processed yet.
+     * The strategy state is guarded by the shard's lock, which the worker holds per batch.
+     */
+    private static final class Shard {
+        final String market;
+        final Worker worker;
+
+        // The strategies, one array index each.
+        final int size;
+        final int[] m;
+        final int[] n;
+        final long[] orderSize;
+        final int[] upTicks;
+        final int[] downTicks;
+        final long[] position;
+        final double[] cash;
+        final long[] fills;
+        final long[] tradedVolume;
+
+        // The same for all strategies of the market.
+        boolean started;
+        long prevPrice;
+        long ticks;
+        long busyNanos;
+
+        final int mask;
+        final long[] prices;
+        final long[] offeredNanos;
+        volatile long head;
+        volatile long tail;
+        volatile long dropped;
+        // Producer only.
+        long cachedHead;
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        // Logger only.
+        long[] lastCounts;
+        long lastDropped;
+
+        Shard(String market, List<long[]> configurations, int capacity, Worker worker) {
+            this.market = market;
+            this.worker = worker;
+            size = configurations.size();
+            m = new int[size];
+            n = new int[size];
+            orderSize = new long[size];
+            for (int i = 0; i < size; i++) {
+                m[i] = (int) configurations.get(i)[0];
+                n[i] = (int) configurations.get(i)[1];
+                orderSize[i] = configurations.get(i)[2];
+            }
+            upTicks = new int[size];
+            downTicks = new int[size];
+            position = new long[size];
+            cash = new double[size];
+            fills = new long[size];
+            tradedVolume = new long[size];
+
+            mask = capacity - 1;
+            prices = new long[capacity];
+            offeredNanos = new long[capacity];
+            lastCounts = latency.getCounts();
+        }
+
+        void offer(long price, long nanos) {
+            long t = tail;
+            if (t - cachedHead > mask) {
+                cachedHead = head;
+                if (t - cachedHead > mask) {
+                    dropped = dropped + 1;
+                    return;
+                }
+            }
+            int slot = (int) t & mask;
+            prices[slot] = price;
+            offeredNanos[slot] = nanos;
+            tail = t + 1;
+            if (worker.sleeping) {
+                worker.wake();
+            }
+        }
+
+        int drain() {
+            long h = head;
+            int count = (int) Math.min(tail - h, BATCH_SIZE);
+            if (count == 0) {
+                return 0;
+            }
+            synchronized (this) {
+                long start = System.nanoTime();
+                long now = start;
+                for (int i = 0; i < count; i++) {
+                    int slot = (int) (h + i) & mask;
+                    onTick(prices[slot]);
+                    now = System.nanoTime();
+                    latency.record(now - offeredNanos[slot]);
+                }
+                busyNanos += now - start;
+            }
+            head = h + count;
+            return count;
+        }
+
+        private void onTick(long price) {
+            ticks++;
+            if (!started) {
+                started = true;
+                prevPrice = price;
+                return;
+            }
+            boolean up = price > prevPrice;
+            boolean down = price < prevPrice;
+            prevPrice = price;
+
+            for (int i = 0; i < size; i++) {
+                if (up) {
+                    upTicks[i]++;
+                    downTicks[i] = 0;
+                } else if (down) {
+                    upTicks[i] = 0;
+                    downTicks[i]++;
+                }
+                if (m[i] <= upTicks[i]) {
+                    fill(i, -orderSize[i], price);
+                    upTicks[i] = 0;
+                }
+                if (n[i] <= downTicks[i]) {
+                    fill(i, orderSize[i], price);
+                    downTicks[i] = 0;
+                }
+            }
+        }
+
+        private void fill(int i, long quantity, long price) {
+            position[i] += quantity;
+            cash[i] -= (double) quantity / FixedPoint.ONE * price / FixedPoint.ONE;
+            fills[i]++;
+            tradedVolume[i] += Math.abs(quantity);
+        }
+
+        synchronized void report(List<StrategyReport> reports) {
+            long[] counts = latency.getCounts();
+            long p50 = LatencyHistogram.getValueAtPercentile(counts, 50);
+            long p99 = LatencyHistogram.getValueAtPercentile(counts, 99);
+            double updateNanos = ticks == 0 ? 0 : (double) busyNanos / ticks / size;
+            double lastPrice = (double) prevPrice / FixedPoint.ONE;
+            for (int i = 0; i < size; i++) {
+                double pnl = cash[i] + (double) position[i] / FixedPoint.ONE * lastPrice;
+                reports.add(new StrategyReport(market, orderSize[i], new BacktestResult(m[i],
+                    n[i], ticks, fills[i], tradedVolume[i], position[i], pnl), dropped, p50, p99,
+                    updateNanos));
+            }
+        }
+    }
+}
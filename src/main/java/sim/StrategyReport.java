@@ -0,0 +1,63 @@
+package sim;
+
+import api.FixedPoint;
+
+/**
+ * The running results of one strategy of a {@link StrategyFarm}, with the throughput and latency
+ * of the shard that runs it.
+ */
+public class StrategyReport {
+    private final String market;
+    private final long orderSize;
+    private final BacktestResult result;
+    private final long dropped;
+    private final long latencyP50;
+    private final long latencyP99;
+    private final double updateNanos;
+
+    /**
+     * Ctor.
+     * @param market the market the strategy trades
+     * @param orderSize the fixed-point size of each order
+     * @param result the strategy's results so far
+     * @param dropped the market trades the strategy missed because its shard fell behind
+     * @param latencyP50 the median nanoseconds from a market trade arriving to the strategy
+     *     having processed it
+     * @param latencyP99 the 99th percentile of the same
+     * @param updateNanos the average nanoseconds the strategy takes to process one trade
+     */
+    public StrategyReport(String market, long orderSize, BacktestResult result, long dropped,
+                          long latencyP50, long latencyP99, double updateNanos) {
+        this.market = market;
+        this.orderSize = orderSize;
+        this.result = result;
+        this.dropped = dropped;
+        this.latencyP50 = latencyP50;
+        this.latencyP99 = latencyP99;
+        this.updateNanos = updateNanos;
+    }
+
+    public String getMarket() { return market; }
+    public long getOrderSize() { return orderSize; }
+    public BacktestResult getResult() { return result; }
+    public long getDropped() { return dropped; }
+    public long getLatencyP50() { return latencyP50; }
+    public long getLatencyP99() { return latencyP99; }
+    public double getUpdateNanos() { return updateNanos; }
+
+    /**
+     * Get how many trades per second the strategy could keep up with on its own.
+     * @return the trades per second, or 0 if it hasn't processed any
+     */
+    public double getCapacity() {
+        return updateNanos > 0 ? 1e9 / updateNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s size=%s %s dropped=%d latency p50=%d us p99=%d us"
+                + " update=%.1f ns", market,
+            FixedPoint.toBigDecimal(orderSize).stripTrailingZeros().toPlainString(), result,
+            dropped, latencyP50 / 1000, latencyP99 / 1000, updateNanos);
+    }
+}
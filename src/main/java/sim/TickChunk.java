@@ -0,0 +1,76 @@
+package sim;
+
+/**
+ * A reusable block of trade ticks stored as parallel primitive arrays.
+ * Prices and volumes are {@link api.FixedPoint} longs.
+ */
+public final class TickChunk {
+    /**
+     * The side of a tick whose taker bought.
+     */
+    public static final byte BUY = 1;
+    /**
+     * The side of a tick whose taker sold.
+     */
+    public static final byte SELL = -1;
+    /**
+     * The side of a tick from a source that doesn't record it.
+     */
+    public static final byte UNKNOWN = 0;
+
+    private final long[] times;
+    private final long[] prices;
+    private final long[] volumes;
+    private final byte[] sides;
+    private int size;
+
+    /**
+     * Ctor.
+     * @param capacity the maximum number of ticks
+     */
+    public TickChunk(int capacity) {
+        times = new long[capacity];
+        prices = new long[capacity];
+        volumes = new long[capacity];
+        sides = new byte[capacity];
+    }
+
+    /**
+     * Append a tick.
+     * @param time the trade time
+     * @param price the fixed-point price
+     * @param volume the fixed-point volume
+     * @return false if the chunk is full and the tick wasn't added
+     */
+    public boolean add(long time, long price, long volume) {
+        return add(time, price, volume, UNKNOWN);
+    }
+
+    /**
+     * Append a tick with the taker's side.
+     * @param time the trade time
+     * @param price the fixed-point price
+     * @param volume the fixed-point volume
+     * @param side {@link #BUY}, {@link #SELL} or {@link #UNKNOWN}
+     * @return false if the chunk is full and the tick wasn't added
+     */
+    public boolean add(long time, long price, long volume, byte side) {
+        if (size == times.length) {
+            return false;
+        }
+        times[size] = time;
+        prices[size] = price;
+        volumes[size] = volume;
+        sides[size] = side;
+        size++;
+        return true;
+    }
+
+    public void clear() { size = 0; }
+    public int size() { return size; }
+    public boolean isFull() { return size == times.length; }
+    public long time(int i) { return times[i]; }
+    public long price(int i) { return prices[i]; }
+    public long volume(int i) { return volumes[i]; }
+    public byte side(int i) { return sides[i]; }
+}
@@ -0,0 +1,17 @@
+package sim;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads trade ticks in chunks, oldest first.
+ */
+public interface TickReader extends Closeable {
+    /**
+     * Clear the chunk and fill it with the next ticks.
+     * @param chunk the chunk to fill
+     * @return the number of ticks read, 0 at the end of the input
+     * @throws IOException if reading fails
+     */
+    int read(TickChunk chunk) throws IOException;
+}
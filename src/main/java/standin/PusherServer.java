@@ -0,0 +1,136 @@
+package standin;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A websocket server that speaks enough of the Pusher protocol for the Pusher client:
+ * the connection handshake, channel subscriptions, pings and channel events.
+ */
+final class PusherServer extends WebSocketServer {
+    private final Map<String, Set<WebSocket>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicLong socketIds = new AtomicLong();
+    private final JsonParser parser = new JsonParser();
+
+    /**
+     * Ctor.
+     * @param port the port to listen on
+     */
+    PusherServer(int port) {
+        super(new InetSocketAddress(port));
+    }
+
+    /**
+     * Send an event to every subscriber of a channel.
+     * @param channel the channel
+     * @param event the event name
+     * @param data the event data, usually JSON
+     */
+    void broadcast(String channel, String event, String data) {
+        Set<WebSocket> connections = subscribers.get(channel);
+        if (connections == null || connections.isEmpty()) {
+            return;
+        }
+        String message = message(event, channel, data);
+        for (WebSocket connection : connections) {
+            try {
+                connection.send(message);
+            } catch (RuntimeException e) {
+                // The connection closed meanwhile; onClose removes it.
+            }
+        }
+    }
+
+    /**
+     * Get the number of open connections.
+     * @return the connection count
+     */
+    int getConnectionCount() {
+        return connections().size();
+    }
+
+    @Override
+    public void onOpen(WebSocket connection, ClientHandshake handshake) {
+        long id = socketIds.incrementAndGet();
+        connection.send(message("pusher:connection_established", null,
+            "{\"socket_id\":\"" + id + "." + id + "\",\"activity_timeout\":120}"));
+    }
+
+    @Override
+    public void onMessage(WebSocket connection, String message) {
+        JsonObject json = parser.parse(message).getAsJsonObject();
+        String event = json.get("event").getAsString();
+        switch (event) {
+            case "pusher:subscribe":
+                String channel = channel(json.get("data"));
+                subscribers.computeIfAbsent(channel, c -> new CopyOnWriteArraySet<>()).add(connection);
+                connection.send(message("pusher_internal:subscription_succeeded", channel, "{}"));
+                break;
+            case "pusher:unsubscribe":
+                Set<WebSocket> connections = subscribers.get(channel(json.get("data")));
+                if (connections != null) {
+                    connections.remove(connection);
+                }
+                break;
+            case "pusher:ping":
+                connection.send(message("pusher:pong", null, "{}"));
+                break;
+            default:
+                System.out.println("Ignoring Pusher event " + event);
+        }
+    }
+
+    @Override
+    public void onClose(WebSocket connection, int code, String reason, boolean remote) {
+        for (Set<WebSocket> connections : subscribers.values()) {
+            connections.remove(connection);
+        }
+    }
+
+    @Override
+    public void onError(WebSocket connection, Exception e) {
+        e.printStackTrace();
+    }
+
+    // Not annotated, since only newer Java-WebSocket versions declare it.
+    public void onStart() {
+    }
+
+    private String channel(JsonElement data) {
+        // The client sends the data as an object, but Pusher also accepts it as a string.
+        JsonObject object = data.isJsonObject() ? data.getAsJsonObject()
+            : parser.parse(data.getAsString()).getAsJsonObject();
+        return object.get("channel").getAsString();
+    }
+
+    /**
+     * Format a Pusher message, whose data is always sent as a JSON string.
+     */
+    private static String message(String event, String channel, String data) {
+        StringBuilder message = new StringBuilder(data.length() + 96);
+        message.append("{\"event\":\"").append(event).append('"');
+        if (channel != null) {
+            message.append(",\"channel\":\"").append(channel).append('"');
+        }
+        message.append(",\"data\":\"");
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '"' || c == '\\') {
+                message.append('\\');
+            }
+            message.append(c);
+        }
+        return message.append("\"}").toString();
+    }
+}
@@ -0,0 +1,264 @@
+package standin;
+
+import api.FixedPoint;
+import api.OrderBook;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The state of one market served by the stand-in: its order book, the diff being built and
+ * the recent trades, formatted the way Bitstamp sends them.
+ * <p>
+ * The book has one writer, which builds the diffs. REST snapshots are taken by that writer
+ * at the end of the next diff, so a snapshot always matches the diff stream exactly and the
+ * writer never has to publish copies it doesn't need.
+ */
+final class StandInMarket {
+    private static final int TRADE_HISTORY = 100;
+
+    private final String market;
+    private final OrderBook book = new OrderBook(0);
+    private final Queue<CompletableFuture<String>> snapshotRequests = new ConcurrentLinkedQueue<>();
+    private final Deque<String> transactions = new ArrayDeque<>();
+    private volatile long lastTradeId;
+
+    // Writer thread only.
+    private final StringBuilder bids = new StringBuilder();
+    private final StringBuilder asks = new StringBuilder();
+    private long lastMicros;
+
+    /**
+     * Ctor.
+     * @param market the market, e.g. btcusd
+     */
+    StandInMarket(String market) {
+        this.market = market;
+    }
+
+    String getMarket() {
+        return market;
+    }
+
+    String diffChannel() {
+        return market.equals("btcusd") ? "diff_order_book" : "diff_order_book_" + market;
+    }
+
+    String tradesChannel() {
+        return market.equals("btcusd") ? "live_trades" : "live_trades_" + market;
+    }
+
+    /**
+     * Get the book. Writer thread only.
+     * @return the book
+     */
+    OrderBook book() {
+        return book;
+    }
+
+    /**
+     * Apply a level to the book and add it to the diff being built.
+     * @param bid true for a bid, false for an ask
+     * @param price the fixed-point price
+     * @param volume the fixed-point volume, 0 to delete the level
+     */
+    void apply(boolean bid, long price, long volume) {
+        book.update(bid, price, volume);
+        append(bid, price, volume);
+    }
+
+    /**
+     * Add a level that was already applied to the book to the diff being built.
+     * @param bid true for a bid, false for an ask
+     * @param price the fixed-point price
+     * @param volume the fixed-point volume, 0 to delete the level
+     */
+    void append(boolean bid, long price, long volume) {
+        StringBuilder levels = bid ? bids : asks;
+        appendLevel(levels, levels.length() > 0, price, volume);
+    }
+
+    /**
+     * Finish the diff being built and serve the snapshot requests that arrived meanwhile.
+     * @return the diff_order_book event data
+     */
+    String endDiff() {
+        long micros = nextMicros();
+        String diff = "{\"timestamp\":\"" + micros / 1_000_000 + "\",\"microtimestamp\":\""
+            + micros + "\",\"bids\":[" + bids + "],\"asks\":[" + asks + "]}";
+        bids.setLength(0);
+        asks.setLength(0);
+
+        if (!snapshotRequests.isEmpty()) {
+            String snapshot = orderBookJson(micros);
+            CompletableFuture<String> request;
+            while ((request = snapshotRequests.poll()) != null) {
+                request.complete(snapshot);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Drop the diff being built, e.g. when the book was replaced rather than updated.
+     */
+    void discardDiff() {
+        bids.setLength(0);
+        asks.setLength(0);
+    }
+
+    /**
+     * Make the diff being built the change from an earlier book to the current one, after the
+     * book was replaced rather than updated: deletes for the levels that are gone and sets for
+     * the levels that are new or changed.
+     * @param before the book as clients last saw it
+     */
+    void appendReplacement(OrderBook before) {
+        discardDiff();
+        appendReplacement(before, true);
+        appendReplacement(before, false);
+    }
+
+    private void appendReplacement(OrderBook before, boolean bid) {
+        Map<Long, Long> now = levels(book, bid);
+        for (Map.Entry<Long, Long> level : levels(before, bid).entrySet()) {
+            Long volume = now.remove(level.getKey());
+            if (volume == null) {
+                append(bid, level.getKey(), 0);
+            } else if (volume.longValue() != level.getValue()) {
+                append(bid, level.getKey(), volume);
+            }
+        }
+        for (Map.Entry<Long, Long> level : now.entrySet()) {
+            append(bid, level.getKey(), level.getValue());
+        }
+    }
+
+    private static Map<Long, Long> levels(OrderBook book, boolean bid) {
+        int depth = bid ? book.getBidDepth() : book.getAskDepth();
+        long[] prices = new long[depth];
+        long[] volumes = new long[depth];
+        int count = bid ? book.getTopBids(depth, prices, volumes)
+            : book.getTopAsks(depth, prices, volumes);
+        Map<Long, Long> levels = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            levels.put(prices[i], volumes[i]);
+        }
+        return levels;
+    }
+
+    /**
+     * Request the full order book, which is taken at the end of the next diff.
+     * @return the order_book response body
+     */
+    CompletableFuture<String> requestSnapshot() {
+        CompletableFuture<String> request = new CompletableFuture<>();
+        snapshotRequests.add(request);
+        return request;
+    }
+
+    /**
+     * Add a trade to the recent trades.
+     * @param id the trade id, greater than the previous one
+     * @param time the trade time in seconds
+     * @param price the fixed-point price
+     * @param volume the fixed-point volume
+     * @param buy true if the taker bought
+     * @return the live_trades event data
+     */
+    String trade(long id, long time, long price, long volume, boolean buy) {
+        StringBuilder transaction = new StringBuilder(128);
+        transaction.append("{\"date\":\"").append(time).append("\",\"tid\":\"").append(id)
+            .append("\",\"price\":\"");
+        appendFixed(transaction, price);
+        transaction.append("\",\"amount\":\"");
+        appendFixed(transaction, volume);
+        transaction.append("\",\"type\":\"").append(buy ? 0 : 1).append("\"}");
+        synchronized (transactions) {
+            transactions.addFirst(transaction.toString());
+            if (transactions.size() > TRADE_HISTORY) {
+                transactions.removeLast();
+            }
+            lastTradeId = id;
+        }
+
+        StringBuilder live = new StringBuilder(192);
+        live.append("{\"id\":").append(id).append(",\"timestamp\":\"").append(time)
+            .append("\",\"microtimestamp\":\"").append(time * 1_000_000)
+            .append("\",\"price_str\":\"");
+        appendFixed(live, price);
+        live.append("\",\"amount_str\":\"");
+        appendFixed(live, volume);
+        live.append("\",\"type\":").append(buy ? 0 : 1).append('}');
+        return live.toString();
+    }
+
+    /**
+     * Get the id of the latest trade, which changes whenever the transactions do.
+     * @return the id, 0 if there were no trades
+     */
+    long getLastTradeId() {
+        return lastTradeId;
+    }
+
+    /**
+     * Get the recent trades.
+     * @return the transactions response body, newest first
+     */
+    String transactionsJson() {
+        synchronized (transactions) {
+            return "[" + String.join(",", transactions) + "]";
+        }
+    }
+
+    private String orderBookJson(long micros) {
+        StringBuilder json = new StringBuilder(64 + 48 * (book.getBidDepth() + book.getAskDepth()));
+        json.append("{\"timestamp\":\"").append(micros / 1_000_000).append("\",\"microtimestamp\":\"")
+            .append(micros).append("\",\"bids\":[");
+        for (int level = 0; level < book.getBidDepth(); level++) {
+            appendLevel(json, level > 0, book.getBidPrice(level), book.getBidVolume(level));
+        }
+        json.append("],\"asks\":[");
+        for (int level = 0; level < book.getAskDepth(); level++) {
+            appendLevel(json, level > 0, book.getAskPrice(level), book.getAskVolume(level));
+        }
+        return json.append("]}").toString();
+    }
+
+    private long nextMicros() {
+        lastMicros = Math.max(lastMicros + 1, System.currentTimeMillis() * 1000);
+        return lastMicros;
+    }
+
+    private static void appendLevel(StringBuilder json, boolean separator, long price, long volume) {
+        if (separator) {
+            json.append(',');
+        }
+        json.append("[\"");
+        appendFixed(json, price);
+        json.append("\",\"");
+        appendFixed(json, volume);
+        json.append("\"]");
+    }
+
+    /**
+     * Append a fixed-point value with all its decimals, without going through BigDecimal.
+     */
+    private static void appendFixed(StringBuilder out, long value) {
+        if (value < 0) {
+            out.append('-');
+            value = -value;
+        }
+        out.append(value / FixedPoint.ONE).append('.');
+        String fraction = Long.toString(value % FixedPoint.ONE);
+        for (int i = fraction.length(); i < FixedPoint.SCALE; i++) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+}
@@ -0,0 +1,260 @@
+package standin;
+
+import api.DiffObserver;
+import api.FixedPoint;
+import api.OrderBook;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import record.Replayer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A local stand-in for Bitstamp: a Pusher websocket server with the diff_order_book and
+ * live_trades channels, and the order_book and transactions REST endpoints, so the client can
+ * be run and load tested without network access.
+ * <p>
+ * Markets are either synthetic, generated at a fixed total rate by a few generator threads,
+ * or replayed from a recording. Point a client at it with {@link api.ExchangeAddress#local}.
+ */
+public class StandInServer implements Closeable {
+    private static final String API_PATH = "/api/v2/";
+    private static final long SNAPSHOT_TIMEOUT_SECONDS = 5;
+    private static final double TRADE_PROBABILITY = 0.05;
+
+    private final PusherServer pusher;
+    private final HttpServer http;
+    private final Map<String, StandInMarket> markets = new ConcurrentHashMap<>();
+    private final List<SyntheticFeed> synthetic = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder lagResets = new LongAdder();
+    private volatile boolean running;
+
+    /**
+     * Ctor.
+     * @param wsPort the websocket port
+     * @param httpPort the HTTP port
+     * @throws IOException if the HTTP port can't be bound
+     */
+    public StandInServer(int wsPort, int httpPort) throws IOException {
+        pusher = new PusherServer(wsPort);
+        http = HttpServer.create(new InetSocketAddress(httpPort), 0);
+        http.createContext(API_PATH + "order_book/", this::handleOrderBook);
+        http.createContext(API_PATH + "transactions/", this::handleTransactions);
+        http.setExecutor(Executors.newFixedThreadPool(4, r -> {
+            Thread thread = new Thread(r, "stand-in-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Add a market with a generated diff stream. Must be called before {@link #start}.
+     * @param market the market, e.g. btcusd
+     * @param price the initial mid price, in whole units
+     */
+    public void addSynthetic(String market, long price) {
+        StandInMarket standIn = new StandInMarket(market);
+        synthetic.add(new SyntheticFeed(standIn, price, TRADE_PROBABILITY, market.hashCode()));
+        markets.put(market, standIn);
+    }
+
+    /**
+     * Add a market that replays a recording, with fresh timestamps, once the server starts.
+     * Must be called before {@link #start}.
+     * @param market the market, e.g. btcusd
+     * @param fileName the recording
+     * @param speed 1 for the recorded pace, 2 for twice as fast, 0 for as fast as possible
+     * @throws IOException if the recording can't be opened
+     */
+    public void addReplay(String market, String fileName, double speed) throws IOException {
+        StandInMarket standIn = new StandInMarket(market);
+        Replayer replayer = new Replayer(fileName);
+        markets.put(market, standIn);
+        threads.add(new Thread(() -> replay(standIn, replayer, speed), "stand-in-replay-" + market));
+    }
+
+    /**
+     * Start serving.
+     * @param rate the total number of diffs per second across the synthetic markets
+     * @param generatorThreads the number of threads generating them
+     */
+    public void start(double rate, int generatorThreads) {
+        running = true;
+        pusher.start();
+        http.start();
+
+        int threadCount = Math.max(1, Math.min(generatorThreads, synthetic.size()));
+        for (int t = 0; t < threadCount && !synthetic.isEmpty(); t++) {
+            List<SyntheticFeed> feeds = new ArrayList<>();
+            for (int i = t; i < synthetic.size(); i += threadCount) {
+                feeds.add(synthetic.get(i));
+            }
+            threads.add(new Thread(() -> generate(feeds, rate / threadCount),
+                "stand-in-generator-" + t));
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Get the number of diffs sent so far.
+     * @return the count
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * Get how often a generator fell so far behind its rate that it gave up catching up.
+     * @return the count
+     */
+    public long getLagResets() {
+        return lagResets.sum();
+    }
+
+    /**
+     * Get the number of open websocket connections.
+     * @return the count
+     */
+    public int getConnectionCount() {
+        return pusher.getConnectionCount();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        http.stop(0);
+        try {
+            pusher.stop(1000);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void generate(List<SyntheticFeed> feeds, double rate) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long next = System.nanoTime();
+        int i = 0;
+        while (running) {
+            SyntheticFeed feed = feeds.get(i);
+            i = (i + 1) % feeds.size();
+            StandInMarket market = feed.getMarket();
+            pusher.broadcast(market.diffChannel(), "data", feed.step());
+            String trade = feed.nextTrade();
+            if (trade != null) {
+                pusher.broadcast(market.tradesChannel(), "trade", trade);
+            }
+            sent.increment();
+
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (wait < -TimeUnit.SECONDS.toNanos(1)) {
+                // Too slow for the rate; don't burst to make up for it.
+                next = System.nanoTime();
+                lagResets.increment();
+            }
+        }
+    }
+
+    private void replay(StandInMarket market, Replayer replayer, double speed) {
+        // The book as clients last saw it, to tell them what a snapshot record changed.
+        OrderBook clientBook = new OrderBook(0);
+        DiffObserver observer = new DiffObserver() {
+            @Override
+            public void onLevel(boolean bid, long price, long volume) {
+                market.append(bid, price, volume);
+                clientBook.update(bid, price, volume);
+            }
+
+            @Override
+            public void onDiffEnd(long timestamp) {
+                pusher.broadcast(market.diffChannel(), "data", market.endDiff());
+                sent.increment();
+            }
+
+            @Override
+            public void onSnapshot(OrderBook book, long timestamp) {
+                // Sent as one diff, so clients follow the reloaded book without a resync.
+                market.appendReplacement(clientBook);
+                clientBook.copyFrom(book);
+                onDiffEnd(timestamp);
+            }
+        };
+        try (Replayer r = replayer) {
+            r.replay(market.book(), observer, trade -> pusher.broadcast(market.tradesChannel(),
+                "trade", market.trade(trade.getId(), trade.getTime(),
+                    FixedPoint.fromBigDecimal(trade.getPrice()),
+                    FixedPoint.fromBigDecimal(trade.getVolume()), trade.isBuy())), speed);
+            System.out.println("Replay of " + market.getMarket() + " finished");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void handleOrderBook(HttpExchange exchange) throws IOException {
+        StandInMarket market = market(exchange, "order_book/");
+        if (market == null) {
+            respond(exchange, 404, "{\"error\":\"unknown market\"}");
+            return;
+        }
+        try {
+            String body = market.requestSnapshot().get(SNAPSHOT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            respond(exchange, 200, body);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            respond(exchange, 503, "{\"error\":\"no diffs to snapshot\"}");
+        }
+    }
+
+    private void handleTransactions(HttpExchange exchange) throws IOException {
+        StandInMarket market = market(exchange, "transactions/");
+        if (market == null) {
+            respond(exchange, 404, "{\"error\":\"unknown market\"}");
+            return;
+        }
+        String etag = "\"" + market.getLastTradeId() + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        respond(exchange, 200, market.transactionsJson());
+    }
+
+    private StandInMarket market(HttpExchange exchange, String endpoint) {
+        String path = exchange.getRequestURI().getPath();
+        String market = path.substring((API_PATH + endpoint).length()).replace("/", "");
+        return markets.get(market);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package standin;
+
+import api.FixedPoint;
+
+import java.util.Random;
+
+/**
+ * Generates a random but consistent diff stream for one market.
+ * <p>
+ * The book is a window of levels one tick apart around a mid price that drifts by a tick now
+ * and then. Updates favour the levels near the touch, a quarter of them delete a level, and
+ * levels that drift out of the window are deleted, so the book stays uncrossed and bounded.
+ */
+final class SyntheticFeed {
+    private static final long TICK = FixedPoint.ONE / 100;
+    private static final long LOT = FixedPoint.ONE / 1000;
+    private static final int WINDOW = 50;
+
+    private final StandInMarket market;
+    private final Random random;
+    private final double tradeProbability;
+    private long mid;
+    private long nextTradeId = 1;
+
+    /**
+     * Ctor.
+     * @param market the market to update
+     * @param price the initial mid price, in whole units
+     * @param tradeProbability the chance that a diff is followed by a trade
+     * @param seed the random seed
+     */
+    SyntheticFeed(StandInMarket market, long price, double tradeProbability, long seed) {
+        this.market = market;
+        this.random = new Random(seed);
+        this.tradeProbability = tradeProbability;
+        this.mid = price * FixedPoint.ONE / TICK;
+        for (int offset = 0; offset < WINDOW; offset++) {
+            market.apply(true, (mid - 1 - offset) * TICK, randomVolume());
+            market.apply(false, (mid + 1 + offset) * TICK, randomVolume());
+        }
+        market.endDiff();
+    }
+
+    StandInMarket getMarket() {
+        return market;
+    }
+
+    /**
+     * Generate and apply the next diff.
+     * @return the diff_order_book event data
+     */
+    String step() {
+        if (random.nextInt(20) == 0) {
+            drift(random.nextBoolean() ? 1 : -1);
+        }
+        int levels = 1 + random.nextInt(3);
+        for (int i = 0; i < levels; i++) {
+            boolean bid = random.nextBoolean();
+            // Exponentially fewer updates further from the touch.
+            int offset = (int) Math.min(WINDOW - 1, -Math.log(1 - random.nextDouble()) * 5);
+            long price = (bid ? mid - 1 - offset : mid + 1 + offset) * TICK;
+            market.apply(bid, price, random.nextInt(4) == 0 ? 0 : randomVolume());
+        }
+        return market.endDiff();
+    }
+
+    /**
+     * Possibly generate a trade at the touch.
+     * @return the live_trades event data, or null if there's no trade this time
+     */
+    String nextTrade() {
+        if (random.nextDouble() >= tradeProbability) {
+            return null;
+        }
+        boolean buy = random.nextBoolean();
+        long price = (buy ? mid + 1 : mid - 1) * TICK;
+        return market.trade(nextTradeId++, System.currentTimeMillis() / 1000, price,
+            randomVolume(), buy);
+    }
+
+    private void drift(int ticks) {
+        mid += ticks;
+        if (ticks > 0) {
+            market.apply(false, mid * TICK, 0);
+            market.apply(true, (mid - 1 - WINDOW) * TICK, 0);
+        } else {
+            market.apply(true, mid * TICK, 0);
+            market.apply(false, (mid + 1 + WINDOW) * TICK, 0);
+        }
+    }
+
+    private long randomVolume() {
+        return (1 + random.nextInt(1000)) * LOT;
+    }
+}
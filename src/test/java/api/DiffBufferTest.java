@@ -0,0 +1,70 @@
+package api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DiffBufferTest {
+
+    @Test
+    public void appliesEachDiffOnItsOwn() {
+        DiffBuffer buffer = new DiffBuffer();
+        // Enough to grow both the diff and the level arrays.
+        for (int diff = 0; diff < 200; diff++) {
+            for (int level = 0; level < 10; level++) {
+                buffer.onLevel(level % 2 == 0, price(diff, level), diff + 1);
+            }
+            buffer.endDiff(1_000 + diff);
+        }
+        assertEquals(200, buffer.size());
+
+        for (int diff = 0; diff < 200; diff++) {
+            assertEquals(1_000 + diff, buffer.timestamp(diff));
+            OrderBook book = new OrderBook(0);
+            buffer.apply(diff, book);
+            assertEquals(5, book.getBidDepth());
+            assertEquals(5, book.getAskDepth());
+            assertEquals(price(diff, 8), book.getBidPrice(0));
+            assertEquals(price(diff, 1), book.getAskPrice(0));
+            assertEquals(diff + 1, book.getBidVolume(4));
+        }
+    }
+
+    @Test
+    public void keepsEmptyDiffs() {
+        DiffBuffer buffer = new DiffBuffer();
+        buffer.onLevel(true, 100, 1);
+        buffer.endDiff(1);
+        buffer.endDiff(2);
+        buffer.onLevel(false, 200, 1);
+        buffer.endDiff(3);
+
+        OrderBook book = new OrderBook(0);
+        buffer.apply(1, book);
+        assertEquals(0, book.getBidDepth() + book.getAskDepth());
+        buffer.apply(2, book);
+        assertEquals(0, book.getBidDepth());
+        assertEquals(200, book.getAskPrice(0));
+    }
+
+    @Test
+    public void startsOverAfterClear() {
+        DiffBuffer buffer = new DiffBuffer();
+        buffer.onLevel(true, 100, 1);
+        buffer.endDiff(1);
+        buffer.clear();
+        assertEquals(0, buffer.size());
+
+        buffer.onLevel(false, 200, 2);
+        buffer.endDiff(5);
+        OrderBook book = new OrderBook(0);
+        buffer.apply(0, book);
+        assertEquals(5, buffer.timestamp(0));
+        assertEquals(0, book.getBidDepth());
+        assertEquals(2, book.getAskVolume(0));
+    }
+
+    private static long price(int diff, int level) {
+        return (diff * 100 + level + 1) * FixedPoint.ONE;
+    }
+}
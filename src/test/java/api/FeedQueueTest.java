@@ -0,0 +1,136 @@
+package api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FeedQueueTest {
+    // Nothing listens there, so the trade backfill fails right away.
+    private static final ExchangeAddress NOWHERE = ExchangeAddress.local("127.0.0.1", 1, 1);
+
+    @Test
+    public void runsTasksInOrder() throws InterruptedException {
+        FeedQueue queue = new FeedQueue("test", 4, 2, OverflowPolicy.BLOCK);
+        List<Integer> order = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            queue.execute(() -> order.add(n));
+        }
+        // A task queued from the partition thread runs right away.
+        queue.execute(() -> {
+            queue.execute(() -> order.add(10));
+            order.add(11);
+        });
+        queue.execute(done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 12; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void dropsMessagesWhenFull() throws InterruptedException {
+        BitstampApiEndpoint endpoint = endpoint(OverflowPolicy.DROP_AND_RESYNC);
+        FeedQueue queue = new FeedQueue("test", 4, 16, OverflowPolicy.DROP_AND_RESYNC);
+        CountDownLatch release = stall(queue);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offerTrade(endpoint, trade(i)));
+        }
+        assertFalse(queue.offerTrade(endpoint, trade(9)));
+        assertEquals(4, queue.size());
+
+        release.countDown();
+        awaitEmpty(queue);
+    }
+
+    @Test
+    public void blocksWhenFull() throws InterruptedException {
+        BitstampApiEndpoint endpoint = endpoint(OverflowPolicy.BLOCK);
+        FeedQueue queue = new FeedQueue("test", 4, 16, OverflowPolicy.BLOCK);
+        CountDownLatch release = stall(queue);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offerTrade(endpoint, trade(i)));
+        }
+
+        Thread producer = new Thread(() -> queue.offerTrade(endpoint, trade(3)));
+        producer.start();
+        producer.join(200);
+        assertTrue("didn't wait for space", producer.isAlive());
+
+        release.countDown();
+        producer.join(5_000);
+        assertFalse(producer.isAlive());
+        awaitEmpty(queue);
+    }
+
+    @Test
+    public void resyncRequestDoesntWaitForFullQueue() throws InterruptedException {
+        MarketRegistry registry = new MarketRegistry(1, NOWHERE, 4,
+            OverflowPolicy.DROP_AND_RESYNC);
+        BitstampApiEndpoint endpoint = registry.register("btcusd", 1);
+        FeedQueue queue = endpoint.getPartition();
+        CountDownLatch release = stall(queue);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offerTrade(endpoint, trade(i)));
+        }
+
+        // As after a reconnect, on the websocket reader's thread.
+        Thread reader = new Thread(endpoint::requestResync);
+        reader.start();
+        reader.join(5_000);
+        assertFalse("waited for the full queue", reader.isAlive());
+
+        // The next message starts the backfill, whose failure releases the held back trades.
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (endpoint.tradeFeed().latest(10).size() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, endpoint.tradeFeed().latest(10).size());
+    }
+
+    /**
+     * Occupy the partition thread and one slot until the returned latch is released.
+     */
+    private static CountDownLatch stall(FeedQueue queue) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static void awaitEmpty(FeedQueue queue) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queue.size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, queue.size());
+    }
+
+    private static BitstampApiEndpoint endpoint(OverflowPolicy policy) {
+        return new MarketRegistry(1, NOWHERE, 4, policy).register("btcusd", 1);
+    }
+
+    private static String trade(long id) {
+        return "{\"id\": " + id + ", \"timestamp\": \"1514764800\", \"price_str\": \"100\","
+            + " \"amount_str\": \"1\", \"type\": 0}";
+    }
+}
@@ -0,0 +1,187 @@
+package api;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link OrderBook#fill} against a plain walk over the book's levels after random
+ * updates, since the cumulative depth it uses is only brought up to date lazily and every way a
+ * side changes must invalidate it.
+ */
+public class OrderBookFillTest {
+    private static final long MID = 1_000 * FixedPoint.ONE;
+    private static final long TICK = FixedPoint.ONE / 100;
+
+    @Test
+    public void unlimitedBookMatchesLevelWalk() {
+        OrderBook book = new OrderBook(0);
+        Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            randomUpdate(book, random, 200);
+            if (i % 7 == 0) {
+                checkFills(book, random);
+            }
+        }
+    }
+
+    @Test
+    public void depthLimitedBookMatchesLevelWalk() {
+        OrderBook book = new OrderBook(0, 10);
+        Random random = new Random(2);
+        int intoOverflow = 0;
+        for (int i = 0; i < 20_000; i++) {
+            randomUpdate(book, random, 120);
+            if (i % 5 == 0) {
+                intoOverflow += checkFills(book, random);
+            }
+            if (book.needsRefill()) {
+                book.clear();
+            }
+        }
+        assertTrue("no fill reached the overflow levels", intoOverflow > 100);
+    }
+
+    @Test
+    public void depthLimitedBookWithAnalyticsMatchesLevelWalk() {
+        OrderBook book = new OrderBook(0, 8, 25);
+        Random random = new Random(3);
+        for (int i = 0; i < 20_000; i++) {
+            randomUpdate(book, random, 80);
+            if (i % 3 == 0) {
+                checkFills(book, random);
+            }
+            if (book.needsRefill()) {
+                book.clear();
+            }
+        }
+    }
+
+    @Test
+    public void fillsFollowRefillsFromOverflow() {
+        OrderBook book = new OrderBook(0, 5);
+        for (int i = 0; i < 30; i++) {
+            book.updateBid(MID - i * TICK, (i + 1) * FixedPoint.ONE);
+            book.updateAsk(MID + (i + 1) * TICK, (i + 1) * FixedPoint.ONE);
+        }
+        Random random = new Random(4);
+        checkFills(book, random);
+        // Each deleted top level is replaced by the best overflow level.
+        for (int i = 0; i < 20; i++) {
+            book.updateBid(book.getBidPrice(0), 0);
+            book.updateAsk(book.getAskPrice(0), 0);
+            checkFills(book, random);
+            book.updateBid(book.getBidPrice(2), book.getBidVolume(2) + FixedPoint.ONE);
+            checkFills(book, random);
+        }
+    }
+
+    @Test
+    public void fillsFollowCopyAndClear() {
+        Random random = new Random(5);
+        OrderBook unlimited = new OrderBook(0);
+        OrderBook limited = new OrderBook(0, 10);
+        for (int round = 0; round < 50; round++) {
+            OrderBook source = new OrderBook(0);
+            for (int i = 0; i < 500; i++) {
+                randomUpdate(source, random, 150);
+            }
+            checkFills(unlimited, random);
+            checkFills(limited, random);
+            unlimited.copyFrom(source);
+            limited.copyFrom(source);
+            checkFills(unlimited, random);
+            checkFills(limited, random);
+            for (int i = 0; i < 100; i++) {
+                randomUpdate(unlimited, random, 150);
+                randomUpdate(limited, random, 150);
+            }
+            checkFills(unlimited, random);
+            checkFills(limited, random);
+            if (round % 3 == 0) {
+                unlimited.clear();
+                limited.clear();
+                checkFills(unlimited, random);
+                checkFills(limited, random);
+            }
+        }
+    }
+
+    private static void randomUpdate(OrderBook book, Random random, int levels) {
+        boolean bid = random.nextBoolean();
+        long offset = (1 + random.nextInt(levels)) * TICK;
+        long price = bid ? MID - offset : MID + offset;
+        // About a third of the updates delete a level.
+        long volume = random.nextInt(3) == 0 ? 0 : (1 + random.nextInt(1_000)) * TICK;
+        book.update(bid, price, volume);
+    }
+
+    /**
+     * Fill a few random quantities on both sides and compare with the level walk.
+     * @return the number of fills that went beyond the top levels of a depth-limited book
+     */
+    private static int checkFills(OrderBook book, Random random) {
+        int deep = 0;
+        for (boolean buy : new boolean[] {true, false}) {
+            int depth = buy ? book.getAskDepth() : book.getBidDepth();
+            long total = 0;
+            for (int level = 0; level < depth; level++) {
+                total += buy ? book.getAskVolume(level) : book.getBidVolume(level);
+            }
+            long[] quantities = {
+                TICK,
+                1 + (long) (random.nextDouble() * total),
+                total,
+                total + TICK,
+                buy ? book.getAskDepth() > 0 ? book.getAskVolume(0) : TICK
+                    : book.getBidDepth() > 0 ? book.getBidVolume(0) : TICK,
+            };
+            for (long quantity : quantities) {
+                if (checkFill(book, buy, quantity) > 10) {
+                    deep++;
+                }
+            }
+        }
+        return deep;
+    }
+
+    /**
+     * Compare one fill with the level walk.
+     * @return the number of levels the fill touched
+     */
+    private static int checkFill(OrderBook book, boolean buy, long quantity) {
+        int depth = buy ? book.getAskDepth() : book.getBidDepth();
+        long filled = 0;
+        double notional = 0;
+        long bestPrice = 0;
+        long worstPrice = 0;
+        int touched = 0;
+        for (int level = 0; level < depth && filled < quantity; level++) {
+            long price = buy ? book.getAskPrice(level) : book.getBidPrice(level);
+            long volume = buy ? book.getAskVolume(level) : book.getBidVolume(level);
+            long take = Math.min(volume, quantity - filled);
+            if (touched == 0) {
+                bestPrice = price;
+            }
+            worstPrice = price;
+            filled += take;
+            notional += (double) price * take;
+            touched++;
+        }
+
+        Fill fill = book.fill(buy, quantity);
+        String context = (buy ? "buy " : "sell ") + quantity + " over " + depth + " levels";
+        assertEquals(context, quantity, fill.getQuantity());
+        assertEquals(context, filled, fill.getFilledQuantity());
+        assertEquals(context, filled == quantity, fill.isComplete());
+        assertEquals(context, bestPrice, fill.getBestPrice());
+        assertEquals(context, worstPrice, fill.getWorstPrice());
+        long average = filled == 0 ? 0 : Math.round(notional / filled);
+        // The sums are added up in a different order, so allow for rounding.
+        assertEquals(context, average, fill.getAveragePrice(), 1);
+        return touched;
+    }
+}
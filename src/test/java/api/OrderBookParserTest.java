@@ -0,0 +1,120 @@
+package api;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class OrderBookParserTest {
+    private final OrderBookParser parser = new OrderBookParser();
+    private final List<String> levels = new ArrayList<>();
+    private final OrderBookParser.Listener listener = (bid, price, volume) ->
+        levels.add((bid ? "bid " : "ask ") + price + " " + volume);
+
+    @Test
+    public void parsesLevelsInPayloadOrder() {
+        long timestamp = parser.parse("{\"timestamp\": \"1514764800\", "
+            + "\"microtimestamp\": \"1514764800123456\", "
+            + "\"bids\": [[\"13000.5\", \"0.25\"], [\"12999\", \"1\"]], "
+            + "\"asks\": [[\"13001.00000001\", \"0\"]]}", listener);
+
+        assertEquals(1514764800123456L, timestamp);
+        assertEquals(3, parser.getLevelCount());
+        assertEquals("bid 1300050000000 25000000", levels.get(0));
+        assertEquals("bid 1299900000000 100000000", levels.get(1));
+        assertEquals("ask 1300100000001 0", levels.get(2));
+    }
+
+    @Test
+    public void fallsBackToSecondTimestamp() {
+        assertEquals(1514764800_000000L,
+            parser.parse("{\"timestamp\":\"1514764800\",\"bids\":[],\"asks\":[]}", listener));
+        assertEquals(OrderBookParser.NO_TIMESTAMP, parser.parse("{}", listener));
+        assertEquals(0, parser.getLevelCount());
+    }
+
+    @Test
+    public void skipsUnknownFieldsAndOrderIds() {
+        parser.parse("{\"event\":{\"name\":\"data\",\"tags\":[1,\"x\\\"y\",null]},"
+            + "\"bids\":[[\"1.5\",\"2\",\"123456789\"]],\"asks\":[[2, 3.5]],\"ok\":true}",
+            listener);
+
+        assertEquals(2, levels.size());
+        assertEquals("bid 150000000 200000000", levels.get(0));
+        assertEquals("ask 200000000 350000000", levels.get(1));
+    }
+
+    @Test
+    public void readsAcrossChunkBoundaries() throws IOException {
+        StringBuilder json = new StringBuilder("{\"bids\":[");
+        for (int i = 0; i < 2_000; i++) {
+            json.append(i == 0 ? "" : ",").append("[\"").append(10_000 - i).append(".12345678\",")
+                .append("\"").append(i).append(".5\"]");
+        }
+        json.append("],\"asks\":[],\"microtimestamp\":\"42\"}");
+
+        // Returns a few characters at a time so tokens are split between reads.
+        Reader trickle = new StringReader(json.toString()) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 7));
+            }
+        };
+        assertEquals(42, parser.parse(trickle, listener));
+        assertEquals(2_000, parser.getLevelCount());
+        assertEquals("bid 1000012345678 50000000", levels.get(0));
+        assertEquals("bid 800112345678 199950000000", levels.get(1_999));
+    }
+
+    @Test
+    public void roundsExtraDecimalsLikeFixedPoint() {
+        String[] values = {
+            "0.000000004", "0.000000005", "0.000000015", "1.999999995", "-0.000000005",
+            "-2.123456784999", "12345.678901234", "0.1",
+        };
+        for (String value : values) {
+            levels.clear();
+            parser.parse("{\"bids\":[[\"" + value + "\",\"1\"]],\"asks\":[]}", listener);
+            long expected = FixedPoint.fromBigDecimal(new BigDecimal(value));
+            assertEquals(value, "bid " + expected + " 100000000", levels.get(0));
+        }
+    }
+
+    @Test
+    public void acceptsEighteenSignificantDigits() {
+        parser.parse("{\"bids\":[[\"9999999999.99999999\",\"0.000000000000000001\"]]}", listener);
+        assertEquals("bid 999999999999999999 0", levels.get(0));
+    }
+
+    @Test
+    public void rejectsNumbersThatDontFit() {
+        assertMalformed("{\"bids\":[[\"99999999999\",\"1\"]]}");
+        assertMalformed("{\"bids\":[[\"1\",\"12345678901.5\"]]}");
+        assertMalformed("{\"microtimestamp\":\"12345678901234567890\"}");
+    }
+
+    @Test
+    public void rejectsMalformedPayloads() {
+        assertMalformed("{\"bids\":[[\"\",\"1\"]]}");
+        assertMalformed("{\"bids\":[[\"1\" \"1\"]]}");
+        assertMalformed("{\"bids\":[[\"1\",\"1\"]}");
+        assertMalformed("[]");
+        assertMalformed("{\"bids\":");
+    }
+
+    private void assertMalformed(String json) {
+        try {
+            parser.parse(json, listener);
+            fail("parsed " + json);
+        } catch (IllegalArgumentException expected) {
+            // The message names what the parser expected.
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package api;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class OrderBookSynchronizerTest {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final BlockingQueue<Load> loads = new LinkedBlockingQueue<>();
+    private final OrderBook book = new OrderBook(0);
+    private final OrderBookSynchronizer sync = new OrderBookSynchronizer("btcusd", book,
+        listener -> {
+            Load load = new Load(listener);
+            loads.add(load);
+            return load.result;
+        }, executor);
+
+    /**
+     * A snapshot request the test answers by hand.
+     */
+    private static final class Load {
+        final OrderBookParser.Listener listener;
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        Load(OrderBookParser.Listener listener) {
+            this.listener = listener;
+        }
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void replaysDiffsNewerThanSnapshot() throws Exception {
+        sync.onDiff(diff(100, "[[\"10\",\"1\"]]", "[]"));
+        assertTrue(sync.isSyncing());
+        // The live book isn't blank while the snapshot loads.
+        assertEquals(1, book.getBidDepth());
+
+        Load load = nextLoad();
+        load.listener.onLevel(true, 9 * FixedPoint.ONE, 5 * FixedPoint.ONE);
+        load.listener.onLevel(false, 12 * FixedPoint.ONE, 5 * FixedPoint.ONE);
+        sync.onDiff(diff(200, "[[\"9\",\"2\"]]", "[]"));
+        complete(load, 150);
+        sync.onDiff(diff(300, "[]", "[[\"11\",\"3\"]]"));
+
+        assertFalse(sync.isSyncing());
+        sync.awaitSynced();
+        // The diff at 100 is older than the snapshot, so its bid at 10 is gone.
+        assertEquals(1, book.getBidDepth());
+        assertEquals(9 * FixedPoint.ONE, book.getBidPrice(0));
+        assertEquals(2 * FixedPoint.ONE, book.getBidVolume(0));
+        assertEquals(2, book.getAskDepth());
+        assertEquals(11 * FixedPoint.ONE, book.getAskPrice(0));
+        assertEquals(300, sync.getLastTimestamp());
+    }
+
+    @Test
+    public void resyncsOnOutOfOrderDiff() throws Exception {
+        syncEmpty();
+
+        sync.onDiff(diff(500, "[[\"10\",\"1\"]]", "[]"));
+        sync.onDiff(diff(400, "[[\"10\",\"2\"]]", "[]"));
+        assertFalse(sync.isSyncing());
+        sync.onDiff(diff(600, "[]", "[]"));
+        assertTrue(sync.isSyncing());
+        assertNotNull(nextLoad());
+    }
+
+    @Test
+    public void resyncsOnCrossedBook() throws Exception {
+        syncEmpty();
+
+        sync.onDiff(diff(500, "[[\"10\",\"1\"]]", "[[\"9\",\"1\"]]"));
+        assertFalse(sync.isSyncing());
+        sync.onDiff(diff(600, "[]", "[]"));
+        assertTrue(sync.isSyncing());
+    }
+
+    @Test
+    public void tellsObserverAboutDiffsAndSnapshots() throws Exception {
+        StringBuilder seen = new StringBuilder();
+        sync.setObserver(new DiffObserver() {
+            @Override
+            public void onLevel(boolean bid, long price, long volume) {
+                seen.append(bid ? "b" : "a").append(price / FixedPoint.ONE).append(' ');
+            }
+
+            @Override
+            public void onDiffEnd(long timestamp) {
+                seen.append("end").append(timestamp).append(' ');
+            }
+
+            @Override
+            public void onSnapshot(OrderBook synced, long timestamp) {
+                seen.append("snapshot").append(timestamp).append('/')
+                    .append(synced.getAskDepth()).append(' ');
+            }
+        });
+
+        sync.onDiff(diff(100, "[[\"10\",\"1\"]]", "[]"));
+        Load load = nextLoad();
+        load.listener.onLevel(false, 12 * FixedPoint.ONE, FixedPoint.ONE);
+        complete(load, 50);
+        sync.onDiff(diff(200, "[]", "[[\"11\",\"1\"]]"));
+
+        assertEquals("b10 end100 a11 end200 snapshot50/2 ", seen.toString());
+    }
+
+    @Test
+    public void warmStartKeepsLoadedLevels() throws Exception {
+        book.updateBid(10 * FixedPoint.ONE, FixedPoint.ONE);
+        sync.warmStart(0);
+        sync.awaitSynced();
+
+        sync.onDiff(diff(100, "[[\"9\",\"1\"]]", "[]"));
+        assertTrue(sync.isSyncing());
+        assertEquals(2, book.getBidDepth());
+    }
+
+    /**
+     * Answer a snapshot request and wait until the synchronizer has seen the answer.
+     */
+    private void complete(Load load, long timestamp) throws Exception {
+        load.result.complete(timestamp);
+        // The load task may still be registering its callback; it's done once this has run.
+        executor.submit(() -> { }).get();
+    }
+
+    private void syncEmpty() throws Exception {
+        sync.onDiff(diff(100, "[]", "[]"));
+        complete(nextLoad(), 100);
+        sync.onDiff(diff(200, "[]", "[]"));
+        assertFalse(sync.isSyncing());
+    }
+
+    private Load nextLoad() throws InterruptedException {
+        Load load = loads.poll(5, TimeUnit.SECONDS);
+        assertNotNull("no snapshot was requested", load);
+        return load;
+    }
+
+    private static String diff(long microtimestamp, String bids, String asks) {
+        return "{\"microtimestamp\":\"" + microtimestamp + "\",\"bids\":" + bids
+            + ",\"asks\":" + asks + "}";
+    }
+}
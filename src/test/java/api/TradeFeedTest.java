@@ -0,0 +1,75 @@
+package api;
+
+import dto.MarketTrade;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static api.TradeRingTest.assertIds;
+import static api.TradeRingTest.trade;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TradeFeedTest {
+    private final TradeFeed feed = new TradeFeed(100);
+    private final List<MarketTrade> heard = new ArrayList<>();
+
+    {
+        feed.addListener(heard::add);
+    }
+
+    @Test
+    public void holdsLiveTradesUntilBackfilled() {
+        feed.onTrade(live(12));
+        feed.onTrade(live(13));
+        assertIds(feed.latest(10));
+
+        // REST returns the newest first, overlapping the live trades.
+        feed.onBackfill(Arrays.asList(trade(12), trade(11), trade(10)));
+        assertIds(feed.latest(10), 13, 12, 11, 10);
+        assertIds(heard, 10, 11, 12, 13);
+
+        feed.onTrade(live(14));
+        assertIds(feed.latest(1), 14);
+    }
+
+    @Test
+    public void holdsLiveTradesAgainAfterReconnect() {
+        feed.onBackfill(Arrays.asList(trade(2), trade(1)));
+        feed.startBackfill();
+        feed.onTrade(live(5));
+        assertIds(feed.latest(10), 2, 1);
+
+        feed.onBackfill(Arrays.asList(trade(4), trade(3), trade(2)));
+        assertIds(feed.latest(10), 5, 4, 3, 2, 1);
+        assertIds(heard, 1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void prefersExactDecimalFields() {
+        feed.onBackfill(new ArrayList<>());
+        feed.onTrade("{\"id\": 1, \"timestamp\": \"1514764800\", \"amount\": 0.1,"
+            + " \"amount_str\": \"0.10000000\", \"price\": 13000.1, \"price_str\": \"13000.10\","
+            + " \"type\": 1}");
+        feed.onTrade("{\"id\": 2, \"timestamp\": \"1514764801\", \"amount\": 2,"
+            + " \"price\": 13000, \"type\": 0}");
+
+        MarketTrade sell = heard.get(0);
+        assertEquals(1514764800, sell.getTime());
+        assertEquals(new BigDecimal("13000.10"), sell.getPrice());
+        assertEquals(new BigDecimal("0.10000000"), sell.getVolume());
+        assertFalse(sell.isBuy());
+        MarketTrade buy = heard.get(1);
+        assertEquals(new BigDecimal("13000"), buy.getPrice());
+        assertTrue(buy.isBuy());
+    }
+
+    private static String live(long id) {
+        return "{\"id\": " + id + ", \"timestamp\": \"" + (1_500_000_000 + id) + "\","
+            + " \"price_str\": \"" + (100 + id) + "\", \"amount_str\": \"1\", \"type\": 0}";
+    }
+}
@@ -0,0 +1,51 @@
+package api;
+
+import dto.MarketTrade;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TradeRingTest {
+
+    @Test
+    public void keepsNewestTradesNewestFirst() {
+        TradeRing ring = new TradeRing(3);
+        for (long id = 1; id <= 5; id++) {
+            assertTrue(ring.add(trade(id)));
+        }
+
+        assertEquals(5, ring.getLastId());
+        assertIds(ring.latest(10), 5, 4, 3);
+        assertIds(ring.latest(2), 5, 4);
+        assertIds(ring.latest(0));
+    }
+
+    @Test
+    public void dropsDuplicateAndOlderTrades() {
+        TradeRing ring = new TradeRing(10);
+        assertEquals(-1, ring.getLastId());
+        ring.add(trade(7));
+
+        assertFalse(ring.add(trade(7)));
+        assertFalse(ring.add(trade(3)));
+        assertTrue(ring.add(trade(8)));
+        assertIds(ring.latest(10), 8, 7);
+    }
+
+    static MarketTrade trade(long id) {
+        return new MarketTrade(id, 1_500_000_000 + id, BigDecimal.valueOf(100 + id),
+            BigDecimal.ONE, id % 2 == 0);
+    }
+
+    static void assertIds(List<MarketTrade> trades, long... ids) {
+        assertEquals(ids.length, trades.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], trades.get(i).getId());
+        }
+    }
+}
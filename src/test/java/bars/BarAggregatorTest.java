@@ -0,0 +1,107 @@
+package bars;
+
+import api.FixedPoint;
+import org.junit.Test;
+import sim.TickChunk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BarAggregatorTest {
+    private static final long ONE = FixedPoint.ONE;
+
+    @Test
+    public void closesTimeBarsOnTheFirstTradeOfTheNextInterval() {
+        BarAggregator aggregator = new BarAggregator(BarType.TIME, 60, 10);
+        List<Bar> heard = new ArrayList<>();
+        aggregator.addListener(heard::add);
+
+        aggregator.onTick(125, 10 * ONE, ONE, TickChunk.BUY);
+        aggregator.onTick(150, 12 * ONE, 3 * ONE, TickChunk.SELL);
+        aggregator.onTick(179, 9 * ONE, ONE, TickChunk.UNKNOWN);
+        assertEquals(0, heard.size());
+        // Skips the empty interval starting at 180.
+        aggregator.onTick(245, 11 * ONE, ONE, TickChunk.BUY);
+
+        assertEquals(1, heard.size());
+        Bar bar = heard.get(0);
+        assertEquals(120, bar.getStart());
+        assertEquals(179, bar.getEnd());
+        assertEquals(10 * ONE, bar.getOpen());
+        assertEquals(12 * ONE, bar.getHigh());
+        assertEquals(9 * ONE, bar.getLow());
+        assertEquals(9 * ONE, bar.getClose());
+        assertEquals(5 * ONE, bar.getVolume());
+        assertEquals(ONE, bar.getBuyVolume());
+        assertEquals(3 * ONE, bar.getSellVolume());
+        assertEquals((10 + 36 + 9) * ONE / 5, bar.getVwap());
+        assertEquals(3, bar.getTicks());
+
+        assertEquals(240, aggregator.current().getStart());
+        aggregator.flush();
+        assertNull(aggregator.current());
+        assertEquals(2, heard.size());
+        assertEquals(heard.get(1), aggregator.latest(1).get(0));
+    }
+
+    @Test
+    public void closesVolumeBarsOnTheTradeThatReachesTheSize() {
+        BarAggregator aggregator = BarAggregator.fromSpec("volume:2.5", 10);
+        aggregator.onTick(1, 10 * ONE, ONE, TickChunk.BUY);
+        aggregator.onTick(2, 11 * ONE, ONE, TickChunk.BUY);
+        assertEquals(0, aggregator.latest(10).size());
+        aggregator.onTick(3, 12 * ONE, ONE, TickChunk.BUY);
+
+        List<Bar> bars = aggregator.latest(10);
+        assertEquals(1, bars.size());
+        assertEquals(3 * ONE, bars.get(0).getVolume());
+        assertEquals(1, bars.get(0).getStart());
+        assertEquals(3, bars.get(0).getEnd());
+        assertNull(aggregator.current());
+    }
+
+    @Test
+    public void closesTickBarsAfterTheSizeInTrades() {
+        BarAggregator aggregator = BarAggregator.fromSpec("tick:2", 2);
+        TickChunk chunk = new TickChunk(7);
+        for (int i = 1; i <= 7; i++) {
+            chunk.add(i, i * ONE, ONE);
+        }
+        aggregator.onTicks(chunk);
+
+        // Only the newest two of the three bars are kept.
+        List<Bar> bars = aggregator.latest(10);
+        assertEquals(2, bars.size());
+        assertEquals(6 * ONE, bars.get(0).getClose());
+        assertEquals(3 * ONE, bars.get(1).getOpen());
+        assertEquals(7 * ONE, aggregator.current().getOpen());
+        assertEquals(0, bars.get(0).getBuyVolume() + bars.get(0).getSellVolume());
+    }
+
+    @Test
+    public void parsesSpecs() {
+        BarAggregator time = BarAggregator.fromSpec(" time:60 ", 1);
+        assertEquals(BarType.TIME, time.getType());
+        assertEquals(60, time.getSize());
+        assertEquals(ONE / 2, BarAggregator.fromSpec("volume:0.5", 1).getSize());
+        assertEquals(BarType.TICK, BarAggregator.fromSpec("tick:100", 1).getType());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownBarType() {
+        BarAggregator.fromSpec("range:10", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroSize() {
+        BarAggregator.fromSpec("tick:0", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new BarAggregator(BarType.TICK, 10, 0);
+    }
+}
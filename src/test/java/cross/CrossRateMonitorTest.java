@@ -0,0 +1,162 @@
+package cross;
+
+import api.FixedPoint;
+import api.OrderBook;
+import metrics.LatencyHistogram;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CrossRateMonitorTest {
+    private final BlockingQueue<Arbitrage> found = new LinkedBlockingQueue<>();
+    private CrossRateMonitor monitor;
+    private long updates;
+
+    @After
+    public void close() {
+        if (monitor != null) {
+            monitor.close();
+        }
+    }
+
+    @Test
+    public void splitsMarketNames() {
+        assertArrayEquals(new String[] {"btc", "usdt"}, CrossRateMonitor.splitMarket("btcusdt"));
+        assertArrayEquals(new String[] {"btc", "usd"}, CrossRateMonitor.splitMarket("btcusd"));
+        assertArrayEquals(new String[] {"eth", "btc"}, CrossRateMonitor.splitMarket("ethbtc"));
+        assertNull(CrossRateMonitor.splitMarket("usd"));
+        assertNull(CrossRateMonitor.splitMarket("btcxyz"));
+    }
+
+    @Test
+    public void findsCyclesOnlyThroughThreeMarkets() {
+        monitor = start(0, "btcusd", "ethusd", "ethbtc", "xrpusd", "btceur");
+        // btc>usd>eth>btc and back; xrpusd and btceur close no triangle.
+        assertEquals(2, monitor.getCycleCount());
+    }
+
+    @Test
+    public void ignoresConsistentBooks() throws InterruptedException {
+        monitor = start(0, "btcusd", "ethusd", "ethbtc");
+        offer("btcusd", book("10000", "1", "10001", "1"));
+        offer("ethusd", book("500", "10", "500.5", "10"));
+        offer("ethbtc", book("0.05", "2", "0.05001", "2"));
+        awaitUpdates();
+
+        assertNull(found.poll(100, TimeUnit.MILLISECONDS));
+        List<ImpliedPrice> implied = monitor.getImpliedPrices("btcusd");
+        assertEquals(1, implied.size());
+        ImpliedPrice viaEth = implied.get(0);
+        assertEquals("eth", viaEth.getVia());
+        // Sell btc for eth at the ethbtc ask, then eth for usd at the ethusd bid; and back.
+        assertEquals(Math.round(500 / 0.05001 * FixedPoint.ONE), viaEth.getBid(), 1);
+        assertEquals(Math.round(500.5 / 0.05 * FixedPoint.ONE), viaEth.getAsk(), 1);
+        assertEquals(10_000 * FixedPoint.ONE, viaEth.getDirectBid());
+        assertEquals(10_001 * FixedPoint.ONE, viaEth.getDirectAsk());
+    }
+
+    @Test
+    public void walksProfitableCycleWhileItPays() throws InterruptedException {
+        monitor = start(0, "btcusd", "ethusd", "ethbtc");
+        offer("btcusd", book("10000", "1", "10001", "1"));
+        offer("ethusd", book("500", "10", "500.5", "10"));
+        // Two eth cheap in btc, then more at a price that no longer pays.
+        OrderBook ethbtc = book("0.039", "2", "0.04", "2");
+        ethbtc.updateAsk(FixedPoint.fromBigDecimal(new BigDecimal("0.06")), 5 * FixedPoint.ONE);
+        offer("ethbtc", ethbtc);
+
+        Arbitrage arbitrage = found.poll(5, TimeUnit.SECONDS);
+        assertNotNull(arbitrage);
+        assertEquals(Arrays.asList("usd", "btc", "eth", "usd"), arbitrage.getCurrencies());
+        assertEquals(Arrays.asList("btcusd", "ethbtc", "ethusd"), arbitrage.getMarkets());
+        assertEquals((12_500.0 / 10_001 - 1) * 10_000, arbitrage.getTopProfitBps(), 1e-6);
+        // The two cheap eth cost 0.08 btc, which cost 800.08 usd and sell for 1000 usd.
+        assertEquals(800.08, arbitrage.getAmountIn(), 1e-6);
+        assertEquals(1000, arbitrage.getAmountOut(), 1e-6);
+        assertNull(found.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void feesAndThresholdSuppressThinCycles() throws InterruptedException {
+        // About 20 bps at the top before fees.
+        assertTrue(findsThinCycle(5, 0));
+        assertFalse(findsThinCycle(5, 10));
+        assertFalse(findsThinCycle(10, 0));
+    }
+
+    private boolean findsThinCycle(double feeBps, double minProfitBps)
+        throws InterruptedException {
+        close();
+        found.clear();
+        updates = 0;
+        monitor = new CrossRateMonitor(5, feeBps, minProfitBps);
+        add("btcusd", "ethusd", "ethbtc");
+        offer("btcusd", book("9999", "1", "10000", "1"));
+        offer("ethusd", book("500", "10", "501", "10"));
+        offer("ethbtc", book("0.0498", "2", "0.0499", "2"));
+        awaitUpdates();
+        return found.poll(100, TimeUnit.MILLISECONDS) != null;
+    }
+
+    @Test
+    public void skipsCrossedBooks() throws InterruptedException {
+        monitor = start(0, "btcusd", "ethusd", "ethbtc");
+        offer("btcusd", book("10000", "1", "10001", "1"));
+        offer("ethusd", book("500", "10", "500.5", "10"));
+        offer("ethbtc", book("0.05", "2", "0.04", "2"));
+        awaitUpdates();
+        assertNull(found.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    private CrossRateMonitor start(double minProfitBps, String... markets) {
+        monitor = new CrossRateMonitor(5, 0, minProfitBps);
+        add(markets);
+        return monitor;
+    }
+
+    private void add(String... markets) {
+        for (String market : markets) {
+            String[] pair = CrossRateMonitor.splitMarket(market);
+            monitor.add(market, pair[0], pair[1]);
+        }
+        monitor.addListener(found::add);
+        monitor.start();
+    }
+
+    private void offer(String market, OrderBook book) {
+        monitor.listener(market).onTopChanged(book, System.nanoTime());
+        updates++;
+    }
+
+    /**
+     * Wait until the monitor has handled every book offered so far.
+     */
+    private void awaitUpdates() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (LatencyHistogram.getTotal(monitor.getLatency().getCounts()) < updates
+            && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(LatencyHistogram.getTotal(monitor.getLatency().getCounts()) > 0);
+    }
+
+    private static OrderBook book(String bid, String bidVolume, String ask, String askVolume) {
+        OrderBook book = new OrderBook(0);
+        book.updateBid(new BigDecimal(bid), new BigDecimal(bidVolume));
+        book.updateAsk(new BigDecimal(ask), new BigDecimal(askVolume));
+        return book;
+    }
+}
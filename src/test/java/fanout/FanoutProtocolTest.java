@@ -0,0 +1,83 @@
+package fanout;
+
+import api.FixedPoint;
+import api.OrderBookSnapshot;
+import dto.Trade;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class FanoutProtocolTest {
+
+    @Test
+    public void writesHello() {
+        ByteBuffer body = body(FanoutProtocol.hello(), FanoutProtocol.HELLO);
+        assertEquals(FanoutProtocol.MAGIC, body.getLong());
+        assertEquals(FanoutProtocol.VERSION, body.getInt());
+        assertEquals(0, body.remaining());
+    }
+
+    @Test
+    public void writesSubscription() {
+        ByteBuffer body = body(FanoutProtocol.subscribe(Arrays.asList("btcusd", "ethusd")),
+            FanoutProtocol.SUBSCRIBE);
+        byte[] names = new byte[body.remaining()];
+        body.get(names);
+        assertEquals("btcusd,ethusd", new String(names, StandardCharsets.UTF_8));
+        assertEquals(FanoutProtocol.FRAME_HEADER_SIZE,
+            FanoutProtocol.subscribe(Arrays.asList()).length);
+    }
+
+    @Test
+    public void writesBookBidsThenAsksBestFirst() {
+        OrderBookSnapshot book = new OrderBookSnapshot(42,
+            2, new long[] {100, 99}, new long[] {1, 2},
+            1, new long[] {101}, new long[] {3});
+        ByteBuffer body = body(FanoutProtocol.book("btcusd", book), FanoutProtocol.BOOK);
+
+        assertEquals("btcusd", FanoutProtocol.getMarket(body));
+        assertEquals(42, body.getLong());
+        assertEquals(2, body.getInt());
+        assertEquals(1, body.getInt());
+        long[] levels = {100, 1, 99, 2, 101, 3};
+        for (long value : levels) {
+            assertEquals(value, body.getLong());
+        }
+        assertEquals(0, body.remaining());
+    }
+
+    @Test
+    public void writesTradeWithFlags() {
+        Trade trade = new Trade(1_500_000_000, new BigDecimal("13000.5"), new BigDecimal("0.25"),
+            true, false, true);
+        ByteBuffer body = body(FanoutProtocol.trade("ethusd", trade), FanoutProtocol.TRADE);
+
+        assertEquals("ethusd", FanoutProtocol.getMarket(body));
+        assertEquals(1_500_000_000, body.getLong());
+        assertEquals(13_000 * FixedPoint.ONE + FixedPoint.ONE / 2, body.getLong());
+        assertEquals(FixedPoint.ONE / 4, body.getLong());
+        assertEquals(FanoutProtocol.OUR_TRADE | FanoutProtocol.DOWNTICK, body.get());
+        assertEquals(0, body.remaining());
+    }
+
+    @Test
+    public void writesDroppedCount() {
+        assertEquals(7, body(FanoutProtocol.dropped(7), FanoutProtocol.DROPPED).getLong());
+    }
+
+    /**
+     * Check a frame's header and return its body.
+     */
+    private static ByteBuffer body(byte[] frame, byte type) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(type, buffer.get());
+        assertEquals(frame.length - FanoutProtocol.FRAME_HEADER_SIZE, buffer.getInt());
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,179 @@
+package fanout;
+
+import api.OrderBookSnapshot;
+import dto.Trade;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a {@link Subscriber} against a {@link FanoutClient} over a loopback connection.
+ */
+public class SubscriberTest {
+    private ServerSocketChannel server;
+    private Selector selector;
+    private SocketChannel channel;
+    private Subscriber subscriber;
+    private FanoutClient client;
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+    @Before
+    public void connect() throws Exception {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        CompletableFuture<FanoutClient> connecting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new FanoutClient("127.0.0.1", port);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        channel = server.accept();
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        subscriber = new Subscriber(channel, key, 2);
+        // Sends the hello the client waits for.
+        subscriber.write();
+        client = connecting.get(5, TimeUnit.SECONDS);
+
+        Thread reader = new Thread(() -> {
+            try {
+                client.run(new FanoutClient.Listener() {
+                    @Override
+                    public void onBook(String market, OrderBookSnapshot book) {
+                        received.add(market + " book " + book.getSequence());
+                    }
+
+                    @Override
+                    public void onTrade(String market, Trade trade) {
+                        received.add(market + " trade " + trade.getTime());
+                    }
+
+                    @Override
+                    public void onDropped(long count) {
+                        received.add("dropped " + count);
+                    }
+                });
+            } catch (IOException e) {
+                // Closed by the test.
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @After
+    public void close() throws IOException {
+        client.close();
+        channel.close();
+        selector.close();
+        server.close();
+    }
+
+    @Test
+    public void sendsOnlyLatestBookOfEachMarket() throws Exception {
+        subscriber.offerBook("btcusd", book("btcusd", 1));
+        subscriber.offerBook("ethusd", book("ethusd", 1));
+        subscriber.offerBook("btcusd", book("btcusd", 2));
+        subscriber.offerBook("btcusd", book("btcusd", 3));
+        subscriber.write();
+
+        Set<String> books = receiveAll();
+        assertEquals(2, books.size());
+        assertTrue(books.contains("btcusd book 3"));
+        assertTrue(books.contains("ethusd book 1"));
+        subscriber.offerBook("btcusd", book("btcusd", 4));
+        subscriber.write();
+        assertEquals("btcusd book 4", next());
+    }
+
+    @Test
+    public void dropsOldestTradesAndSaysHowMany() throws Exception {
+        for (long time = 1; time <= 5; time++) {
+            subscriber.offerTrade("btcusd", trade("btcusd", time));
+        }
+        subscriber.offerBook("btcusd", book("btcusd", 9));
+        subscriber.write();
+
+        // The count goes first, then the trades kept, then the books.
+        assertEquals("dropped 3", next());
+        assertEquals("btcusd trade 4", next());
+        assertEquals("btcusd trade 5", next());
+        assertEquals("btcusd book 9", next());
+    }
+
+    @Test
+    public void subscriptionFiltersMarketsAndSendsLatestBooks() throws Exception {
+        subscriber.offerBook("btcusd", book("btcusd", 1));
+        client.subscribe(Collections.singletonList("ethusd"));
+        Map<String, byte[]> latest = new HashMap<>();
+        latest.put("btcusd", book("btcusd", 2));
+        latest.put("ethusd", book("ethusd", 5));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (subscriber.wants("btcusd") && System.nanoTime() < deadline) {
+            assertTrue(subscriber.read(latest));
+        }
+        assertFalse(subscriber.wants("btcusd"));
+        assertTrue(subscriber.wants("ethusd"));
+
+        subscriber.offerTrade("btcusd", trade("btcusd", 1));
+        subscriber.offerTrade("ethusd", trade("ethusd", 2));
+        subscriber.write();
+        assertEquals("ethusd trade 2", next());
+        assertEquals("ethusd book 5", next());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    private String next() throws InterruptedException {
+        String frame = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull("nothing received", frame);
+        return frame;
+    }
+
+    /**
+     * Collect frames until none arrive for a moment.
+     */
+    private Set<String> receiveAll() throws InterruptedException {
+        Set<String> frames = new TreeSet<>();
+        frames.add(next());
+        String frame;
+        while ((frame = received.poll(200, TimeUnit.MILLISECONDS)) != null) {
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static byte[] book(String market, long sequence) {
+        return FanoutProtocol.book(market, new OrderBookSnapshot(sequence,
+            1, new long[] {100}, new long[] {1}, 1, new long[] {101}, new long[] {1}));
+    }
+
+    private static byte[] trade(String market, long time) {
+        return FanoutProtocol.trade(market, new Trade(time, BigDecimal.ONE, BigDecimal.ONE,
+            false, false, false));
+    }
+}
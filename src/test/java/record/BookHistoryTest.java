@@ -0,0 +1,181 @@
+package record;
+
+import api.FixedPoint;
+import api.OrderBook;
+import api.OrderBookSnapshot;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stores a random day and a half of diffs with a {@link BookStore} and checks the books that
+ * {@link BookHistory} reconstructs against replaying every diff from the start.
+ */
+public class BookHistoryTest {
+    private static final long START = 1_600_000_000_000_000L;
+    private static final long MID = 10_000 * FixedPoint.ONE;
+    private static final long TICK = FixedPoint.ONE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(7);
+    private final OrderBook initial = new OrderBook(0);
+    private final List<Long> diffTimes = new ArrayList<>();
+    private final List<long[]> diffLevels = new ArrayList<>();
+    private Path dir;
+    private long end;
+
+    @Before
+    public void store() throws IOException {
+        dir = folder.getRoot().toPath();
+        for (int i = 1; i <= 20; i++) {
+            initial.updateBid(MID - i * TICK, i * FixedPoint.ONE);
+            initial.updateAsk(MID + i * TICK, i * FixedPoint.ONE);
+        }
+
+        // Ten-minute keyframes and day-long segments, so queries replay several diffs and the
+        // history spans two segments.
+        try (BookStore store = new BookStore(dir, "btcusd", 600)) {
+            store.onSnapshot(initial, START);
+            long time = START;
+            while (time < START + TimeUnit.HOURS.toMicros(36)) {
+                time += TimeUnit.SECONDS.toMicros(1 + random.nextInt(120));
+                long[] levels = new long[3 * (1 + random.nextInt(4))];
+                for (int i = 0; i < levels.length; i += 3) {
+                    boolean bid = random.nextBoolean();
+                    long offset = (1 + random.nextInt(30)) * TICK;
+                    levels[i] = bid ? 1 : 0;
+                    levels[i + 1] = bid ? MID - offset : MID + offset;
+                    levels[i + 2] = random.nextInt(3) == 0 ? 0 : random.nextInt(100) * TICK;
+                    store.onLevel(bid, levels[i + 1], levels[i + 2]);
+                }
+                store.onDiffEnd(time);
+                diffTimes.add(time);
+                diffLevels.add(levels);
+            }
+            end = time;
+        }
+    }
+
+    @Test
+    public void reconstructsBookAtAnyTime() throws IOException {
+        BookHistory history = new BookHistory(dir, "btcusd");
+        assertEquals(START, history.getStart());
+
+        List<Long> times = new ArrayList<>();
+        times.add(START - 1);
+        times.add(START);
+        times.add(START + TimeUnit.DAYS.toMicros(1));
+        times.add(end);
+        times.add(end + 1);
+        times.add(diffTimes.get(diffTimes.size() / 2));
+        for (int i = 0; i < 50; i++) {
+            times.add(START + (long) (random.nextDouble() * (end - START)));
+        }
+        for (long time : times) {
+            OrderBook expected = replayTo(time);
+            OrderBook actual = history.at(time, 5);
+            assertSameLevels("at " + time, expected, actual);
+        }
+    }
+
+    @Test
+    public void scansAtFixedIntervals() throws IOException {
+        BookHistory history = new BookHistory(dir, "btcusd");
+        long interval = TimeUnit.MINUTES.toMicros(17);
+        long from = START - interval;
+        List<Long> times = new ArrayList<>();
+        List<OrderBookSnapshot> books = new ArrayList<>();
+        long points = history.scan(from, end, interval, 5, (timestamp, book) -> {
+            times.add(timestamp);
+            books.add(book);
+        });
+
+        assertEquals((end - from) / interval + 1, points);
+        assertEquals(points, times.size());
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(from + i * interval, (long) times.get(i));
+            OrderBook expected = replayTo(times.get(i));
+            expected.publish();
+            assertSameTop("scan at " + times.get(i), expected.getSnapshot(), books.get(i));
+        }
+    }
+
+    @Test
+    public void scanStopsBeforeTimeOverflows() throws IOException {
+        BookHistory history = new BookHistory(dir, "btcusd");
+        long points = history.scan(Long.MAX_VALUE - 10, Long.MAX_VALUE, 4, 1, (t, book) -> { });
+        assertEquals(3, points);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scanRejectsIntervalThatDoesntAdvance() throws IOException {
+        new BookHistory(dir, "btcusd").scan(START, end, 0, 1, (t, book) -> { });
+    }
+
+    @Test
+    public void emptyForOtherMarkets() throws IOException {
+        BookHistory history = new BookHistory(dir, "ethusd");
+        assertEquals(Long.MAX_VALUE, history.getStart());
+        OrderBook book = history.at(START, 5);
+        assertEquals(0, book.getBidDepth() + book.getAskDepth());
+    }
+
+    /**
+     * Rebuild the book at a time from the initial book and every diff up to it.
+     */
+    private OrderBook replayTo(long time) {
+        OrderBook book = new OrderBook(5);
+        if (time < START) {
+            return book;
+        }
+        book.copyFrom(initial);
+        for (int i = 0; i < diffTimes.size() && diffTimes.get(i) <= time; i++) {
+            long[] levels = diffLevels.get(i);
+            for (int j = 0; j < levels.length; j += 3) {
+                book.update(levels[j] == 1, levels[j + 1], levels[j + 2]);
+            }
+        }
+        return book;
+    }
+
+    private static void assertSameLevels(String context, OrderBook expected, OrderBook actual) {
+        assertEquals(context, expected.getBidDepth(), actual.getBidDepth());
+        assertEquals(context, expected.getAskDepth(), actual.getAskDepth());
+        for (int i = 0; i < expected.getBidDepth(); i++) {
+            assertEquals(context, expected.getBidPrice(i), actual.getBidPrice(i));
+            assertEquals(context, expected.getBidVolume(i), actual.getBidVolume(i));
+        }
+        for (int i = 0; i < expected.getAskDepth(); i++) {
+            assertEquals(context, expected.getAskPrice(i), actual.getAskPrice(i));
+            assertEquals(context, expected.getAskVolume(i), actual.getAskVolume(i));
+        }
+        assertTrue(context, actual.getSnapshot().getBidDepth() <= 5);
+    }
+
+    private static void assertSameTop(String context, OrderBookSnapshot expected,
+                                      OrderBookSnapshot actual) {
+        assertEquals(context, expected.getBidDepth(), actual.getBidDepth());
+        assertEquals(context, expected.getAskDepth(), actual.getAskDepth());
+        for (int i = 0; i < expected.getBidDepth(); i++) {
+            assertEquals(context, expected.getBidPrice(i), actual.getBidPrice(i));
+            assertEquals(context, expected.getBidVolume(i), actual.getBidVolume(i));
+        }
+        for (int i = 0; i < expected.getAskDepth(); i++) {
+            assertEquals(context, expected.getAskPrice(i), actual.getAskPrice(i));
+            assertEquals(context, expected.getAskVolume(i), actual.getAskVolume(i));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package record;
+
+import api.FixedPoint;
+import api.OrderBook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class CheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("btcusd.ckpt");
+        Checkpoint.write(book(), 1234, file);
+        assertFalse(Files.exists(file.resolveSibling("btcusd.ckpt.tmp")));
+
+        OrderBook loaded = new OrderBook(0);
+        loaded.updateBid(FixedPoint.ONE, FixedPoint.ONE);
+        assertEquals(1234, Checkpoint.read(file, loaded));
+        assertBook(loaded);
+    }
+
+    @Test
+    public void replacesThePreviousCheckpoint() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("btcusd.ckpt");
+        Checkpoint.write(new OrderBook(0), 1, file);
+        Checkpoint.write(book(), 2, file);
+
+        OrderBook loaded = new OrderBook(0);
+        assertEquals(2, Checkpoint.read(file, loaded));
+        assertBook(loaded);
+    }
+
+    @Test
+    public void canBeReplayed() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("btcusd.ckpt");
+        Checkpoint.write(book(), 1234, file);
+
+        OrderBook replayed = new OrderBook(0);
+        try (Replayer replayer = new Replayer(file.toString())) {
+            assertEquals(1, replayer.replay(replayed, null, 0));
+        }
+        assertBook(replayed);
+    }
+
+    @Test
+    public void rejectsDamagedFiles() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("btcusd.ckpt");
+        Checkpoint.write(book(), 1234, file);
+        byte[] good = Files.readAllBytes(file);
+
+        // Cut off in the middle of a level.
+        Files.write(file, Arrays.copyOf(good, good.length - 3));
+        assertRejected(file);
+
+        // A level count that overflows when multiplied by the level size.
+        Files.write(file, good);
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(RecordFormat.FILE_HEADER_SIZE + RecordFormat.RECORD_HEADER_SIZE + 16);
+            raw.write(new byte[] {2, 0, 0, 0x10});
+        }
+        assertRejected(file);
+
+        Files.write(file, "not a checkpoint".getBytes("US-ASCII"));
+        assertRejected(file);
+    }
+
+    private static void assertRejected(Path file) {
+        try {
+            Checkpoint.read(file, new OrderBook(0));
+            fail("read a damaged checkpoint");
+        } catch (IOException expected) {
+            // Engine falls back to a cold start.
+        }
+    }
+
+    private static OrderBook book() {
+        OrderBook book = new OrderBook(0);
+        book.updateBid(100 * FixedPoint.ONE, FixedPoint.ONE);
+        book.updateBid(99 * FixedPoint.ONE, 2 * FixedPoint.ONE);
+        book.updateAsk(101 * FixedPoint.ONE, 3 * FixedPoint.ONE);
+        return book;
+    }
+
+    private static void assertBook(OrderBook book) {
+        assertEquals(2, book.getBidDepth());
+        assertEquals(100 * FixedPoint.ONE, book.getBidPrice(0));
+        assertEquals(2 * FixedPoint.ONE, book.getBidVolume(1));
+        assertEquals(1, book.getAskDepth());
+        assertEquals(3 * FixedPoint.ONE, book.getAskVolume(0));
+    }
+}
@@ -0,0 +1,165 @@
+package record;
+
+import api.DiffObserver;
+import api.FixedPoint;
+import api.OrderBook;
+import dto.MarketTrade;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import sim.TickChunk;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysWhatWasRecorded() throws IOException {
+        String file = folder.newFile("btcusd.bin").toString();
+        try (Recorder recorder = new Recorder(file)) {
+            record(recorder);
+        }
+
+        OrderBook book = new OrderBook(0);
+        List<String> seen = new ArrayList<>();
+        List<MarketTrade> trades = new ArrayList<>();
+        try (Replayer replayer = new Replayer(file)) {
+            assertEquals(5, replayer.replay(book, observer(seen), trades::add, 0));
+        }
+
+        assertEquals("bid 100 1, ask 101 2, diff 10, snapshot 20/1/2, bid 100 0, diff 30",
+            String.join(", ", seen));
+        assertEquals(0, book.getBidDepth());
+        assertEquals(2, book.getAskDepth());
+        assertEquals(price(102), book.getAskPrice(0));
+        assertEquals(2, trades.size());
+        MarketTrade first = trades.get(0);
+        assertEquals(7, first.getId());
+        assertEquals(1_500_000_000, first.getTime());
+        assertEquals(0, new BigDecimal("101.5").compareTo(first.getPrice()));
+        assertEquals(0, new BigDecimal("0.25").compareTo(first.getVolume()));
+        assertTrue(first.isBuy());
+    }
+
+    @Test
+    public void readsOnlyTrades() throws IOException {
+        String file = folder.newFile("btcusd.bin").toString();
+        try (Recorder recorder = new Recorder(file)) {
+            record(recorder);
+        }
+
+        TickChunk chunk = new TickChunk(1);
+        try (Replayer replayer = new Replayer(file)) {
+            assertEquals(1, replayer.read(chunk));
+            assertEquals(1_500_000_000, chunk.time(0));
+            assertEquals(FixedPoint.ONE * 1015 / 10, chunk.price(0));
+            assertEquals(FixedPoint.ONE / 4, chunk.volume(0));
+            assertEquals(TickChunk.BUY, chunk.side(0));
+            assertEquals(1, replayer.read(chunk));
+            assertEquals(TickChunk.SELL, chunk.side(0));
+            assertEquals(0, replayer.read(chunk));
+        }
+    }
+
+    @Test
+    public void stopsAtUnwrittenTailOfUnclosedRecording() throws IOException {
+        String file = folder.newFile("btcusd.bin").toString();
+        Recorder recorder = new Recorder(file);
+        try {
+            record(recorder);
+            OrderBook book = new OrderBook(0);
+            try (Replayer replayer = new Replayer(file)) {
+                assertEquals(5, replayer.replay(book, null, 0));
+            }
+            assertEquals(2, book.getAskDepth());
+        } finally {
+            recorder.close();
+        }
+    }
+
+    @Test
+    public void rejectsLevelCountsBeyondRecord() throws IOException {
+        String file = folder.newFile("btcusd.bin").toString();
+        try (Recorder recorder = new Recorder(file)) {
+            record(recorder);
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            // The bid count of the first record, little-endian.
+            raw.seek(RecordFormat.FILE_HEADER_SIZE + RecordFormat.RECORD_HEADER_SIZE + 16);
+            raw.write(new byte[] {0, 0, 0, 1});
+        }
+
+        try (Replayer replayer = new Replayer(file)) {
+            replayer.replay(new OrderBook(0), null, 0);
+            fail("replayed a corrupt record");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Corrupt"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        String file = folder.newFile("notes.txt").toString();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.writeBytes("not a recording at all");
+        }
+        new Replayer(file).close();
+    }
+
+    /**
+     * Record a diff, a trade, a snapshot, a diff and a trade.
+     */
+    private static void record(Recorder recorder) {
+        recorder.onLevel(true, price(100), FixedPoint.ONE);
+        recorder.onLevel(false, price(101), 2 * FixedPoint.ONE);
+        recorder.onDiffEnd(10);
+        recorder.onTrade(new MarketTrade(7, 1_500_000_000, new BigDecimal("101.5"),
+            new BigDecimal("0.25"), true));
+
+        OrderBook book = new OrderBook(0);
+        book.updateBid(price(100), FixedPoint.ONE);
+        book.updateAsk(price(102), FixedPoint.ONE);
+        book.updateAsk(price(103), FixedPoint.ONE);
+        recorder.onSnapshot(book, 20);
+
+        recorder.onLevel(true, price(100), 0);
+        recorder.onDiffEnd(30);
+        recorder.onTrade(new MarketTrade(8, 1_500_000_001, new BigDecimal("100"),
+            BigDecimal.ONE, false));
+    }
+
+    private static DiffObserver observer(List<String> seen) {
+        return new DiffObserver() {
+            @Override
+            public void onLevel(boolean bid, long price, long volume) {
+                seen.add((bid ? "bid " : "ask ") + price / FixedPoint.ONE + " "
+                    + volume / FixedPoint.ONE);
+            }
+
+            @Override
+            public void onDiffEnd(long timestamp) {
+                seen.add("diff " + timestamp);
+            }
+
+            @Override
+            public void onSnapshot(OrderBook book, long timestamp) {
+                seen.add("snapshot " + timestamp + "/" + book.getBidDepth() + "/"
+                    + book.getAskDepth());
+            }
+        };
+    }
+
+    private static long price(long units) {
+        return units * FixedPoint.ONE;
+    }
+}